@@ -1,8 +1,13 @@
 package com.richwavelet.backend.api;
 
+import com.richwavelet.backend.dto.AnalyzeAdsBatchRequest;
 import com.richwavelet.backend.model.AdUpload;
 import com.richwavelet.backend.repository.AdUploadRepository;
 import com.richwavelet.backend.service.AdAnalysisService;
+import com.richwavelet.backend.service.AdBatchAnalysisService;
+import com.richwavelet.backend.service.AdCreativeCache;
+import com.richwavelet.backend.service.AdRenditionService;
+import com.richwavelet.backend.service.AnalysisScheduler;
 import com.richwavelet.backend.service.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +20,8 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,18 +38,29 @@ public class AdController {
             "video/webm"
     );
     private static final long MAX_FILE_SIZE = 100 * 1024 * 1024; // 100MB for ads
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final String NOT_QUEUED_STATUS = "not_queued";
 
     private final AdUploadRepository adUploadRepository;
     private final StorageService storageService;
     private final AdAnalysisService adAnalysisService;
+    private final AdRenditionService adRenditionService;
+    private final AdBatchAnalysisService adBatchAnalysisService;
+    private final AdCreativeCache adCreativeCache;
 
     public AdController(
             AdUploadRepository adUploadRepository,
             StorageService storageService,
-            AdAnalysisService adAnalysisService) {
+            AdAnalysisService adAnalysisService,
+            AdRenditionService adRenditionService,
+            AdBatchAnalysisService adBatchAnalysisService,
+            AdCreativeCache adCreativeCache) {
         this.adUploadRepository = adUploadRepository;
         this.storageService = storageService;
         this.adAnalysisService = adAnalysisService;
+        this.adRenditionService = adRenditionService;
+        this.adBatchAnalysisService = adBatchAnalysisService;
+        this.adCreativeCache = adCreativeCache;
     }
 
     @PostMapping("/upload")
@@ -71,7 +89,8 @@ public class AdController {
         try {
             storageService.ensureUserFolderExists(userId, BUCKET);
 
-            String storagePath = storageService.uploadVideo(userId, file, BUCKET);
+            StorageService.StoredUpload stored = storageService.ingestVideo(userId, file, BUCKET);
+            String storagePath = stored.storagePath();
             String fileUrl = storageService.getPublicUrl(BUCKET, storagePath);
 
             AdUpload adUpload = new AdUpload();
@@ -79,14 +98,25 @@ public class AdController {
             adUpload.setFileName(storageService.sanitizeFileName(file.getOriginalFilename()));
             adUpload.setFileUrl(fileUrl);
             adUpload.setStoragePath(storagePath);
-            adUpload.setFileSize(file.getSize());
+            adUpload.setFileSize(stored.sizeBytes());
+            adUpload.setContentSha256(stored.sha256());
             adUpload.setUploadedAt(OffsetDateTime.now());
 
             AdUpload saved = adUploadRepository.save(adUpload);
             logger.info("Ad uploaded successfully: {}", saved.getId());
 
-            // Trigger async analysis
-            adAnalysisService.analyzeAdAsync(saved.getId());
+            // Queue analysis behind interactive requests. If the queue is full the ad is marked not_queued,
+            // which the response carries and POST /{id}/analyze retries
+            try {
+                adAnalysisService.analyzeAdAsync(saved.getId(), AnalysisScheduler.Priority.BULK);
+            } catch (AnalysisScheduler.QueueFullException e) {
+                logger.warn("Analysis of ad {} not queued: {}", saved.getId(), e.getMessage());
+                saved.setAnalysisStatus(NOT_QUEUED_STATUS);
+                adUploadRepository.save(saved);
+            }
+
+            // Transcode canonical renditions once so jobs can stream-copy this ad
+            adRenditionService.normalizeAdAsync(saved.getId());
 
             return ResponseEntity.ok(saved);
 
@@ -125,6 +155,7 @@ public class AdController {
                         if (ad.getStoragePath() != null) {
                             storageService.deleteFromStorage(BUCKET, ad.getStoragePath());
                         }
+                        adRenditionService.deleteRenditions(ad.getId());
                         adUploadRepository.delete(ad);
                         return ResponseEntity.ok().body("Ad deleted");
                     } catch (IOException e) {
@@ -149,9 +180,17 @@ public class AdController {
                     }
 
                     // Reset status and trigger analysis
+                    String previousStatus = ad.getAnalysisStatus();
                     ad.setAnalysisStatus("pending");
                     adUploadRepository.save(ad);
-                    adAnalysisService.analyzeAdAsync(ad.getId());
+                    try {
+                        adAnalysisService.analyzeAdAsync(ad.getId(), AnalysisScheduler.Priority.INTERACTIVE);
+                    } catch (AnalysisScheduler.QueueFullException e) {
+                        ad.setAnalysisStatus(previousStatus);
+                        adUploadRepository.save(ad);
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .body(Map.of("status", "rejected", "error", e.getMessage()));
+                    }
 
                     logger.info("Triggered analysis for ad {}", id);
                     return ResponseEntity.ok(Map.of(
@@ -162,6 +201,77 @@ public class AdController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Analyze many of the user's ads in one pipelined background batch. Ads that are not found,
+     * belong to someone else or are already being analyzed are skipped.
+     */
+    @PostMapping("/analyze-batch")
+    public ResponseEntity<?> triggerBatchAnalysis(@RequestBody AnalyzeAdsBatchRequest request,
+                                                  Authentication authentication) {
+        String userId = getUserId(authentication);
+
+        if (request.adIds() == null || request.adIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "adIds is required"));
+        }
+        if (request.adIds().size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "At most " + MAX_BATCH_SIZE + " ads can be analyzed per batch"));
+        }
+
+        List<AdUpload> ads = adUploadRepository.findAllById(new LinkedHashSet<>(request.adIds())).stream()
+                .filter(ad -> ad.getUserId().equals(userId))
+                .filter(ad -> !"analyzing".equals(ad.getAnalysisStatus()))
+                .toList();
+        List<String> queuedIds = ads.stream().map(AdUpload::getId).toList();
+        Set<String> queued = Set.copyOf(queuedIds);
+        List<String> skippedIds = request.adIds().stream().filter(id -> !queued.contains(id)).distinct().toList();
+        if (ads.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "No ads to analyze", "skipped", skippedIds));
+        }
+
+        Map<String, String> previousStatus = new HashMap<>();
+        for (AdUpload ad : ads) {
+            previousStatus.put(ad.getId(), ad.getAnalysisStatus());
+            ad.setAnalysisStatus("pending");
+        }
+        adUploadRepository.saveAll(ads);
+        try {
+            adBatchAnalysisService.analyzeBatchAsync(ads);
+        } catch (AnalysisScheduler.QueueFullException e) {
+            for (AdUpload ad : ads) {
+                ad.setAnalysisStatus(previousStatus.get(ad.getId()));
+            }
+            adUploadRepository.saveAll(ads);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("status", "rejected", "error", e.getMessage()));
+        }
+
+        logger.info("Triggered batch analysis of {} ads for user {}", ads.size(), userId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "status", "queued",
+                "queued", queuedIds,
+                "skipped", skippedIds
+        ));
+    }
+
+    /**
+     * Hit rate and size of this instance's on-disk ad creative cache
+     * GET /api/protected/ads/creative-cache/stats
+     */
+    @GetMapping("/creative-cache/stats")
+    public ResponseEntity<?> getCreativeCacheStats() {
+        AdCreativeCache.Stats stats = adCreativeCache.stats();
+        return ResponseEntity.ok(Map.of(
+                "hits", stats.hits(),
+                "misses", stats.misses(),
+                "evictions", stats.evictions(),
+                "bytes", stats.bytes(),
+                "entries", stats.entries(),
+                "hitRatio", stats.hitRatio()
+        ));
+    }
+
     @GetMapping("/{id}/metadata")
     public ResponseEntity<?> getAdMetadata(@PathVariable String id, Authentication authentication) {
         String userId = getUserId(authentication);
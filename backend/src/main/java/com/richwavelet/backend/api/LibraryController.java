@@ -2,9 +2,13 @@ package com.richwavelet.backend.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.richwavelet.backend.service.AdAnalysisService;
+import com.richwavelet.backend.service.AnalysisScheduler;
+import com.richwavelet.backend.service.HashingRequestBody;
 import com.richwavelet.backend.service.SupabaseService;
+import okhttp3.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -128,8 +132,9 @@ public class LibraryController {
             : ".mp4";
         String storagePath = userId + "/" + fileId + extension;
 
-        // Upload file to Supabase Storage
-        supabaseService.uploadFile(ADS_BUCKET, storagePath, file.getBytes(), contentType);
+        // Upload file to Supabase Storage, streamed from the multipart spill file
+        HashingRequestBody body = new HashingRequestBody(file::getInputStream, file.getSize(), MediaType.parse(contentType));
+        supabaseService.uploadFile(ADS_BUCKET, storagePath, body, contentType);
 
         // Generate signed URL for immediate use
         String signedUrl = supabaseService.createSignedUrl(ADS_BUCKET, storagePath, SIGNED_URL_EXPIRY_SECONDS);
@@ -141,6 +146,7 @@ public class LibraryController {
         adData.put("file_url", signedUrl);
         adData.put("storage_path", storagePath);
         adData.put("file_size", file.getSize());
+        adData.put("content_sha256", body.sha256());
         adData.put("status", "uploaded");
         adData.put("analysis_status", "pending");
         adData.put("created_at", Instant.now().toString());
@@ -232,7 +238,17 @@ public class LibraryController {
 
         // Trigger async analysis
         String storagePath = (String) ad.get("storage_path");
-        adAnalysisService.analyzeAdFromStorageAsync(id, storagePath, ADS_BUCKET, ADS_TABLE);
+        try {
+            adAnalysisService.analyzeAdFromStorageAsync(id, storagePath, ADS_BUCKET, ADS_TABLE,
+                    AnalysisScheduler.Priority.INTERACTIVE);
+        } catch (AnalysisScheduler.QueueFullException e) {
+            supabaseService.updateTable(ADS_TABLE,
+                Map.of("id", "eq." + id),
+                Map.of("analysis_status", currentStatus != null ? currentStatus : "pending")
+            );
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("status", "rejected", "error", e.getMessage()));
+        }
 
         logger.info("Triggered analysis for ad {} with storage path {}", id, storagePath);
 
@@ -1,7 +1,12 @@
 package com.richwavelet.backend.api;
 
 import com.richwavelet.backend.dto.AnalyzeVideoRequest;
+import com.richwavelet.backend.dto.PreanalyzeVideosRequest;
 import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.model.VideoPreanalysisItem;
+import com.richwavelet.backend.service.AnalysisScheduler;
+import com.richwavelet.backend.service.VideoAnalysisCache;
+import com.richwavelet.backend.service.VideoPreanalysisService;
 import com.richwavelet.backend.service.YouTubeAnalysisService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
@@ -12,19 +17,36 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/protected/video")
 public class VideoAnalysisController {
 
     private static final Logger logger = LoggerFactory.getLogger(VideoAnalysisController.class);
+    private static final int MAX_PREANALYSIS_VIDEOS = 1000;
+    // Room for MAX_PREANALYSIS_VIDEOS full YouTube URLs with some padding
+    private static final long MAX_PREANALYSIS_FILE_BYTES = 1024 * 1024;
 
     private final YouTubeAnalysisService youTubeAnalysisService;
+    private final VideoPreanalysisService videoPreanalysisService;
 
-    public VideoAnalysisController(YouTubeAnalysisService youTubeAnalysisService) {
+    public VideoAnalysisController(YouTubeAnalysisService youTubeAnalysisService,
+                                   VideoPreanalysisService videoPreanalysisService) {
         this.youTubeAnalysisService = youTubeAnalysisService;
+        this.videoPreanalysisService = videoPreanalysisService;
     }
 
     /**
@@ -90,6 +112,128 @@ public class VideoAnalysisController {
         }
     }
 
+    /**
+     * Hit rate and size of the in-memory video analysis cache
+     * GET /api/protected/video/analysis-cache/stats
+     */
+    @GetMapping("/analysis-cache/stats")
+    public ResponseEntity<?> getAnalysisCacheStats() {
+        VideoAnalysisCache.Stats stats = youTubeAnalysisService.getCacheStats();
+        return ResponseEntity.ok(Map.of(
+                "hits", stats.hits(),
+                "misses", stats.misses(),
+                "evictions", stats.evictions(),
+                "entries", stats.entries(),
+                "hitRatio", stats.hitRatio()
+        ));
+    }
+
+    /**
+     * Queue many YouTube videos for analysis ahead of viewing
+     * POST /api/protected/video/preanalyze
+     */
+    @PostMapping("/preanalyze")
+    public ResponseEntity<?> preanalyzeVideos(
+            @RequestBody PreanalyzeVideosRequest request,
+            Authentication authentication) {
+
+        if (request.youtubeUrls() == null || request.youtubeUrls().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "youtubeUrls is required"));
+        }
+        return submitPreanalysis(getUserId(authentication), request.youtubeUrls());
+    }
+
+    /**
+     * Queue the videos of a text file, one YouTube URL or video ID per line, for analysis ahead of viewing
+     * POST /api/protected/video/preanalyze/file
+     */
+    @PostMapping("/preanalyze/file")
+    public ResponseEntity<?> preanalyzeVideoFile(
+            @RequestParam("file") MultipartFile file,
+            Authentication authentication) throws IOException {
+
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "File is empty"));
+        }
+        if (file.getSize() > MAX_PREANALYSIS_FILE_BYTES) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "File must be at most " + MAX_PREANALYSIS_FILE_BYTES + " bytes"));
+        }
+
+        // One line past the limit is enough for submitPreanalysis to reject the file
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (lines.size() <= MAX_PREANALYSIS_VIDEOS && (line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return submitPreanalysis(getUserId(authentication), lines);
+    }
+
+    /**
+     * Per-video progress of a pre-analysis job
+     * GET /api/protected/video/preanalyze/{jobId}
+     */
+    @GetMapping("/preanalyze/{jobId}")
+    public ResponseEntity<?> getPreanalysisProgress(
+            @PathVariable String jobId,
+            Authentication authentication) {
+
+        String userId = getUserId(authentication);
+        List<VideoPreanalysisItem> items = videoPreanalysisService.getItems(jobId);
+        if (items.isEmpty() || !items.get(0).getUserId().equals(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Long> counts = items.stream()
+                .collect(Collectors.groupingBy(VideoPreanalysisItem::getStatus, TreeMap::new, Collectors.counting()));
+        List<Map<String, Object>> progress = items.stream()
+                .map(item -> {
+                    Map<String, Object> entry = new TreeMap<>();
+                    entry.put("videoId", item.getVideoId());
+                    entry.put("status", item.getStatus());
+                    if (item.getErrorMessage() != null) {
+                        entry.put("error", item.getErrorMessage());
+                    }
+                    return entry;
+                })
+                .toList();
+        return ResponseEntity.ok(Map.of("jobId", jobId, "total", items.size(), "counts", counts, "items", progress));
+    }
+
+    private ResponseEntity<?> submitPreanalysis(String userId, Collection<String> urlsOrIds) {
+        if (urlsOrIds.size() > MAX_PREANALYSIS_VIDEOS) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "At most " + MAX_PREANALYSIS_VIDEOS + " videos can be pre-analyzed per job"));
+        }
+
+        VideoPreanalysisService.Submission submission;
+        try {
+            submission = videoPreanalysisService.submit(userId, urlsOrIds);
+        } catch (AnalysisScheduler.QueueFullException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("status", "rejected", "error", e.getMessage()));
+        }
+        if (submission.videoIds().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "No valid YouTube URLs or video IDs", "invalid", submission.invalid()));
+        }
+
+        logger.info("Queued pre-analysis job {} of {} videos for user {}",
+                submission.jobId(), submission.videoIds().size(), userId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "status", "queued",
+                "jobId", submission.jobId(),
+                "queued", submission.videoIds(),
+                "invalid", submission.invalid()
+        ));
+    }
+
     private String getUserId(Authentication authentication) {
         Jwt jwt = (Jwt) authentication.getPrincipal();
         return jwt.getSubject();
@@ -69,7 +69,8 @@ public class VideoController {
             storageService.ensureUserFolderExists(userId, BUCKET);
 
             // Upload to storage
-            String storagePath = storageService.uploadVideo(userId, file, BUCKET);
+            StorageService.StoredUpload stored = storageService.ingestVideo(userId, file, BUCKET);
+            String storagePath = stored.storagePath();
             String fileUrl = storageService.getPublicUrl(BUCKET, storagePath);
 
             // Save to database
@@ -78,7 +79,8 @@ public class VideoController {
             videoUpload.setFileName(storageService.sanitizeFileName(file.getOriginalFilename()));
             videoUpload.setFileUrl(fileUrl);
             videoUpload.setStoragePath(storagePath);
-            videoUpload.setFileSize(file.getSize());
+            videoUpload.setFileSize(stored.sizeBytes());
+            videoUpload.setContentSha256(stored.sha256());
             videoUpload.setUploadedAt(OffsetDateTime.now());
             videoUpload.setStatus(UploadStatus.READY);
 
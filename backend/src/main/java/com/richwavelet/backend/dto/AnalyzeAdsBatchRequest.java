@@ -0,0 +1,7 @@
+package com.richwavelet.backend.dto;
+
+import java.util.List;
+
+public record AnalyzeAdsBatchRequest(
+    List<String> adIds
+) {}
@@ -0,0 +1,40 @@
+package com.richwavelet.backend.dto;
+
+/**
+ * Container and stream properties of a media file, from a single ffprobe run.
+ * {@code video} or {@code audio} is null when the file has no such stream.
+ */
+public record MediaInfo(
+    double durationSeconds,
+    String formatName,
+    long sizeBytes,
+    long bitRate,
+    VideoStream video,
+    AudioStream audio
+) {
+
+    public record VideoStream(
+        String codec,
+        String profile,
+        int width,
+        int height,
+        String pixelFormat,
+        String frameRate,
+        long bitRate
+    ) {}
+
+    public record AudioStream(
+        String codec,
+        int sampleRate,
+        int channels,
+        long bitRate
+    ) {}
+
+    public boolean hasVideo() {
+        return video != null;
+    }
+
+    public boolean hasAudio() {
+        return audio != null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.richwavelet.backend.dto;
+
+import java.util.List;
+
+public record PreanalyzeVideosRequest(
+    List<String> youtubeUrls
+) {}
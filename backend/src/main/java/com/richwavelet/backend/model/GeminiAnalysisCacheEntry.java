@@ -0,0 +1,133 @@
+package com.richwavelet.backend.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A stored Gemini response for one piece of media, use case, prompt version, model and style
+ */
+@Entity
+@Table(name = "gemini_analysis_cache")
+public class GeminiAnalysisCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "use_case", nullable = false)
+    private String useCase;
+
+    @Column(name = "model", nullable = false)
+    private String model;
+
+    @Column(name = "prompt_version", nullable = false)
+    private String promptVersion;
+
+    @Column(name = "variant")
+    private String variant;
+
+    @Column(name = "content_sha256", nullable = false, length = 64)
+    private String contentSha256;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "response", columnDefinition = "jsonb", nullable = false)
+    private String response;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    public GeminiAnalysisCacheEntry() {
+    }
+
+    public GeminiAnalysisCacheEntry(String cacheKey, String useCase, String model, String promptVersion,
+                                    String variant, String contentSha256, String response, OffsetDateTime expiresAt) {
+        this.cacheKey = cacheKey;
+        this.useCase = useCase;
+        this.model = model;
+        this.promptVersion = promptVersion;
+        this.variant = variant;
+        this.contentSha256 = contentSha256;
+        this.response = response;
+        this.createdAt = OffsetDateTime.now();
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public String getUseCase() {
+        return useCase;
+    }
+
+    public void setUseCase(String useCase) {
+        this.useCase = useCase;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getPromptVersion() {
+        return promptVersion;
+    }
+
+    public void setPromptVersion(String promptVersion) {
+        this.promptVersion = promptVersion;
+    }
+
+    public String getVariant() {
+        return variant;
+    }
+
+    public void setVariant(String variant) {
+        this.variant = variant;
+    }
+
+    public String getContentSha256() {
+        return contentSha256;
+    }
+
+    public void setContentSha256(String contentSha256) {
+        this.contentSha256 = contentSha256;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,51 @@
+package com.richwavelet.backend.model;
+
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A lease held by one instance while it analyzes a YouTube video
+ */
+@Entity
+@Table(name = "video_analysis_claims")
+public class VideoAnalysisClaim {
+
+    @Id
+    @Column(name = "video_id", length = 20)
+    private String videoId;
+
+    @Column(name = "claimed_by", nullable = false, length = 36)
+    private String claimedBy;
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    public VideoAnalysisClaim() {
+    }
+
+    // Getters and Setters
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public void setVideoId(String videoId) {
+        this.videoId = videoId;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,99 @@
+package com.richwavelet.backend.model;
+
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Progress of one video within a bulk pre-analysis job
+ */
+@Entity
+@Table(name = "video_preanalysis_items")
+public class VideoPreanalysisItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false, length = 36)
+    private String jobId;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "video_id", nullable = false, length = 20)
+    private String videoId;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;  // queued, analyzing, analyzed, cached, skipped, not_found, failed
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "updated_at")
+    private OffsetDateTime updatedAt;
+
+    public VideoPreanalysisItem() {
+    }
+
+    public VideoPreanalysisItem(String jobId, String userId, String videoId, String status) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.videoId = videoId;
+        this.status = status;
+        this.updatedAt = OffsetDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public void setVideoId(String videoId) {
+        this.videoId = videoId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(OffsetDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -1,6 +1,9 @@
 package com.richwavelet.backend.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
 import java.time.OffsetDateTime;
 
 @Entity
@@ -26,9 +29,18 @@ public class VideoUpload {
     @Column(name = "file_size")
     private Long fileSize;
 
-    @Column(name = "duration_seconds")
+    // Probe results are written by a targeted update (see MediaProbeService), so whole-entity saves
+    // from concurrent work on the same row never overwrite them with stale values
+    @Column(name = "duration_seconds", updatable = false)
     private Double durationSeconds;
 
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "media_info", columnDefinition = "jsonb", updatable = false)
+    private String mediaInfo;
+
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
     @Column(name = "uploaded_at")
     private OffsetDateTime uploadedAt;
 
@@ -120,4 +132,20 @@ public class VideoUpload {
     public void setStatus(UploadStatus status) {
         this.status = status;
     }
+
+    public String getContentSha256() {
+        return contentSha256;
+    }
+
+    public void setContentSha256(String contentSha256) {
+        this.contentSha256 = contentSha256;
+    }
+
+    public String getMediaInfo() {
+        return mediaInfo;
+    }
+
+    public void setMediaInfo(String mediaInfo) {
+        this.mediaInfo = mediaInfo;
+    }
 }
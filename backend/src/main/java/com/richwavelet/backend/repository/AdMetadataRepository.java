@@ -4,11 +4,14 @@ import com.richwavelet.backend.model.AdMetadata;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AdMetadataRepository extends JpaRepository<AdMetadata, Long> {
     Optional<AdMetadata> findByAdId(String adId);
+    List<AdMetadata> findByAdIdIn(Collection<String> adIds);
     boolean existsByAdId(String adId);
     void deleteByAdId(String adId);
 }
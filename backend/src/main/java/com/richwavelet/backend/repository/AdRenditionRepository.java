@@ -0,0 +1,14 @@
+package com.richwavelet.backend.repository;
+
+import com.richwavelet.backend.model.AdRendition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AdRenditionRepository extends JpaRepository<AdRendition, String> {
+    List<AdRendition> findByAdId(String adId);
+    List<AdRendition> findByAdIdIn(Collection<String> adIds);
+}
@@ -2,7 +2,11 @@ package com.richwavelet.backend.repository;
 
 import com.richwavelet.backend.model.AdUpload;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -10,4 +14,10 @@ import java.util.List;
 public interface AdUploadRepository extends JpaRepository<AdUpload, String> {
     List<AdUpload> findByUserId(String userId);
     List<AdUpload> findByUserIdOrderByUploadedAtDesc(String userId);
+
+    @Modifying
+    @Transactional
+    @Query("update AdUpload a set a.durationSeconds = :durationSeconds, a.mediaInfo = :mediaInfo where a.id = :id")
+    int updateMediaInfo(@Param("id") String id, @Param("durationSeconds") Double durationSeconds,
+                        @Param("mediaInfo") String mediaInfo);
 }
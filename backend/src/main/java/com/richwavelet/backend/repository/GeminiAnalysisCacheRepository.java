@@ -0,0 +1,20 @@
+package com.richwavelet.backend.repository;
+
+import com.richwavelet.backend.model.GeminiAnalysisCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface GeminiAnalysisCacheRepository extends JpaRepository<GeminiAnalysisCacheEntry, String> {
+
+    @Modifying
+    @Transactional
+    @Query("delete from GeminiAnalysisCacheEntry e where e.expiresAt < :now")
+    int deleteExpired(@Param("now") OffsetDateTime now);
+}
@@ -0,0 +1,36 @@
+package com.richwavelet.backend.repository;
+
+import com.richwavelet.backend.model.VideoAnalysisClaim;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface VideoAnalysisClaimRepository extends JpaRepository<VideoAnalysisClaim, String> {
+
+    /**
+     * Claim a video unless another instance holds an unexpired claim on it
+     * @return 1 if the claim was taken, 0 if it is held elsewhere
+     */
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            INSERT INTO video_analysis_claims (video_id, claimed_by, expires_at)
+            VALUES (:videoId, :owner, :expiresAt)
+            ON CONFLICT (video_id) DO UPDATE
+            SET claimed_by = EXCLUDED.claimed_by, expires_at = EXCLUDED.expires_at
+            WHERE video_analysis_claims.expires_at < NOW()
+            """)
+    int tryClaim(@Param("videoId") String videoId, @Param("owner") String owner,
+                 @Param("expiresAt") OffsetDateTime expiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("delete from VideoAnalysisClaim c where c.videoId = :videoId and c.claimedBy = :owner")
+    int release(@Param("videoId") String videoId, @Param("owner") String owner);
+}
@@ -4,11 +4,14 @@ import com.richwavelet.backend.model.VideoAnalysis;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface VideoAnalysisRepository extends JpaRepository<VideoAnalysis, Long> {
     Optional<VideoAnalysis> findByVideoId(String videoId);
     boolean existsByVideoId(String videoId);
+    List<VideoAnalysis> findByVideoIdIn(Collection<String> videoIds);
     void deleteByVideoId(String videoId);
 }
@@ -0,0 +1,36 @@
+package com.richwavelet.backend.repository;
+
+import com.richwavelet.backend.model.VideoPreanalysisItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface VideoPreanalysisItemRepository extends JpaRepository<VideoPreanalysisItem, Long> {
+    List<VideoPreanalysisItem> findByJobIdOrderById(String jobId);
+
+    /**
+     * Move several videos of a job to the same status in one statement
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            update VideoPreanalysisItem i
+            set i.status = :status, i.errorMessage = :error, i.updatedAt = :now
+            where i.jobId = :jobId and i.videoId in :videoIds
+            """)
+    int updateStatus(@Param("jobId") String jobId, @Param("videoIds") Collection<String> videoIds,
+                     @Param("status") String status, @Param("error") String error,
+                     @Param("now") OffsetDateTime now);
+
+    @Modifying
+    @Transactional
+    void deleteByJobId(String jobId);
+}
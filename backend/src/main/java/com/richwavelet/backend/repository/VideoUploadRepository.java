@@ -2,7 +2,11 @@ package com.richwavelet.backend.repository;
 
 import com.richwavelet.backend.model.VideoUpload;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -10,4 +14,10 @@ import java.util.List;
 public interface VideoUploadRepository extends JpaRepository<VideoUpload, Long> {
     List<VideoUpload> findByUserId(String userId);
     List<VideoUpload> findByUserIdOrderByUploadedAtDesc(String userId);
+
+    @Modifying
+    @Transactional
+    @Query("update VideoUpload v set v.durationSeconds = :durationSeconds, v.mediaInfo = :mediaInfo where v.id = :id")
+    int updateMediaInfo(@Param("id") Long id, @Param("durationSeconds") Double durationSeconds,
+                        @Param("mediaInfo") String mediaInfo);
 }
@@ -2,11 +2,8 @@ package com.richwavelet.backend.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.cloud.vertexai.VertexAI;
 import com.google.cloud.vertexai.api.*;
-import com.google.cloud.vertexai.generativeai.GenerativeModel;
 import com.google.cloud.vertexai.generativeai.ResponseHandler;
-import com.google.protobuf.ByteString;
 import com.richwavelet.backend.dto.AdAnalysisResult;
 import com.richwavelet.backend.model.AdMetadata;
 import com.richwavelet.backend.model.AdUpload;
@@ -14,11 +11,11 @@ import com.richwavelet.backend.repository.AdMetadataRepository;
 import com.richwavelet.backend.repository.AdUploadRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.OffsetDateTime;
@@ -31,44 +28,59 @@ import java.util.Optional;
 public class AdAnalysisService {
 
     private static final Logger logger = LoggerFactory.getLogger(AdAnalysisService.class);
-
-    @Value("${gcp.project-id}")
-    private String projectId;
-
-    @Value("${gcp.location:us-central1}")
-    private String location;
-
-    @Value("${gemini.model:gemini-2.0-flash-001}")
-    private String geminiModel;
+    // Bump when the prompt or response schema changes so cached analyses are not reused
+    private static final String PROMPT_VERSION = "1";
 
     private final ObjectMapper objectMapper;
     private final StorageService storageService;
     private final AdUploadRepository adUploadRepository;
     private final AdMetadataRepository adMetadataRepository;
     private final SupabaseService supabaseService;
+    private final VertexAiClientPool vertexAiClientPool;
+    private final GeminiVideoParts geminiVideoParts;
+    private final VideoProcessingService videoProcessingService;
+    private final GeminiAnalysisCache analysisCache;
+    private final AnalysisScheduler analysisScheduler;
+    private final AdFeatureVectors adFeatureVectors;
+    private final VertexAiClientPool.ModelSpec adAnalysisModel =
+            new VertexAiClientPool.ModelSpec("ad-analysis", buildAdAnalysisSchema());
 
     public AdAnalysisService(
             StorageService storageService,
             AdUploadRepository adUploadRepository,
             AdMetadataRepository adMetadataRepository,
-            SupabaseService supabaseService) {
+            SupabaseService supabaseService,
+            VertexAiClientPool vertexAiClientPool,
+            GeminiVideoParts geminiVideoParts,
+            VideoProcessingService videoProcessingService,
+            GeminiAnalysisCache analysisCache,
+            AnalysisScheduler analysisScheduler,
+            AdFeatureVectors adFeatureVectors) {
         this.objectMapper = new ObjectMapper();
         this.storageService = storageService;
         this.adUploadRepository = adUploadRepository;
         this.adMetadataRepository = adMetadataRepository;
         this.supabaseService = supabaseService;
+        this.vertexAiClientPool = vertexAiClientPool;
+        this.geminiVideoParts = geminiVideoParts;
+        this.videoProcessingService = videoProcessingService;
+        this.analysisCache = analysisCache;
+        this.analysisScheduler = analysisScheduler;
+        this.adFeatureVectors = adFeatureVectors;
     }
 
     /**
-     * Analyze an ad asynchronously
+     * Queue an ad for analysis on the analysis scheduler
+     * @throws AnalysisScheduler.QueueFullException if the lane is full
      */
-    @Async
-    public void analyzeAdAsync(String adId) {
-        try {
-            analyzeAd(adId);
-        } catch (Exception e) {
-            logger.error("Async ad analysis failed for ad {}: {}", adId, e.getMessage(), e);
-        }
+    public void analyzeAdAsync(String adId, AnalysisScheduler.Priority priority) {
+        analysisScheduler.submit("ad-analysis " + adId, priority, () -> {
+            try {
+                analyzeAd(adId);
+            } catch (Exception e) {
+                logger.error("Async ad analysis failed for ad {}: {}", adId, e.getMessage(), e);
+            }
+        });
     }
 
     /**
@@ -90,15 +102,16 @@ public class AdAnalysisService {
 
         Path tempFile = null;
         try {
-            // Download ad video to temp file
-            tempFile = Files.createTempFile("ad-analysis-", ".mp4");
-            storageService.downloadFromStorage("ads", ad.getStoragePath(), tempFile);
-
-            // Read video for Gemini
-            byte[] videoBytes = readVideoForGemini(tempFile, ad.getFileName());
-
-            // Analyze with Vertex AI Gemini
-            AdAnalysisResult result = analyzeWithGemini(videoBytes);
+            // Ad content analyzed before is served from the cache without downloading it
+            AdAnalysisResult result = cachedAnalysis(ad.getContentSha256());
+            if (result == null) {
+                // Download ad video to temp file
+                tempFile = Files.createTempFile("ad-analysis-", ".mp4");
+                storageService.downloadFromStorage("ads", ad.getStoragePath(), tempFile);
+
+                // Analyze with Vertex AI Gemini
+                result = analyzeWithGemini(tempFile, ad.getFileName(), ad.getContentSha256());
+            }
 
             // Save metadata
             AdMetadata metadata = saveMetadata(adId, result);
@@ -128,57 +141,83 @@ public class AdAnalysisService {
     }
 
     /**
-     * Read video and return bytes for Vertex AI Gemini inline usage
+     * An earlier analysis of the same ad content, if one is cached
      */
-    private byte[] readVideoForGemini(Path videoPath, String displayName) throws IOException {
-        logger.info("Reading ad video for Vertex AI Gemini: {}", displayName);
-        byte[] videoBytes = Files.readAllBytes(videoPath);
-        logger.info("Ad video prepared for Vertex AI: {} ({} bytes)", displayName, videoBytes.length);
-        return videoBytes;
+    AdAnalysisResult cachedAnalysis(String contentSha256) {
+        Optional<String> cached = analysisCache.get(cacheKey(contentSha256));
+        if (cached.isEmpty()) {
+            return null;
+        }
+        try {
+            return parseAdAnalysisResponse(cached.get());
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable cached ad analysis for {}: {}", contentSha256, e.getMessage());
+            return null;
+        }
+    }
+
+    private GeminiAnalysisCache.Key cacheKey(String contentSha256) {
+        return new GeminiAnalysisCache.Key(adAnalysisModel.useCase(), PROMPT_VERSION, null, contentSha256);
     }
 
     /**
-     * Analyze ad video with Vertex AI Gemini
+     * Analyze ad video with Vertex AI Gemini, reusing a cached result for identical content
+     * @param contentSha256 hash recorded at upload, or null to hash the local file
      */
-    private AdAnalysisResult analyzeWithGemini(byte[] videoBytes) throws IOException {
-        logger.info("Analyzing ad with Vertex AI Gemini");
+    private AdAnalysisResult analyzeWithGemini(Path videoPath, String displayName, String contentSha256)
+            throws IOException {
+        String sha256 = contentSha256 != null ? contentSha256 : GeminiAnalysisCache.sha256(videoPath);
+        AdAnalysisResult cached = cachedAnalysis(sha256);
+        if (cached != null) {
+            return cached;
+        }
 
-        String prompt = buildAdAnalysisPrompt();
+        Path proxy = null;
+        try {
+            // Gemini gets a low-bitrate proxy of the video
+            proxy = videoProcessingService.createAnalysisProxy(videoPath, videoPath.getParent());
+            return analyzePrepared(proxy, displayName, sha256);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted preparing ad for analysis");
+        } finally {
+            if (proxy != null && !proxy.equals(videoPath)) {
+                Files.deleteIfExists(proxy);
+            }
+        }
+    }
 
-        try (VertexAI vertexAI = new VertexAI(projectId, location)) {
-            // Build generation config with JSON response
-            GenerationConfig generationConfig = GenerationConfig.newBuilder()
-                    .setResponseMimeType("application/json")
-                    .setResponseSchema(buildAdAnalysisSchema())
-                    .build();
+    /**
+     * Analyze a video already prepared for Gemini, caching the result under the source's content hash
+     */
+    AdAnalysisResult analyzePrepared(Path videoPath, String displayName, String contentSha256) throws IOException {
+        logger.info("Analyzing ad with Vertex AI Gemini: {}", displayName);
 
-            GenerativeModel model = new GenerativeModel.Builder()
-                    .setModelName(geminiModel)
-                    .setVertexAi(vertexAI)
-                    .setGenerationConfig(generationConfig)
-                    .build();
+        String prompt = buildAdAnalysisPrompt();
 
+        Part video = null;
+        try {
             // Build content with video and prompt
+            video = geminiVideoParts.videoPart(videoPath, displayName);
             Content content = Content.newBuilder()
                     .setRole("user")
-                    .addParts(Part.newBuilder()
-                            .setInlineData(Blob.newBuilder()
-                                    .setMimeType("video/mp4")
-                                    .setData(ByteString.copyFrom(videoBytes))
-                                    .build())
-                            .build())
+                    .addParts(video)
                     .addParts(Part.newBuilder()
                             .setText(prompt)
                             .build())
                     .build();
 
-            GenerateContentResponse response = model.generateContent(content);
+            GenerateContentResponse response = vertexAiClientPool.generate(adAnalysisModel, content);
             String responseText = ResponseHandler.getText(response);
 
-            return parseAdAnalysisResponse(responseText);
+            AdAnalysisResult result = parseAdAnalysisResponse(responseText);
+            analysisCache.put(cacheKey(contentSha256), responseText);
+            return result;
         } catch (Exception e) {
             logger.error("Vertex AI Gemini ad analysis failed: {}", e.getMessage(), e);
             throw new IOException("Gemini ad analysis failed: " + e.getMessage(), e);
+        } finally {
+            geminiVideoParts.release(video);
         }
     }
 
@@ -282,6 +321,12 @@ public class AdAnalysisService {
         // Delete existing metadata if any
         adMetadataRepository.findByAdId(adId).ifPresent(adMetadataRepository::delete);
 
+        AdMetadata saved = adMetadataRepository.save(toMetadata(adId, result));
+        adFeatureVectors.put(saved);
+        return saved;
+    }
+
+    private static AdMetadata toMetadata(String adId, AdAnalysisResult result) {
         AdMetadata metadata = new AdMetadata(adId);
         metadata.setCategories(result.categories());
         metadata.setTone(result.tone());
@@ -291,8 +336,29 @@ public class AdAnalysisService {
         metadata.setBrandName(result.brandName());
         metadata.setEnergyLevel(result.energyLevel());
         metadata.setAnalyzedAt(OffsetDateTime.now());
+        return metadata;
+    }
 
-        return adMetadataRepository.save(metadata);
+    /**
+     * Record the results of a batch and the final status of every ad in it in one transaction.
+     * Ads without a result are marked failed.
+     */
+    @Transactional
+    public List<AdMetadata> saveBatch(List<AdUpload> ads, Map<String, AdAnalysisResult> results) {
+        List<String> analyzedIds = ads.stream().map(AdUpload::getId).filter(results::containsKey).toList();
+        adMetadataRepository.deleteAllInBatch(adMetadataRepository.findByAdIdIn(analyzedIds));
+
+        List<AdMetadata> metadata = new ArrayList<>();
+        for (String adId : analyzedIds) {
+            metadata.add(toMetadata(adId, results.get(adId)));
+        }
+        for (AdUpload ad : ads) {
+            ad.setAnalysisStatus(results.containsKey(ad.getId()) ? "completed" : "failed");
+        }
+        adUploadRepository.saveAll(ads);
+        List<AdMetadata> saved = adMetadataRepository.saveAll(metadata);
+        saved.forEach(adFeatureVectors::put);
+        return saved;
     }
 
     /**
@@ -303,10 +369,16 @@ public class AdAnalysisService {
     }
 
     /**
-     * Analyze an ad from storage path asynchronously (for Supabase ads table)
+     * Queue an ad from storage path for analysis on the analysis scheduler (for Supabase ads table)
+     * @throws AnalysisScheduler.QueueFullException if the lane is full
      */
-    @Async
-    public void analyzeAdFromStorageAsync(String adId, String storagePath, String bucket, String tableName) {
+    public void analyzeAdFromStorageAsync(String adId, String storagePath, String bucket, String tableName,
+                                          AnalysisScheduler.Priority priority) {
+        analysisScheduler.submit("ad-analysis " + adId, priority,
+                () -> runAnalysisFromStorage(adId, storagePath, bucket, tableName));
+    }
+
+    private void runAnalysisFromStorage(String adId, String storagePath, String bucket, String tableName) {
         try {
             analyzeAdFromStorage(adId, storagePath, bucket, tableName);
         } catch (Exception e) {
@@ -335,11 +407,8 @@ public class AdAnalysisService {
             tempFile = Files.createTempFile("ad-analysis-", ".mp4");
             storageService.downloadFromStorage(bucket, storagePath, tempFile);
 
-            // Read video for Gemini
-            byte[] videoBytes = readVideoForGemini(tempFile, "ad-" + adId);
-
             // Analyze with Vertex AI Gemini
-            AdAnalysisResult result = analyzeWithGemini(videoBytes);
+            AdAnalysisResult result = analyzeWithGemini(tempFile, "ad-" + adId, null);
 
             // Save metadata
             AdMetadata metadata = saveMetadata(adId, result);
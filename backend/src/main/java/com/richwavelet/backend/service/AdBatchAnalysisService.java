@@ -0,0 +1,165 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.AdAnalysisResult;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Analyzes many ads as one pipelined batch: each ad moves through download, proxy transcode and the
+ * Gemini call on its own, with a separate concurrency limit per stage, so downloads, FFmpeg and model
+ * calls overlap across ads. All results are written in a single transaction at the end.
+ */
+@Service
+public class AdBatchAnalysisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdBatchAnalysisService.class);
+    private static final String BUCKET = "ads";
+
+    @Value("${analysis.batch.download-concurrency:4}")
+    private int downloadConcurrency = 4;
+
+    @Value("${analysis.batch.transcode-concurrency:2}")
+    private int transcodeConcurrency = 2;
+
+    @Value("${analysis.batch.gemini-concurrency:4}")
+    private int geminiConcurrency = 4;
+
+    @FunctionalInterface
+    private interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    private final AdAnalysisService adAnalysisService;
+    private final AdUploadRepository adUploadRepository;
+    private final StorageService storageService;
+    private final VideoProcessingService videoProcessingService;
+    private final AnalysisScheduler analysisScheduler;
+
+    public AdBatchAnalysisService(
+            AdAnalysisService adAnalysisService,
+            AdUploadRepository adUploadRepository,
+            StorageService storageService,
+            VideoProcessingService videoProcessingService,
+            AnalysisScheduler analysisScheduler) {
+        this.adAnalysisService = adAnalysisService;
+        this.adUploadRepository = adUploadRepository;
+        this.storageService = storageService;
+        this.videoProcessingService = videoProcessingService;
+        this.analysisScheduler = analysisScheduler;
+    }
+
+    /**
+     * Queue a batch on the analysis scheduler's bulk lane
+     * @throws AnalysisScheduler.QueueFullException if the lane is full
+     */
+    public void analyzeBatchAsync(List<AdUpload> ads) {
+        analysisScheduler.submit("ad-analysis batch of " + ads.size(), AnalysisScheduler.Priority.BULK, () -> {
+            try {
+                analyzeBatch(ads);
+            } catch (Exception e) {
+                logger.error("Batch ad analysis failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Analyze every ad and record the results
+     * @return results keyed by ad id; ads that failed are absent
+     */
+    public Map<String, AdAnalysisResult> analyzeBatch(List<AdUpload> ads) throws IOException, InterruptedException {
+        logger.info("Starting batch analysis of {} ads", ads.size());
+        for (AdUpload ad : ads) {
+            ad.setAnalysisStatus("analyzing");
+        }
+        adUploadRepository.saveAll(ads);
+
+        Semaphore downloads = new Semaphore(Math.max(1, downloadConcurrency));
+        Semaphore transcodes = new Semaphore(Math.max(1, transcodeConcurrency));
+        Semaphore geminiCalls = new Semaphore(Math.max(1, geminiConcurrency));
+
+        Path workDir = Files.createTempDirectory("ad-batch-");
+        Map<String, AdAnalysisResult> results = new HashMap<>();
+        try {
+            Map<String, Future<AdAnalysisResult>> pending = new LinkedHashMap<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (AdUpload ad : ads) {
+                    pending.put(ad.getId(), executor.submit(
+                            () -> analyzeOne(ad, workDir, downloads, transcodes, geminiCalls)));
+                }
+                for (Map.Entry<String, Future<AdAnalysisResult>> entry : pending.entrySet()) {
+                    try {
+                        results.put(entry.getKey(), entry.getValue().get());
+                    } catch (ExecutionException e) {
+                        logger.error("Analysis failed for ad {}: {}", entry.getKey(), e.getCause().getMessage(),
+                                e.getCause());
+                    }
+                }
+            }
+        } finally {
+            videoProcessingService.cleanupWorkDir(workDir);
+            adAnalysisService.saveBatch(ads, results);
+        }
+
+        logger.info("Batch analysis finished: {} of {} ads analyzed", results.size(), ads.size());
+        return results;
+    }
+
+    private AdAnalysisResult analyzeOne(AdUpload ad, Path workDir, Semaphore downloads, Semaphore transcodes,
+                                        Semaphore geminiCalls) throws Exception {
+        // Ad content analyzed before needs no download
+        AdAnalysisResult cached = adAnalysisService.cachedAnalysis(ad.getContentSha256());
+        if (cached != null) {
+            return cached;
+        }
+
+        Path source = workDir.resolve(ad.getId() + ".mp4");
+        Path proxy = null;
+        try {
+            withPermit(downloads, () -> {
+                storageService.downloadFromStorage(BUCKET, ad.getStoragePath(), source);
+                return null;
+            });
+            String sha256 = ad.getContentSha256() != null ? ad.getContentSha256() : GeminiAnalysisCache.sha256(source);
+            cached = adAnalysisService.cachedAnalysis(sha256);
+            if (cached != null) {
+                return cached;
+            }
+
+            proxy = withPermit(transcodes, () -> videoProcessingService.createAnalysisProxy(source, workDir));
+            Path prepared = proxy;
+            return withPermit(geminiCalls, () -> adAnalysisService.analyzePrepared(prepared, ad.getFileName(), sha256));
+        } finally {
+            // Free disk as the batch goes rather than at the end
+            Files.deleteIfExists(source);
+            if (proxy != null) {
+                Files.deleteIfExists(proxy);
+            }
+        }
+    }
+
+    private static <T> T withPermit(Semaphore permits, Stage<T> stage) throws Exception {
+        permits.acquire();
+        try {
+            return stage.run();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.richwavelet.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Worker-local disk cache of ad creatives, keyed by ad id and the storage ETag so a re-uploaded ad
+ * is never served stale. Entries are published by atomic rename and hard-linked into job work
+ * directories (copied when the work directory is on another filesystem), so evicting an entry never
+ * affects a job that is still using it. The least recently used entries are evicted once the cache
+ * exceeds its byte budget.
+ */
+@Component
+public class AdCreativeCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdCreativeCache.class);
+    private static final String ENTRY_SUFFIX = ".mp4";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${video.ad-cache.dir:${video.temp-dir:/tmp/video-processing}/ad-cache}")
+    private String cacheDir;
+
+    @Value("${video.ad-cache.max-bytes:5368709120}")
+    private long maxBytes;
+
+    /**
+     * Cache counters since the worker started
+     */
+    public record Stats(long hits, long misses, long evictions, long bytes, int entries) {
+
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    private final StorageService storageService;
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by "this"
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long totalBytes;
+    private boolean loaded;
+
+    public AdCreativeCache(StorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    /**
+     * Place the current version of an ad at {@code destination}, downloading it only if it is not
+     * already cached. Concurrent jobs that miss on the same ad share one download.
+     */
+    public Path materialize(String adId, String fileUrl, Path destination) throws IOException {
+        StorageService.RemoteObject remote = storageService.describe(fileUrl);
+        if (remote == null || remote.etag() == null) {
+            // Without a version there is nothing safe to key on
+            misses.incrementAndGet();
+            storageService.downloadFile(fileUrl, destination, remote);
+            return destination;
+        }
+
+        String key = cacheKey(adId, remote.etag());
+        Path cached = lookup(key);
+        if (cached != null && linkInto(cached, destination)) {
+            hits.incrementAndGet();
+            logger.info("Ad cache hit for ad {} ({})", adId, formatStats());
+            return destination;
+        }
+
+        misses.incrementAndGet();
+        CompletableFuture<Path> download = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, download);
+        if (existing != null) {
+            // Another job is already fetching this version
+            placeOrDownload(awaitDownload(existing), fileUrl, remote, destination);
+            return destination;
+        }
+
+        try {
+            Path published = fetch(key, fileUrl, remote);
+            download.complete(published);
+            placeOrDownload(published, fileUrl, remote, destination);
+            logger.info("Ad cache miss for ad {} ({})", adId, formatStats());
+            return destination;
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Current hit, miss and eviction counts and cache size
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), totalBytes, entries.size());
+    }
+
+    /**
+     * Cache file name for an ad version. The ETag is hashed because it may contain quotes and other
+     * characters that are not safe in file names.
+     */
+    static String cacheKey(String adId, String etag) {
+        String safeId = adId.replaceAll("[^a-zA-Z0-9-]", "_");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(etag.getBytes(StandardCharsets.UTF_8));
+            return safeId + "-" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private synchronized Path lookup(String key) throws IOException {
+        loadIndex();
+        // get (not containsKey) so the lookup counts as a use for LRU order
+        return entries.get(key) != null ? entryPath(key) : null;
+    }
+
+    private Path fetch(String key, String fileUrl, StorageService.RemoteObject remote) throws IOException {
+        Path dir = Path.of(cacheDir);
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            storageService.downloadFile(fileUrl, temp, remote);
+            Path entry = entryPath(key);
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            publish(key, Files.size(entry));
+            return entry;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private synchronized void publish(String key, long size) throws IOException {
+        loadIndex();
+        Long previous = entries.put(key, size);
+        totalBytes += size - (previous != null ? previous : 0);
+
+        // Never evict the entry just published, even if it alone is over budget
+        Iterator<Map.Entry<String, Long>> lru = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && lru.hasNext()) {
+            Map.Entry<String, Long> eldest = lru.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            Files.deleteIfExists(entryPath(eldest.getKey()));
+            totalBytes -= eldest.getValue();
+            lru.remove();
+            evictions.incrementAndGet();
+            logger.info("Evicted {} from ad cache ({} bytes)", eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Rebuild the index from the cache directory on first use, oldest file first, so entries
+     * survive a worker restart. Partial downloads left by a crash are removed.
+     */
+    private void loadIndex() throws IOException {
+        if (loaded) {
+            return;
+        }
+        Path dir = Path.of(cacheDir);
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.toList();
+        }
+        List<Path> cachedFiles = files.stream()
+                .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                .sorted(Comparator.comparing(AdCreativeCache::lastModified))
+                .toList();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Path file : cachedFiles) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        loaded = true;
+        logger.info("Loaded {} ad cache entries ({} bytes) from {}", entries.size(), totalBytes, dir);
+    }
+
+    /**
+     * Hard-link the cached file into place, copying when links are not possible
+     * @return false if the entry was evicted before it could be linked
+     */
+    private boolean linkInto(Path cached, Path destination) throws IOException {
+        Files.deleteIfExists(destination);
+        try {
+            Files.createLink(destination, cached);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Different filesystem or no hard link support
+            try {
+                Files.copy(cached, destination, StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException evicted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void placeOrDownload(Path cached, String fileUrl, StorageService.RemoteObject remote,
+                                 Path destination) throws IOException {
+        if (!linkInto(cached, destination)) {
+            storageService.downloadFile(fileUrl, destination, remote);
+        }
+    }
+
+    private Path awaitDownload(CompletableFuture<Path> download) throws IOException {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for ad download", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Ad download failed", e.getCause());
+        }
+    }
+
+    private Path entryPath(String key) {
+        return Path.of(cacheDir).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private String formatStats() {
+        Stats stats = stats();
+        return String.format("%d hits, %d misses, %.0f%% hit ratio, %d entries, %d bytes",
+                stats.hits(), stats.misses(), stats.hitRatio() * 100, stats.entries(), stats.bytes());
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
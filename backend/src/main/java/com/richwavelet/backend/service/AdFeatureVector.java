@@ -0,0 +1,197 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.model.AdMetadata;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An ad's matching features compiled into primitives: categories as a bitmask over the fixed category
+ * vocabulary, tone and era as indexes into static score tables and the energy score precomputed, so
+ * scoring an ad against a video allocates nothing. Categories outside the vocabulary are kept aside
+ * and compared by name, which keeps the Jaccard score exact.
+ */
+final class AdFeatureVector {
+
+    /**
+     * Categories the ad and video analysis prompts choose from
+     */
+    static final List<String> CATEGORIES = List.of(
+            "automotive", "food", "beverage", "technology", "fashion", "home", "health", "entertainment",
+            "finance", "travel", "education", "retail", "sports", "gaming", "beauty", "pets", "kids", "business");
+
+    private static final List<String> TONES = List.of(
+            "humorous", "serious", "nostalgic", "exciting", "calm", "informative");
+    private static final List<String> SENTIMENTS = List.of("positive", "neutral", "negative", "mixed");
+    private static final List<String> ERAS = List.of(
+            "1950s", "1960s", "1970s", "1980s", "1990s", "modern-retro", "modern");
+
+    // Tone compatibility by tone and then sentiment; the last row and column are for unknown values
+    private static final double[][] TONE_SCORES = {
+            {1.0, 0.7, 0.3, 0.8, 0.5},
+            {0.6, 0.9, 0.8, 0.7, 0.5},
+            {0.9, 0.8, 0.5, 0.8, 0.5},
+            {1.0, 0.6, 0.4, 0.7, 0.5},
+            {0.8, 1.0, 0.4, 0.6, 0.5},
+            {0.7, 1.0, 0.6, 0.8, 0.5},
+            {0.5, 0.5, 0.5, 0.5, 0.5}
+    };
+
+    // Retro-style ads score higher; the last entry is for unknown eras
+    private static final double[] ERA_SCORES = {1.0, 1.0, 1.0, 1.0, 0.9, 0.8, 0.5, 0.5};
+
+    private static final Map<String, Integer> CATEGORY_BITS = indexes(CATEGORIES);
+    private static final Map<String, Integer> TONE_INDEXES = indexes(TONES);
+    private static final Map<String, Integer> SENTIMENT_INDEXES = indexes(SENTIMENTS);
+    private static final Map<String, Integer> ERA_INDEXES = indexes(ERAS);
+    private static final String[] NO_EXTRAS = new String[0];
+
+    /**
+     * A video's categories and sentiment compiled the same way, once per match request
+     */
+    record Video(int categoryMask, String[] extraCategories, int sentiment) {
+
+        static Video compile(VideoAnalysisResult video) {
+            List<String> categories = video.categories();
+            return new Video(mask(categories), extras(categories), sentimentIndex(video.sentiment()));
+        }
+    }
+
+    private final long version;
+    private final int categoryMask;
+    private final String[] extraCategories;
+    private final int tone;
+    private final int era;
+    private final double energyScore;
+
+    private AdFeatureVector(long version, int categoryMask, String[] extraCategories, int tone, int era,
+                            double energyScore) {
+        this.version = version;
+        this.categoryMask = categoryMask;
+        this.extraCategories = extraCategories;
+        this.tone = tone;
+        this.era = era;
+        this.energyScore = energyScore;
+    }
+
+    static AdFeatureVector compile(AdMetadata metadata) {
+        List<String> categories = metadata.getCategories();
+        Integer energyLevel = metadata.getEnergyLevel();
+        return new AdFeatureVector(
+                metadata.getId() != null ? metadata.getId() : -1,
+                mask(categories),
+                extras(categories),
+                lookup(TONE_INDEXES, metadata.getTone(), TONES.size()),
+                lookup(ERA_INDEXES, metadata.getEraStyle(), ERAS.size()),
+                energyLevel == null ? 0.5 : Math.min(Math.max(energyLevel / 10.0, 0.0), 1.0));
+    }
+
+    /**
+     * The metadata row this vector was compiled from; a re-analyzed ad gets a new row
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Jaccard similarity of the ad's and video's category sets (0.0 to 1.0)
+     */
+    double categoryScore(Video video) {
+        boolean adHasNone = categoryMask == 0 && extraCategories.length == 0;
+        boolean videoHasNone = video.categoryMask() == 0 && video.extraCategories().length == 0;
+        if (adHasNone || videoHasNone) {
+            return 0.0;
+        }
+        int sharedExtras = sharedCount(extraCategories, video.extraCategories());
+        int intersection = Integer.bitCount(categoryMask & video.categoryMask()) + sharedExtras;
+        int union = Integer.bitCount(categoryMask | video.categoryMask())
+                + extraCategories.length + video.extraCategories().length - sharedExtras;
+        return (double) intersection / union;
+    }
+
+    /**
+     * Tone compatibility with the video's sentiment (0.0 to 1.0)
+     */
+    double toneScore(Video video) {
+        return TONE_SCORES[tone][video.sentiment()];
+    }
+
+    /**
+     * Era style score (0.0 to 1.0)
+     */
+    double eraScore() {
+        return ERA_SCORES[era];
+    }
+
+    /**
+     * Energy level 1-10 normalized to 0.0-1.0
+     */
+    double energyScore() {
+        return energyScore;
+    }
+
+    private static int mask(List<String> categories) {
+        int mask = 0;
+        if (categories != null) {
+            for (String category : categories) {
+                Integer bit = category != null ? CATEGORY_BITS.get(category) : null;
+                if (bit != null) {
+                    mask |= 1 << bit;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Distinct categories outside the vocabulary, sorted so two sets can be intersected by merging
+     */
+    private static String[] extras(List<String> categories) {
+        if (categories == null) {
+            return NO_EXTRAS;
+        }
+        String[] extras = categories.stream()
+                .filter(category -> category != null && !CATEGORY_BITS.containsKey(category))
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+        return extras.length == 0 ? NO_EXTRAS : extras;
+    }
+
+    private static int sharedCount(String[] a, String[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            int order = a[i].compareTo(b[j]);
+            if (order == 0) {
+                shared++;
+                i++;
+                j++;
+            } else if (order < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    private static int sentimentIndex(String sentiment) {
+        return lookup(SENTIMENT_INDEXES, sentiment, SENTIMENTS.size());
+    }
+
+    private static int lookup(Map<String, Integer> indexes, String value, int unknown) {
+        return value == null ? unknown : indexes.getOrDefault(value.toLowerCase(Locale.ROOT), unknown);
+    }
+
+    private static Map<String, Integer> indexes(List<String> values) {
+        return IntStream.range(0, values.size()).boxed()
+                .collect(Collectors.toUnmodifiableMap(values::get, Function.identity()));
+    }
+}
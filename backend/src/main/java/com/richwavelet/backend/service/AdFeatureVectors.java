@@ -0,0 +1,47 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.AdMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled feature vectors of analyzed ads, keyed by ad id. Vectors are compiled when ad metadata is
+ * saved, or on first use after a restart, and recompiled only when the ad has been re-analyzed.
+ */
+@Component
+public class AdFeatureVectors {
+
+    @Value("${ad-matching.feature-cache-size:10000}")
+    private int maxEntries = 10000;
+
+    // Access-ordered, so the least recently used vector is evicted first
+    private final Map<String, AdFeatureVector> vectors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AdFeatureVector> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * The vector for the given metadata, compiled now if it is not cached or was compiled from an
+     * earlier analysis of the ad
+     */
+    synchronized AdFeatureVector get(AdMetadata metadata) {
+        AdFeatureVector vector = vectors.get(metadata.getAdId());
+        if (vector == null || metadata.getId() == null || vector.version() != metadata.getId()) {
+            vector = AdFeatureVector.compile(metadata);
+            vectors.put(metadata.getAdId(), vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Compile and cache the vector of freshly saved metadata
+     */
+    public synchronized void put(AdMetadata metadata) {
+        vectors.put(metadata.getAdId(), AdFeatureVector.compile(metadata));
+    }
+}
@@ -1,14 +1,10 @@
 package com.richwavelet.backend.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.richwavelet.backend.dto.*;
 import com.richwavelet.backend.model.AdMetadata;
 import com.richwavelet.backend.model.AdUpload;
-import com.richwavelet.backend.model.VideoAnalysis;
 import com.richwavelet.backend.repository.AdMetadataRepository;
 import com.richwavelet.backend.repository.AdUploadRepository;
-import com.richwavelet.backend.repository.VideoAnalysisRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -22,11 +18,10 @@ public class AdMatchingService {
 
     private static final Logger logger = LoggerFactory.getLogger(AdMatchingService.class);
 
-    private final ObjectMapper objectMapper;
     private final AdMetadataRepository adMetadataRepository;
     private final AdUploadRepository adUploadRepository;
-    private final VideoAnalysisRepository videoAnalysisRepository;
     private final YouTubeAnalysisService youtubeAnalysisService;
+    private final AdFeatureVectors adFeatureVectors;
 
     // Matching algorithm weights (from PRD Section 5.3.1)
     private static final double CATEGORY_WEIGHT = 0.40;
@@ -40,13 +35,12 @@ public class AdMatchingService {
     public AdMatchingService(
             AdMetadataRepository adMetadataRepository,
             AdUploadRepository adUploadRepository,
-            VideoAnalysisRepository videoAnalysisRepository,
-            YouTubeAnalysisService youtubeAnalysisService) {
-        this.objectMapper = new ObjectMapper();
+            YouTubeAnalysisService youtubeAnalysisService,
+            AdFeatureVectors adFeatureVectors) {
         this.adMetadataRepository = adMetadataRepository;
         this.adUploadRepository = adUploadRepository;
-        this.videoAnalysisRepository = videoAnalysisRepository;
         this.youtubeAnalysisService = youtubeAnalysisService;
+        this.adFeatureVectors = adFeatureVectors;
     }
 
     /**
@@ -55,110 +49,126 @@ public class AdMatchingService {
     public MatchResponse matchAdsToVideo(String youtubeUrl, List<String> adIds, Integer maxAds) throws IOException {
         logger.info("Matching {} ads to video: {}", adIds.size(), youtubeUrl);
 
-        // Step 1: Analyze or retrieve cached video analysis
+        // Step 1: Analyze or retrieve cached video analysis, ad break suggestions included
         VideoAnalysisResult videoAnalysis = youtubeAnalysisService.analyze(youtubeUrl);
 
-        // Step 2: Fetch video entity to get ad break suggestions
-        String videoId = youtubeAnalysisService.extractVideoId(youtubeUrl);
-        VideoAnalysis videoEntity = videoAnalysisRepository.findByVideoId(videoId)
-                .orElseThrow(() -> new IllegalStateException("Video analysis not found for: " + videoId));
+        // Step 2: Score all provided ads and rank the best ones
+        int adLimit = maxAds != null ? maxAds : 3;
+        List<AdMatchResult> matches = scoreAds(adIds, videoAnalysis, adLimit);
 
-        // Step 3: Score and rank all provided ads
-        List<AdMatchResult> matches = scoreAds(adIds, videoEntity);
+        // Step 3: Build schedule by assigning top ads to break points
+        List<AdScheduleItem> schedule = buildSchedule(matches, videoAnalysis, adLimit);
 
-        // Step 4: Build schedule by assigning top ads to break points
-        List<AdScheduleItem> schedule = buildSchedule(matches, videoEntity, maxAds != null ? maxAds : 3);
-
-        logger.info("Generated schedule with {} ads for video {}", schedule.size(), videoId);
+        logger.info("Generated schedule with {} ads for video {}", schedule.size(), videoAnalysis.videoId());
         return new MatchResponse(videoAnalysis, schedule);
     }
 
     /**
-     * Score each ad against the video content
+     * Score each ad against the video content and return the best {@code limit} of them, best first.
+     * Metadata and uploads for all ads are loaded with one query each rather than two queries per ad,
+     * and each ad is scored from its compiled feature vector without allocating; full match results
+     * are built only for the ads returned, as the schedule never uses more.
      */
-    private List<AdMatchResult> scoreAds(List<String> adIds, VideoAnalysis video) {
+    private List<AdMatchResult> scoreAds(List<String> adIds, VideoAnalysisResult video, int limit) {
         List<AdMatchResult> results = new ArrayList<>();
+        if (adIds.isEmpty() || limit <= 0) {
+            return results;
+        }
 
+        Set<String> uniqueIds = new LinkedHashSet<>(adIds);
+        Map<String, AdMetadata> metadataByAdId = adMetadataRepository.findByAdIdIn(uniqueIds).stream()
+                .collect(Collectors.toMap(AdMetadata::getAdId, metadata -> metadata, (first, second) -> first));
+        Map<String, AdUpload> uploadsById = adUploadRepository.findAllById(uniqueIds).stream()
+                .collect(Collectors.toMap(AdUpload::getId, upload -> upload, (first, second) -> first));
+
+        AdFeatureVector.Video videoFeatures = AdFeatureVector.Video.compile(video);
+        AdMetadata[] candidates = new AdMetadata[adIds.size()];
+        AdUpload[] uploads = new AdUpload[adIds.size()];
+        AdFeatureVector[] features = new AdFeatureVector[adIds.size()];
+        double[] scores = new double[adIds.size()];
+        int count = 0;
         for (String adId : adIds) {
-            try {
-                // Fetch ad metadata
-                Optional<AdMetadata> metadataOpt = adMetadataRepository.findByAdId(adId);
-                if (metadataOpt.isEmpty()) {
-                    logger.warn("No metadata found for ad: {}, skipping", adId);
-                    continue;
-                }
-                AdMetadata metadata = metadataOpt.get();
-
-                // Fetch ad upload info for URL and duration
-                Optional<AdUpload> uploadOpt = adUploadRepository.findById(adId);
-                if (uploadOpt.isEmpty()) {
-                    logger.warn("No upload found for ad: {}, skipping", adId);
-                    continue;
-                }
-                AdUpload upload = uploadOpt.get();
-
-                // Compute individual scores
-                double categoryScore = computeCategoryScore(metadata.getCategories(), video.getCategories());
-                double toneScore = computeToneScore(metadata.getTone(), video.getSentiment());
-                double eraScore = computeEraScore(metadata.getEraStyle());
-                double energyScore = computeEnergyScore(metadata.getEnergyLevel());
-
-                // Weighted overall score
-                double overallScore = (categoryScore * CATEGORY_WEIGHT) +
-                                    (toneScore * TONE_WEIGHT) +
-                                    (eraScore * ERA_WEIGHT) +
-                                    (energyScore * ENERGY_WEIGHT);
-
-                // Find matched categories
-                List<String> matchedCategories = findMatchedCategories(
-                        metadata.getCategories(),
-                        video.getCategories()
-                );
+            AdMetadata metadata = metadataByAdId.get(adId);
+            if (metadata == null) {
+                logger.warn("No metadata found for ad: {}, skipping", adId);
+                continue;
+            }
 
-                // Generate match reason
-                String matchReason = generateMatchReason(matchedCategories, metadata.getTone(),
-                                                        metadata.getEraStyle(), overallScore);
-
-                int duration = upload.getDurationSeconds() != null ?
-                              upload.getDurationSeconds().intValue() : 30;
-
-                AdMatchResult match = new AdMatchResult(
-                        adId,
-                        upload.getFileUrl(),
-                        duration,
-                        overallScore,
-                        categoryScore,
-                        toneScore,
-                        eraScore,
-                        energyScore,
-                        matchedCategories,
-                        matchReason
-                );
+            // Ad upload info for URL and duration
+            AdUpload upload = uploadsById.get(adId);
+            if (upload == null) {
+                logger.warn("No upload found for ad: {}, skipping", adId);
+                continue;
+            }
 
-                results.add(match);
+            candidates[count] = metadata;
+            uploads[count] = upload;
+            features[count] = adFeatureVectors.get(metadata);
+            scores[count] = overallScore(features[count], videoFeatures);
+            count++;
+        }
 
-            } catch (NumberFormatException e) {
-                logger.warn("Invalid ad ID format: {}, skipping", adId);
-            } catch (Exception e) {
-                logger.error("Error scoring ad {}: {}", adId, e.getMessage(), e);
+        // Pick the best ads in score order; ties keep request order
+        boolean[] picked = new boolean[count];
+        for (int rank = 0; rank < Math.min(limit, count); rank++) {
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                if (!picked[i] && (best < 0 || scores[i] > scores[best])) {
+                    best = i;
+                }
             }
+            picked[best] = true;
+            results.add(toMatch(candidates[best], uploads[best], features[best], videoFeatures, video, scores[best]));
         }
 
-        // Sort by overall score descending
-        results.sort((a, b) -> Double.compare(b.matchScore(), a.matchScore()));
-
-        logger.info("Scored {} ads, top score: {}", results.size(),
-                   results.isEmpty() ? 0 : results.get(0).matchScore());
+        logger.info("Scored {} ads, top score: {}", count, results.isEmpty() ? 0 : results.get(0).matchScore());
 
         return results;
     }
 
+    /**
+     * Weighted overall score of an ad (0.0 to 1.0)
+     */
+    private static double overallScore(AdFeatureVector ad, AdFeatureVector.Video video) {
+        return (ad.categoryScore(video) * CATEGORY_WEIGHT) +
+               (ad.toneScore(video) * TONE_WEIGHT) +
+               (ad.eraScore() * ERA_WEIGHT) +
+               (ad.energyScore() * ENERGY_WEIGHT);
+    }
+
+    private AdMatchResult toMatch(AdMetadata metadata, AdUpload upload, AdFeatureVector ad,
+                                  AdFeatureVector.Video videoFeatures, VideoAnalysisResult video,
+                                  double overallScore) {
+        // Find matched categories
+        List<String> matchedCategories = findMatchedCategories(metadata.getCategories(), video.categories());
+
+        // Generate match reason
+        String matchReason = generateMatchReason(matchedCategories, metadata.getTone(),
+                                                metadata.getEraStyle(), overallScore);
+
+        int duration = upload.getDurationSeconds() != null ?
+                      upload.getDurationSeconds().intValue() : 30;
+
+        return new AdMatchResult(
+                metadata.getAdId(),
+                upload.getFileUrl(),
+                duration,
+                overallScore,
+                ad.categoryScore(videoFeatures),
+                ad.toneScore(videoFeatures),
+                ad.eraScore(),
+                ad.energyScore(),
+                matchedCategories,
+                matchReason
+        );
+    }
+
     /**
      * Build ad schedule by assigning top-scoring ads to break points
      */
     private List<AdScheduleItem> buildSchedule(List<AdMatchResult> matches,
-                                               VideoAnalysis video,
-                                               int maxAds) throws IOException {
+                                               VideoAnalysisResult video,
+                                               int maxAds) {
         List<AdScheduleItem> schedule = new ArrayList<>();
 
         if (matches.isEmpty()) {
@@ -166,8 +176,8 @@ public class AdMatchingService {
             return schedule;
         }
 
-        // Parse ad break suggestions
-        List<AdBreakSuggestion> breakPoints = parseAdBreakSuggestions(video.getAdBreakSuggestions());
+        // Copy, as the analysis may be shared with other requests
+        List<AdBreakSuggestion> breakPoints = new ArrayList<>(video.adBreakSuggestions());
 
         if (breakPoints.isEmpty()) {
             logger.warn("No ad break suggestions available");
@@ -223,97 +233,6 @@ public class AdMatchingService {
         return true;
     }
 
-    /**
-     * Compute category overlap score (0.0 to 1.0)
-     */
-    private double computeCategoryScore(List<String> adCategories, List<String> videoCategories) {
-        if (adCategories == null || adCategories.isEmpty() ||
-            videoCategories == null || videoCategories.isEmpty()) {
-            return 0.0;
-        }
-
-        Set<String> adSet = new HashSet<>(adCategories);
-        Set<String> videoSet = new HashSet<>(videoCategories);
-
-        // Count overlap
-        Set<String> intersection = new HashSet<>(adSet);
-        intersection.retainAll(videoSet);
-
-        // Jaccard similarity
-        Set<String> union = new HashSet<>(adSet);
-        union.addAll(videoSet);
-
-        return union.isEmpty() ? 0.0 : (double) intersection.size() / union.size();
-    }
-
-    /**
-     * Compute tone compatibility score (0.0 to 1.0)
-     */
-    private double computeToneScore(String adTone, String videoSentiment) {
-        if (adTone == null || videoSentiment == null) {
-            return 0.5; // Neutral score if either is missing
-        }
-
-        // Define compatibility matrix
-        Map<String, Map<String, Double>> compatibility = new HashMap<>();
-        compatibility.put("humorous", Map.of(
-                "positive", 1.0, "neutral", 0.7, "negative", 0.3, "mixed", 0.8
-        ));
-        compatibility.put("serious", Map.of(
-                "positive", 0.6, "neutral", 0.9, "negative", 0.8, "mixed", 0.7
-        ));
-        compatibility.put("nostalgic", Map.of(
-                "positive", 0.9, "neutral", 0.8, "negative", 0.5, "mixed", 0.8
-        ));
-        compatibility.put("exciting", Map.of(
-                "positive", 1.0, "neutral", 0.6, "negative", 0.4, "mixed", 0.7
-        ));
-        compatibility.put("calm", Map.of(
-                "positive", 0.8, "neutral", 1.0, "negative", 0.4, "mixed", 0.6
-        ));
-        compatibility.put("informative", Map.of(
-                "positive", 0.7, "neutral", 1.0, "negative", 0.6, "mixed", 0.8
-        ));
-
-        return compatibility.getOrDefault(adTone.toLowerCase(), Map.of())
-                .getOrDefault(videoSentiment.toLowerCase(), 0.5);
-    }
-
-    /**
-     * Compute era style score (0.0 to 1.0)
-     * Retro-style ads score higher
-     */
-    private double computeEraScore(String eraStyle) {
-        if (eraStyle == null) {
-            return 0.5;
-        }
-
-        Map<String, Double> eraScores = Map.of(
-                "1950s", 1.0,
-                "1960s", 1.0,
-                "1970s", 1.0,
-                "1980s", 1.0,
-                "1990s", 0.9,
-                "modern-retro", 0.8,
-                "modern", 0.5
-        );
-
-        return eraScores.getOrDefault(eraStyle.toLowerCase(), 0.5);
-    }
-
-    /**
-     * Compute energy level score (0.0 to 1.0)
-     * Normalize energy level (1-10) to 0.0-1.0
-     */
-    private double computeEnergyScore(Integer energyLevel) {
-        if (energyLevel == null) {
-            return 0.5;
-        }
-
-        // Normalize to 0.0-1.0 range
-        return Math.min(Math.max(energyLevel / 10.0, 0.0), 1.0);
-    }
-
     /**
      * Find categories that match between ad and video
      */
@@ -360,20 +279,4 @@ public class AdMatchingService {
 
         return reason.toString();
     }
-
-    /**
-     * Parse ad break suggestions from JSON
-     */
-    private List<AdBreakSuggestion> parseAdBreakSuggestions(String jsonSuggestions) throws IOException {
-        if (jsonSuggestions == null || jsonSuggestions.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        try {
-            return objectMapper.readValue(jsonSuggestions, new TypeReference<List<AdBreakSuggestion>>() {});
-        } catch (IOException e) {
-            logger.error("Failed to parse ad break suggestions: {}", e.getMessage());
-            throw e;
-        }
-    }
 }
@@ -0,0 +1,278 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.AdRendition;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.repository.AdRenditionRepository;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Transcodes each uploaded ad once into a small set of canonical renditions so that, at render time,
+ * an ad whose rendition matches the codec parameters of the shaded video can be stream-copied into
+ * the output instead of being re-encoded by every job that uses it
+ */
+@Service
+public class AdRenditionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdRenditionService.class);
+    private static final String BUCKET = "ads";
+
+    @Value("${video.ad-renditions.profiles:1280x720@30,1920x1080@30}")
+    private String profiles;
+
+    @Value("${video.ad-renditions.gop-seconds:2}")
+    private int gopSeconds;
+
+    // Each ad is encoded once per profile with libx264, so a few ads at a time already fill the CPU
+    @Value("${video.ad-renditions.concurrency:1}")
+    private int concurrency = 1;
+
+    @Value("${video.ad-renditions.queue-capacity:100}")
+    private int queueCapacity = 100;
+
+    /**
+     * A canonical rendition size and frame rate, written as {@code 1280x720@30}
+     */
+    record RenditionSpec(int width, int height, int frameRate) {
+
+        String label() {
+            return height + "p" + frameRate;
+        }
+
+        static RenditionSpec parse(String spec) {
+            String[] sizeAndRate = spec.trim().split("@");
+            String[] size = sizeAndRate[0].split("x");
+            return new RenditionSpec(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                    sizeAndRate.length > 1 ? Integer.parseInt(sizeAndRate[1]) : 30);
+        }
+    }
+
+    /**
+     * Where a job should fetch an ad from: a matching rendition, or the original upload.
+     * {@code cacheId} identifies the file in the worker's ad cache.
+     */
+    public record AdSource(String cacheId, String fileUrl) {}
+
+    /**
+     * A rendition placed in a job's work directory
+     */
+    public record RenditionFile(AdRendition rendition, Path path) {}
+
+    /**
+     * An ad's original upload and renditions placed in a job's work directory, fetched before it is
+     * known which of them the job will insert
+     */
+    public record LocalAd(Path original, List<RenditionFile> renditions) {}
+
+    private final AdUploadRepository adUploadRepository;
+    private final AdRenditionRepository adRenditionRepository;
+    private final StorageService storageService;
+    private final VideoProcessingService videoProcessingService;
+    private final MediaProbeService mediaProbeService;
+    private ThreadPoolExecutor executor;
+
+    public AdRenditionService(
+            AdUploadRepository adUploadRepository,
+            AdRenditionRepository adRenditionRepository,
+            StorageService storageService,
+            VideoProcessingService videoProcessingService,
+            MediaProbeService mediaProbeService) {
+        this.adUploadRepository = adUploadRepository;
+        this.adRenditionRepository = adRenditionRepository;
+        this.storageService = storageService;
+        this.videoProcessingService = videoProcessingService;
+        this.mediaProbeService = mediaProbeService;
+    }
+
+    /**
+     * Generate an ad's renditions in the background, on a small dedicated pool so a burst of uploads
+     * queues up instead of starting every encode at once. When the queue is full the ad is left
+     * without renditions, and jobs use its original upload.
+     */
+    public void normalizeAdAsync(String adId) {
+        try {
+            executor().execute(() -> {
+                try {
+                    normalizeAd(adId);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    logger.error("Generating renditions failed for ad {}: {}", adId, e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rendition queue is full, ad {} will be used as uploaded", adId);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            int threads = Math.max(1, concurrency);
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                    Thread.ofVirtual().name("ad-rendition-", 0).factory());
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Transcode an ad into every configured rendition, upload them next to the original and record
+     * their probed codec parameters, replacing any renditions generated before
+     */
+    public List<AdRendition> normalizeAd(String adId) throws IOException, InterruptedException {
+        AdUpload ad = adUploadRepository.findById(adId)
+                .orElseThrow(() -> new IllegalArgumentException("Ad not found: " + adId));
+        logger.info("Generating renditions for ad {}", adId);
+
+        Path workDir = videoProcessingService.createWorkDir(ad.getUserId());
+        try {
+            Path source = workDir.resolve("source.mp4");
+            storageService.downloadFromStorage(BUCKET, ad.getStoragePath(), source);
+            // Records duration and codecs on the ad while the original is at hand
+            mediaProbeService.probeAdUpload(ad, source);
+
+            List<AdRendition> renditions = new ArrayList<>();
+            for (RenditionSpec spec : specs()) {
+                Path encoded = videoProcessingService.encodeRendition(source, spec.width(), spec.height(),
+                        spec.frameRate(), spec.frameRate() * gopSeconds, workDir);
+                VideoProcessingService.StreamParams params = videoProcessingService.probeStreamParams(encoded);
+
+                String storagePath = ad.getUserId() + "/renditions/" + adId + "-" + spec.label() + ".mp4";
+                storageService.uploadFileToStorage(BUCKET, storagePath, encoded, "video/mp4");
+
+                AdRendition rendition = new AdRendition(adId, spec.label());
+                rendition.setStoragePath(storagePath);
+                rendition.setFileUrl(storageService.getPublicUrl(BUCKET, storagePath));
+                rendition.setFileSize(Files.size(encoded));
+                rendition.setVideoCodec(params.videoCodec());
+                rendition.setVideoProfile(params.videoProfile());
+                rendition.setWidth(params.width());
+                rendition.setHeight(params.height());
+                rendition.setPixelFormat(params.pixelFormat());
+                rendition.setFrameRate(params.frameRate());
+                rendition.setGopFrames(spec.frameRate() * gopSeconds);
+                rendition.setAudioCodec(params.audioCodec());
+                rendition.setSampleRate(params.sampleRate());
+                rendition.setChannels(params.channels());
+                renditions.add(rendition);
+                Files.deleteIfExists(encoded);
+            }
+
+            adRenditionRepository.deleteAll(adRenditionRepository.findByAdId(adId));
+            List<AdRendition> saved = adRenditionRepository.saveAll(renditions);
+            logger.info("Generated renditions {} for ad {}",
+                    saved.stream().map(AdRendition::getLabel).toList(), adId);
+            return saved;
+        } finally {
+            videoProcessingService.cleanupWorkDir(workDir);
+        }
+    }
+
+    /**
+     * Renditions of the given ads, keyed by ad id
+     */
+    public Map<String, List<AdRendition>> renditionsFor(List<AdUpload> ads) {
+        return adRenditionRepository.findByAdIdIn(ads.stream().map(AdUpload::getId).toList()).stream()
+                .collect(Collectors.groupingBy(AdRendition::getAdId));
+    }
+
+    /**
+     * Where a job should fetch a rendition from
+     */
+    public static AdSource sourceOf(AdRendition rendition) {
+        return new AdSource(rendition.getAdId() + "-" + rendition.getLabel(), rendition.getFileUrl());
+    }
+
+    /**
+     * Pick, for each ad, the rendition whose codec parameters match the video it will be joined with,
+     * so the ad can be stream-copied, falling back to the original upload when none match
+     * @return the file to insert for each ad, in order
+     */
+    public List<Path> choose(List<LocalAd> ads, Path renderedVideo) throws IOException, InterruptedException {
+        VideoProcessingService.StreamParams target = videoProcessingService.probeStreamParams(renderedVideo);
+        List<Path> chosen = new ArrayList<>();
+        for (LocalAd ad : ads) {
+            List<AdRendition> renditions = ad.renditions().stream().map(RenditionFile::rendition).toList();
+            Optional<RenditionFile> match = select(renditions, target)
+                    .map(rendition -> ad.renditions().get(renditions.indexOf(rendition)));
+            if (match.isPresent()) {
+                logger.info("Using {} rendition of ad {}", match.get().rendition().getLabel(),
+                        match.get().rendition().getAdId());
+                chosen.add(match.get().path());
+            } else {
+                chosen.add(ad.original());
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Remove an ad's renditions from storage and the database
+     */
+    public void deleteRenditions(String adId) throws IOException {
+        List<AdRendition> renditions = adRenditionRepository.findByAdId(adId);
+        for (AdRendition rendition : renditions) {
+            storageService.deleteFromStorage(BUCKET, rendition.getStoragePath());
+        }
+        adRenditionRepository.deleteAll(renditions);
+    }
+
+    /**
+     * The rendition whose video can be concatenated with the main video as-is, preferring one whose
+     * audio matches too so nothing at all has to be re-encoded
+     */
+    static Optional<AdRendition> select(List<AdRendition> renditions, VideoProcessingService.StreamParams main) {
+        return renditions.stream()
+                .filter(rendition -> paramsOf(rendition).videoMatches(main))
+                .max(Comparator.comparing(rendition -> paramsOf(rendition).audioMatches(main)));
+    }
+
+    private static VideoProcessingService.StreamParams paramsOf(AdRendition rendition) {
+        return new VideoProcessingService.StreamParams(
+                rendition.getVideoCodec(),
+                rendition.getVideoProfile(),
+                rendition.getWidth() != null ? rendition.getWidth() : 0,
+                rendition.getHeight() != null ? rendition.getHeight() : 0,
+                rendition.getPixelFormat(),
+                rendition.getFrameRate(),
+                rendition.getAudioCodec(),
+                rendition.getSampleRate() != null ? rendition.getSampleRate() : 0,
+                rendition.getChannels() != null ? rendition.getChannels() : 0
+        );
+    }
+
+    private List<RenditionSpec> specs() {
+        List<RenditionSpec> specs = new ArrayList<>();
+        for (String spec : profiles.split(",")) {
+            if (!spec.isBlank()) {
+                specs.add(RenditionSpec.parse(spec));
+            }
+        }
+        return specs;
+    }
+}
@@ -0,0 +1,135 @@
+package com.richwavelet.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs AI analysis tasks on a fixed number of workers fed from bounded priority lanes, so bulk
+ * imports queue behind interactive requests instead of all downloading and calling Vertex AI at
+ * once. Submissions beyond a lane's capacity are rejected rather than buffered without bound.
+ */
+@Component
+public class AnalysisScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisScheduler.class);
+
+    /**
+     * Lanes in the order workers drain them
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    /**
+     * Thrown when a lane is full; callers should report the analysis as not queued
+     */
+    public static class QueueFullException extends RejectedExecutionException {
+        public QueueFullException(Priority priority) {
+            super("Analysis queue is full (" + priority.name().toLowerCase() + "), try again later");
+        }
+    }
+
+    private record Task(String name, Runnable work) {}
+
+    @Value("${analysis.scheduler.workers:4}")
+    private int workers = 4;
+
+    @Value("${analysis.scheduler.queue-capacity:200}")
+    private int queueCapacity = 200;
+
+    private final Map<Priority, BlockingQueue<Task>> lanes = new EnumMap<>(Priority.class);
+    // Counts queued tasks across lanes, so idle workers block instead of polling
+    private final Semaphore queued = new Semaphore(0);
+    private ExecutorService executor;
+    private boolean shutdown;
+
+    /**
+     * Queue a task in a lane
+     * @throws QueueFullException if the lane is at capacity
+     */
+    public void submit(String name, Priority priority, Runnable work) {
+        start();
+        if (!lanes.get(priority).offer(new Task(name, work))) {
+            logger.warn("Rejected {}: {} lane is full", name, priority);
+            throw new QueueFullException(priority);
+        }
+        queued.release();
+        logger.debug("Queued {} in {} lane", name, priority);
+    }
+
+    /**
+     * Number of tasks waiting in a lane
+     */
+    public synchronized int queued(Priority priority) {
+        BlockingQueue<Task> lane = lanes.get(priority);
+        return lane != null ? lane.size() : 0;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private synchronized void start() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Analysis scheduler is shut down");
+        }
+        if (executor != null) {
+            return;
+        }
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            executor.submit(this::work);
+        }
+        logger.info("Started {} analysis workers, {} queued tasks per lane", workers, queueCapacity);
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                queued.acquire();
+                task = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.work().run();
+            } catch (RuntimeException e) {
+                logger.error("Analysis task {} failed: {}", task.name(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * The oldest task of the highest-priority non-empty lane. A permit was taken for it, so one exists.
+     */
+    private Task next() {
+        for (Priority priority : Priority.values()) {
+            Task task = lanes.get(priority).poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        throw new IllegalStateException("Queued task count out of sync");
+    }
+}
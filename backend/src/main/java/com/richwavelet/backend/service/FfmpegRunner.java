@@ -0,0 +1,250 @@
+package com.richwavelet.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs FFmpeg with machine-readable progress output. Progress blocks from {@code -progress pipe:1}
+ * are parsed as they arrive and reported to a listener, with the output time interpolated from the
+ * reported speed between blocks; the final encode fps and realtime factor of every run are logged
+ * as a metrics line and returned to the caller.
+ */
+@Component
+public class FfmpegRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegRunner.class);
+
+    private static final Set<String> PROGRESS_KEYS = Set.of(
+            "frame", "fps", "bitrate", "total_size", "out_time_us", "out_time_ms", "out_time",
+            "dup_frames", "drop_frames", "speed", "progress");
+
+    private static final long INTERPOLATION_TICK_MILLIS = 1000;
+    // Extrapolation stops this long after the last block, in case FFmpeg has stalled
+    private static final double MAX_INTERPOLATION_SECONDS = 10;
+
+    /**
+     * Receives the share of the expected output written so far, from 0 to 1
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        ProgressListener NONE = fraction -> {};
+
+        void onProgress(double fraction);
+    }
+
+    /**
+     * Throughput of a finished FFmpeg run
+     *
+     * @param encodeFps      average frames encoded per second of wall-clock time, 0 for stream copies
+     * @param realtimeFactor seconds of output written per second of wall-clock time
+     */
+    public record RunStats(String description, double outputSeconds, double encodeFps, double realtimeFactor,
+                           Duration elapsed) {}
+
+    /**
+     * Run an FFmpeg command without progress reporting
+     */
+    public RunStats run(List<String> command, String description) throws IOException, InterruptedException {
+        return run(command, description, 0, ProgressListener.NONE);
+    }
+
+    /**
+     * Run an FFmpeg command and wait for completion
+     *
+     * @param expectedSeconds duration of the output, used to turn output time into a fraction; 0 if unknown
+     */
+    public RunStats run(List<String> command, String description, double expectedSeconds,
+                        ProgressListener listener) throws IOException, InterruptedException {
+        List<String> withProgress = withProgressOutput(command);
+        logger.info("Running FFmpeg command for {}: {}", description, String.join(" ", withProgress));
+
+        long startNanos = System.nanoTime();
+        ProcessBuilder pb = new ProcessBuilder(withProgress);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+
+        ProgressParser parser = new ProgressParser();
+        // A blocked read ignores interrupts, so output is read on its own thread while this one waits
+        // in waitFor; interrupting the caller then stops FFmpeg instead of leaving it running
+        Thread reader = Thread.ofVirtual().name("ffmpeg-output").start(() -> readOutput(
+                process, parser, expectedSeconds, listener));
+        int exitCode;
+        try {
+            // Between progress blocks, report the output time extrapolated from the last block's speed
+            while (!process.waitFor(INTERPOLATION_TICK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (expectedSeconds > 0) {
+                    OptionalDouble estimate = parser.estimatedOutTimeSeconds(System.nanoTime());
+                    if (estimate.isPresent()) {
+                        report(listener, Math.min(1.0, estimate.getAsDouble() / expectedSeconds));
+                    }
+                }
+            }
+            exitCode = process.exitValue();
+            reader.join();
+        } finally {
+            if (process.isAlive()) {
+                logger.warn("Stopping FFmpeg for {}", description);
+                process.destroyForcibly();
+                // Wait uninterruptibly so the caller can safely delete the files FFmpeg was writing
+                process.onExit().join();
+            }
+        }
+        if (exitCode != 0) {
+            throw new IOException("FFmpeg command failed for " + description + " with exit code: " + exitCode);
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        RunStats stats = parser.stats(description, elapsed);
+        logger.info("FFmpeg metrics for {}: outputSeconds={} encodeFps={} realtimeFactor={} elapsedMs={}",
+                description,
+                String.format(Locale.ROOT, "%.2f", stats.outputSeconds()),
+                String.format(Locale.ROOT, "%.1f", stats.encodeFps()),
+                String.format(Locale.ROOT, "%.2f", stats.realtimeFactor()),
+                elapsed.toMillis());
+        return stats;
+    }
+
+    private void readOutput(Process process, ProgressParser parser, double expectedSeconds,
+                            ProgressListener listener) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!parser.accept(line)) {
+                    // With -v error only the reason for a failure reaches this point
+                    logger.debug("FFmpeg: {}", line);
+                } else if (parser.blockComplete() && expectedSeconds > 0) {
+                    report(listener, Math.min(1.0, parser.outTimeSeconds() / expectedSeconds));
+                }
+            }
+        } catch (IOException e) {
+            // The stream closes when the process is destroyed
+            logger.debug("Stopped reading FFmpeg output: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A failed progress update must not stop the output being drained, or FFmpeg blocks on a full pipe
+     */
+    private static void report(ProgressListener listener, double fraction) {
+        try {
+            listener.onProgress(fraction);
+        } catch (RuntimeException e) {
+            logger.warn("Progress listener failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Insert the progress and quiet-logging options right after the executable
+     */
+    List<String> withProgressOutput(List<String> command) {
+        List<String> result = new ArrayList<>(command.size() + 5);
+        result.add(command.get(0));
+        result.addAll(List.of("-progress", "pipe:1", "-nostats", "-v", "error"));
+        result.addAll(command.subList(1, command.size()));
+        return result;
+    }
+
+    /**
+     * Incremental parser for the key=value blocks written by {@code -progress}.
+     * Each block ends with a {@code progress=continue} or {@code progress=end} line.
+     */
+    static class ProgressParser {
+
+        /**
+         * Output time and speed of the last complete block, and when it arrived
+         */
+        private record Block(double outTimeSeconds, double speed, long nanos) {}
+
+        private double outTimeSeconds;
+        private double fps;
+        private double speed;
+        private boolean blockComplete;
+        // Read by the thread waiting for FFmpeg while this parser runs on the output thread
+        private volatile Block lastBlock;
+
+        /**
+         * Consume one output line, returning false if it is not part of a progress block
+         */
+        boolean accept(String line) {
+            return accept(line, System.nanoTime());
+        }
+
+        boolean accept(String line, long nanos) {
+            blockComplete = false;
+            int eq = line.indexOf('=');
+            if (eq <= 0) {
+                return false;
+            }
+            String key = line.substring(0, eq).trim();
+            if (!PROGRESS_KEYS.contains(key) && !key.startsWith("stream_")) {
+                return false;
+            }
+            String value = line.substring(eq + 1).trim();
+            switch (key) {
+                // Both are microseconds despite the name of the older key
+                case "out_time_us", "out_time_ms" -> parse(value, 1_000_000.0)
+                        .ifPresent(seconds -> outTimeSeconds = seconds);
+                case "fps" -> parse(value, 1.0).ifPresent(v -> fps = v);
+                case "speed" -> parse(value.endsWith("x") ? value.substring(0, value.length() - 1) : value, 1.0)
+                        .ifPresent(v -> speed = v);
+                case "progress" -> {
+                    blockComplete = true;
+                    lastBlock = new Block(outTimeSeconds, speed, nanos);
+                }
+                default -> {
+                    // Counters we do not report
+                }
+            }
+            return true;
+        }
+
+        boolean blockComplete() {
+            return blockComplete;
+        }
+
+        double outTimeSeconds() {
+            return outTimeSeconds;
+        }
+
+        /**
+         * Output time at {@code nanos}, extrapolated from the last block at the speed it reported
+         * @return empty before the first block
+         */
+        OptionalDouble estimatedOutTimeSeconds(long nanos) {
+            Block block = lastBlock;
+            if (block == null) {
+                return OptionalDouble.empty();
+            }
+            double sinceBlock = Math.min(Math.max(0, (nanos - block.nanos()) / 1e9), MAX_INTERPOLATION_SECONDS);
+            return OptionalDouble.of(block.outTimeSeconds() + block.speed() * sinceBlock);
+        }
+
+        RunStats stats(String description, Duration elapsed) {
+            double wallSeconds = elapsed.toNanos() / 1e9;
+            double realtime = speed > 0 ? speed : (wallSeconds > 0 ? outTimeSeconds / wallSeconds : 0);
+            return new RunStats(description, outTimeSeconds, fps, realtime, elapsed);
+        }
+
+        private static OptionalDouble parse(String value, double divisor) {
+            try {
+                return OptionalDouble.of(Double.parseDouble(value) / divisor);
+            } catch (NumberFormatException e) {
+                // FFmpeg reports N/A until the first frame is written
+                return OptionalDouble.empty();
+            }
+        }
+    }
+}
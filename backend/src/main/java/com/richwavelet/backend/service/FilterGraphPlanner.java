@@ -0,0 +1,202 @@
+package com.richwavelet.backend.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds a single FFmpeg invocation that renders the whole worker pipeline
+ * (shader chain, ad splices and vintage audio) in one decode/encode pass.
+ */
+@Component
+public class FilterGraphPlanner {
+
+    private static final String AUDIO_FORMAT = "aformat=sample_fmts=fltp:sample_rates=48000:channel_layouts=stereo";
+
+    /**
+     * Probed properties of an input file that the planner needs to build the graph
+     */
+    public record InputSpec(Path path, double durationSeconds, int width, int height, String frameRate, boolean hasAudio) {}
+
+    /**
+     * Build the FFmpeg command for a single-pass render.
+     *
+     * @param main         the main video
+     * @param shader       the compiled shader for the main video, or null for none
+     * @param audioFilters the audio filter chain applied to the final programme, or null for none
+     * @param ads          ad videos, cycled through in insertion order
+     * @param insertSeconds sorted insertion points in seconds, all strictly inside the main video
+     * @param output       the output file
+     */
+    public List<String> plan(InputSpec main, ShaderCompiler.CompiledShader shader, String audioFilters,
+                             List<InputSpec> ads, List<Double> insertSeconds, Path output) {
+        List<InputSpec> inputs = new ArrayList<>();
+        inputs.add(main);
+
+        // Each splice gets its own input so an ad can be reused without a split
+        List<Integer> adInputIndexes = new ArrayList<>();
+        if (!ads.isEmpty()) {
+            for (int i = 0; i < insertSeconds.size(); i++) {
+                inputs.add(ads.get(i % ads.size()));
+                adInputIndexes.add(inputs.size() - 1);
+            }
+        }
+
+        boolean withAudio = inputs.stream().anyMatch(InputSpec::hasAudio);
+        String graph = adInputIndexes.isEmpty()
+                ? buildPassThroughGraph(main, shader, audioFilters, withAudio)
+                : buildSpliceGraph(main, shader, audioFilters, inputs, adInputIndexes, insertSeconds, withAudio);
+
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y"));
+        for (InputSpec input : inputs) {
+            command.add("-i");
+            command.add(input.path().toString());
+        }
+        command.addAll(List.of("-filter_complex", graph, "-map", "[outv]"));
+        if (withAudio) {
+            command.addAll(List.of("-map", "[outa]"));
+        }
+        command.addAll(List.of(
+                "-c:v", "libx264",
+                "-preset", "fast",
+                "-crf", "23"
+        ));
+        if (withAudio) {
+            command.addAll(List.of("-c:a", "aac", "-b:a", "192k"));
+        }
+        command.addAll(List.of("-movflags", "+faststart", output.toString()));
+        return command;
+    }
+
+    /**
+     * Graph for a render without ad splices: shader on video, effects on audio
+     */
+    private String buildPassThroughGraph(InputSpec main, ShaderCompiler.CompiledShader shader, String audioFilters, boolean withAudio) {
+        List<String> chains = new ArrayList<>();
+        chains.add(shaderChain(shader) + "[outv]");
+        if (withAudio) {
+            chains.add("[0:a]" + chain(audioFilters, "anull") + "[outa]");
+        }
+        return String.join(";", chains);
+    }
+
+    /**
+     * Graph that cuts the shaded main video at each insertion point and concatenates
+     * the pieces with conformed ad inputs
+     */
+    private String buildSpliceGraph(InputSpec main, ShaderCompiler.CompiledShader shader, String audioFilters,
+                                    List<InputSpec> inputs, List<Integer> adInputIndexes,
+                                    List<Double> insertSeconds, boolean withAudio) {
+        List<String> chains = new ArrayList<>();
+
+        // Main segments: [start, end) ranges between insertion points
+        List<double[]> ranges = new ArrayList<>();
+        double lastEnd = 0;
+        for (double insertTime : insertSeconds) {
+            ranges.add(new double[]{lastEnd, insertTime});
+            lastEnd = insertTime;
+        }
+        boolean hasFinalSegment = lastEnd < main.durationSeconds();
+        if (hasFinalSegment) {
+            ranges.add(new double[]{lastEnd, main.durationSeconds()});
+        }
+
+        int segmentCount = ranges.size();
+        chains.add(shaderChain(shader, "format=yuv420p", "setsar=1") + splitTo("split", "mv", segmentCount));
+        if (withAudio) {
+            String mainAudio = main.hasAudio()
+                    ? "[0:a]" + AUDIO_FORMAT
+                    : silence(main.durationSeconds());
+            chains.add(mainAudio + splitTo("asplit", "ma", segmentCount));
+        }
+
+        for (int i = 0; i < segmentCount; i++) {
+            double[] range = ranges.get(i);
+            boolean lastRange = hasFinalSegment && i == segmentCount - 1;
+            String end = lastRange ? "" : ":end=" + seconds(range[1]);
+            chains.add("[mv" + i + "]trim=start=" + seconds(range[0]) + end + ",setpts=PTS-STARTPTS[sv" + i + "]");
+            if (withAudio) {
+                chains.add("[ma" + i + "]atrim=start=" + seconds(range[0]) + end + ",asetpts=PTS-STARTPTS[sa" + i + "]");
+            }
+        }
+
+        // Ads are scaled and padded to the main video's frame so concat accepts them
+        for (int adIndex : adInputIndexes) {
+            InputSpec ad = inputs.get(adIndex);
+            chains.add("[" + adIndex + ":v]" + String.join(",",
+                    "scale=" + main.width() + ":" + main.height() + ":force_original_aspect_ratio=decrease",
+                    "pad=" + main.width() + ":" + main.height() + ":(ow-iw)/2:(oh-ih)/2",
+                    "setsar=1",
+                    "fps=" + main.frameRate(),
+                    "format=yuv420p") + "[av" + adIndex + "]");
+            if (withAudio) {
+                String adAudio = ad.hasAudio()
+                        ? "[" + adIndex + ":a]" + AUDIO_FORMAT
+                        : silence(ad.durationSeconds());
+                chains.add(adAudio + ",asetpts=PTS-STARTPTS[aa" + adIndex + "]");
+            }
+        }
+
+        // Interleave main segments and ads in playback order
+        StringBuilder concatInputs = new StringBuilder();
+        int concatCount = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            concatInputs.append("[sv").append(i).append("]");
+            if (withAudio) {
+                concatInputs.append("[sa").append(i).append("]");
+            }
+            concatCount++;
+            if (i < adInputIndexes.size()) {
+                int adIndex = adInputIndexes.get(i);
+                concatInputs.append("[av").append(adIndex).append("]");
+                if (withAudio) {
+                    concatInputs.append("[aa").append(adIndex).append("]");
+                }
+                concatCount++;
+            }
+        }
+
+        if (withAudio) {
+            chains.add(concatInputs + "concat=n=" + concatCount + ":v=1:a=1[outv][cat]");
+            chains.add("[cat]" + chain(audioFilters, "anull") + "[outa]");
+        } else {
+            chains.add(concatInputs + "concat=n=" + concatCount + ":v=1:a=0[outv]");
+        }
+
+        return String.join(";", chains);
+    }
+
+    private String splitTo(String filter, String prefix, int count) {
+        if (count == 1) {
+            return "[" + prefix + "0]";
+        }
+        StringBuilder labels = new StringBuilder("," + filter + "=" + count);
+        for (int i = 0; i < count; i++) {
+            labels.append("[").append(prefix).append(i).append("]");
+        }
+        return labels.toString();
+    }
+
+    private String silence(double durationSeconds) {
+        return "anullsrc=r=48000:cl=stereo,atrim=duration=" + seconds(durationSeconds) + "," + AUDIO_FORMAT;
+    }
+
+    private String chain(String filters, String passThrough) {
+        return filters == null || filters.isBlank() ? passThrough : filters;
+    }
+
+    /**
+     * The main video's shader chain followed by extra filters, left open for the caller's output
+     */
+    private String shaderChain(ShaderCompiler.CompiledShader shader, String... extraFilters) {
+        ShaderCompiler.CompiledShader effective = shader != null ? shader : ShaderCompiler.CompiledShader.of();
+        return effective.chain("0:v", extraFilters);
+    }
+
+    private String seconds(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,98 @@
+package com.richwavelet.backend.service;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages videos in a Cloud Storage bucket through the JSON API, streaming the file from disk,
+ * so Gemini can read them as {@code gs://} URIs
+ */
+@Component
+public class GcsVideoStagingStore implements VideoStagingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(GcsVideoStagingStore.class);
+    private static final String SCOPE = "https://www.googleapis.com/auth/devstorage.read_write";
+
+    @Value("${gemini.staging.bucket:}")
+    private String bucket;
+
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .writeTimeout(5, TimeUnit.MINUTES)
+            .readTimeout(2, TimeUnit.MINUTES)
+            .build();
+    private GoogleCredentials credentials;
+
+    @Override
+    public boolean isEnabled() {
+        return bucket != null && !bucket.isBlank();
+    }
+
+    @Override
+    public String stage(Path file, String objectName, String mimeType) throws IOException {
+        HttpUrl url = HttpUrl.get("https://storage.googleapis.com/upload/storage/v1/b/").newBuilder()
+                .addPathSegment(bucket)
+                .addPathSegment("o")
+                .addQueryParameter("uploadType", "media")
+                .addQueryParameter("name", objectName)
+                .build();
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + accessToken())
+                .post(StorageService.fileRegionBody(file, 0, Files.size(file), MediaType.parse(mimeType)))
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Staging upload failed: " + response.code() + " " + response.message());
+            }
+        }
+        String uri = "gs://" + bucket + "/" + objectName;
+        logger.info("Staged {} for Gemini at {}", file.getFileName(), uri);
+        return uri;
+    }
+
+    @Override
+    public void delete(String uri) throws IOException {
+        String prefix = "gs://" + bucket + "/";
+        if (!uri.startsWith(prefix)) {
+            throw new IllegalArgumentException("Not a staged object: " + uri);
+        }
+        HttpUrl url = HttpUrl.get("https://storage.googleapis.com/storage/v1/b/").newBuilder()
+                .addPathSegment(bucket)
+                .addPathSegment("o")
+                .addPathSegment(uri.substring(prefix.length()))
+                .build();
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + accessToken())
+                .delete()
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() && response.code() != 404) {
+                throw new IOException("Staging delete failed: " + response.code() + " " + response.message());
+            }
+        }
+    }
+
+    private synchronized String accessToken() throws IOException {
+        if (credentials == null) {
+            credentials = GoogleCredentials.getApplicationDefault().createScoped(SCOPE);
+        }
+        credentials.refreshIfExpired();
+        return credentials.getAccessToken().getTokenValue();
+    }
+}
@@ -0,0 +1,173 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.GeminiAnalysisCacheEntry;
+import com.richwavelet.backend.repository.GeminiAnalysisCacheRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gemini responses keyed by the SHA-256 of the analyzed media together with the use case, prompt
+ * version, model and variant (such as the shader style), so re-analyzing identical input is served
+ * without calling Vertex AI. Entries live in Postgres with a bounded in-memory tier in front, and
+ * expire after a TTL.
+ */
+@Service
+public class GeminiAnalysisCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiAnalysisCache.class);
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+
+    @Value("${gemini.model:gemini-2.0-flash-001}")
+    private String geminiModel;
+
+    @Value("${gemini.analysis-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${gemini.analysis-cache.ttl-days:30}")
+    private int ttlDays = 30;
+
+    @Value("${gemini.analysis-cache.memory-entries:512}")
+    private int memoryEntries = 512;
+
+    /**
+     * What a response depends on besides the model. Bump the prompt version whenever a prompt or
+     * response schema changes so older responses are no longer served.
+     */
+    public record Key(String useCase, String promptVersion, String variant, String contentSha256) {}
+
+    private record Cached(String response, OffsetDateTime expiresAt) {}
+
+    private final Map<String, Cached> memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > memoryEntries;
+        }
+    });
+    private final AtomicLong lastPurgeMillis = new AtomicLong();
+    private final GeminiAnalysisCacheRepository repository;
+
+    public GeminiAnalysisCache(GeminiAnalysisCacheRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Whether results are cached at all; callers can skip hashing media when they are not
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The cached response for a key, if one has not expired
+     */
+    public Optional<String> get(Key key) {
+        if (!enabled || key.contentSha256() == null) {
+            return Optional.empty();
+        }
+        String id = id(key);
+        OffsetDateTime now = OffsetDateTime.now();
+
+        Cached cached = memory.get(id);
+        if (cached == null) {
+            try {
+                cached = repository.findById(id)
+                        .map(entry -> new Cached(entry.getResponse(), entry.getExpiresAt()))
+                        .orElse(null);
+            } catch (RuntimeException e) {
+                logger.warn("Reading analysis cache failed: {}", e.getMessage());
+                return Optional.empty();
+            }
+            if (cached != null && cached.expiresAt().isAfter(now)) {
+                memory.put(id, cached);
+            }
+        }
+        if (cached == null || !cached.expiresAt().isAfter(now)) {
+            memory.remove(id);
+            return Optional.empty();
+        }
+        logger.info("Analysis cache hit for {} {} ({})", key.useCase(), key.contentSha256(), key.variant());
+        return Optional.of(cached.response());
+    }
+
+    /**
+     * Store a response. Failures are logged, since the cache only ever saves work.
+     */
+    public void put(Key key, String response) {
+        if (!enabled || key.contentSha256() == null) {
+            return;
+        }
+        String id = id(key);
+        OffsetDateTime expiresAt = OffsetDateTime.now().plusDays(ttlDays);
+        memory.put(id, new Cached(response, expiresAt));
+        try {
+            repository.save(new GeminiAnalysisCacheEntry(id, key.useCase(), geminiModel, key.promptVersion(),
+                    key.variant(), key.contentSha256(), response, expiresAt));
+            purgeExpired();
+        } catch (RuntimeException e) {
+            logger.warn("Writing analysis cache failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Hex SHA-256 of a file's content, for media whose hash was not recorded at upload
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    String id(Key key) {
+        MessageDigest digest = newDigest();
+        String material = String.join("\n", key.useCase(), geminiModel, key.promptVersion(),
+                key.variant() != null ? key.variant() : "", key.contentSha256());
+        return HexFormat.of().formatHex(digest.digest(material.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Delete expired rows, at most once per purge interval
+     */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        long last = lastPurgeMillis.get();
+        if (now - last < PURGE_INTERVAL.toMillis() || !lastPurgeMillis.compareAndSet(last, now)) {
+            return;
+        }
+        int deleted = repository.deleteExpired(OffsetDateTime.now());
+        if (deleted > 0) {
+            logger.info("Purged {} expired analysis cache entries", deleted);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
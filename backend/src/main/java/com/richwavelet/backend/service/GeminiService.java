@@ -2,112 +2,119 @@ package com.richwavelet.backend.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.cloud.vertexai.VertexAI;
 import com.google.cloud.vertexai.api.*;
-import com.google.cloud.vertexai.generativeai.GenerativeModel;
 import com.google.cloud.vertexai.generativeai.ResponseHandler;
-import com.google.protobuf.ByteString;
 import com.richwavelet.backend.dto.AdInsertionPoint;
 import com.richwavelet.backend.dto.GeminiAnalysisResult;
 import com.richwavelet.backend.dto.SceneBreak;
 import com.richwavelet.backend.model.ShaderStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class GeminiService {
 
     private static final Logger logger = LoggerFactory.getLogger(GeminiService.class);
-
-    @Value("${gcp.project-id}")
-    private String projectId;
-
-    @Value("${gcp.location:us-central1}")
-    private String location;
-
-    @Value("${gemini.model:gemini-2.0-flash-001}")
-    private String geminiModel;
+    // Bump when the prompt or response schema changes so cached analyses are not reused
+    private static final String PROMPT_VERSION = "1";
 
     private final ObjectMapper objectMapper;
-
-    public GeminiService() {
+    private final VertexAiClientPool vertexAiClientPool;
+    private final GeminiVideoParts geminiVideoParts;
+    private final GeminiAnalysisCache analysisCache;
+    private final VertexAiClientPool.ModelSpec videoAnalysisModel =
+            new VertexAiClientPool.ModelSpec("video-analysis", buildVertexResponseSchema());
+
+    public GeminiService(VertexAiClientPool vertexAiClientPool, GeminiVideoParts geminiVideoParts,
+                         GeminiAnalysisCache analysisCache) {
         this.objectMapper = new ObjectMapper();
+        this.vertexAiClientPool = vertexAiClientPool;
+        this.geminiVideoParts = geminiVideoParts;
+        this.analysisCache = analysisCache;
     }
 
     /**
-     * Upload a video and return base64 data for inline use with Vertex AI.
-     * Note: Vertex AI Gemini supports inline video data for smaller files.
-     * For larger files, consider using Cloud Storage URIs (gs://).
-     * @return Base64 encoded video data
+     * Prepare a video for Vertex AI: inline from a read-only mapping of the file when it is small
+     * enough, otherwise staged in Cloud Storage and referenced by URI.
+     * Pass the result to {@link #releaseVideo(Part)} when analysis is done.
      */
-    public String uploadVideo(Path videoPath, String displayName) throws IOException {
-        logger.info("Reading video for Vertex AI Gemini: {}", displayName);
-        
-        // Read and encode video - Vertex AI accepts inline base64 for videos up to ~20MB
-        // For larger files, you should upload to GCS and use gs:// URI
-        byte[] videoBytes = Files.readAllBytes(videoPath);
-        String base64Video = Base64.getEncoder().encodeToString(videoBytes);
-        
-        logger.info("Video prepared for Vertex AI: {} ({} bytes)", displayName, videoBytes.length);
-        return base64Video;
+    public Part uploadVideo(Path videoPath, String displayName) throws IOException {
+        logger.info("Preparing video for Vertex AI Gemini: {}", displayName);
+        return geminiVideoParts.videoPart(videoPath, displayName);
     }
 
     /**
-     * Analyze video for scene breaks and ad insertion points using Vertex AI Gemini
+     * Remove anything staged for a video prepared by {@link #uploadVideo(Path, String)}
      */
-    public GeminiAnalysisResult analyzeVideo(String base64VideoData, ShaderStyle style) throws IOException {
-        logger.info("Analyzing video with Vertex AI Gemini for {} style", style);
+    public void releaseVideo(Part video) {
+        geminiVideoParts.release(video);
+    }
 
-        String prompt = buildAnalysisPrompt(style);
+    /**
+     * An earlier analysis of the same video content in the same style, if one is cached
+     */
+    public Optional<GeminiAnalysisResult> findCachedAnalysis(String contentSha256, ShaderStyle style) {
+        Optional<String> cached = analysisCache.get(cacheKey(contentSha256, style));
+        if (cached.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(parseAnalysisResponse(cached.get()));
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable cached analysis for {}: {}", contentSha256, e.getMessage());
+            return Optional.empty();
+        }
+    }
 
-        try (VertexAI vertexAI = new VertexAI(projectId, location)) {
-            // Build generation config with JSON response
-            GenerationConfig generationConfig = GenerationConfig.newBuilder()
-                    .setResponseMimeType("application/json")
-                    .setResponseSchema(buildVertexResponseSchema())
-                    .build();
+    /**
+     * Analyze video for scene breaks and ad insertion points using Vertex AI Gemini, caching the
+     * result under the video's content hash when it is known
+     */
+    public GeminiAnalysisResult analyzeVideo(Part video, String contentSha256, ShaderStyle style) throws IOException {
+        logger.info("Analyzing video with Vertex AI Gemini for {} style", style);
 
-            GenerativeModel model = new GenerativeModel.Builder()
-                    .setModelName(geminiModel)
-                    .setVertexAi(vertexAI)
-                    .setGenerationConfig(generationConfig)
-                    .build();
+        String prompt = buildAnalysisPrompt(style);
 
+        try {
             // Build content with video and prompt
-            byte[] videoBytes = Base64.getDecoder().decode(base64VideoData);
-            
             Content content = Content.newBuilder()
                     .setRole("user")
-                    .addParts(Part.newBuilder()
-                            .setInlineData(Blob.newBuilder()
-                                    .setMimeType("video/mp4")
-                                    .setData(ByteString.copyFrom(videoBytes))
-                                    .build())
-                            .build())
+                    .addParts(video)
                     .addParts(Part.newBuilder()
                             .setText(prompt)
                             .build())
                     .build();
 
-            GenerateContentResponse response = model.generateContent(content);
+            GenerateContentResponse response = vertexAiClientPool.generate(videoAnalysisModel, content);
             String responseText = ResponseHandler.getText(response);
-            
-            return parseAnalysisResponse(responseText);
+
+            GeminiAnalysisResult result = parseAnalysisResponse(responseText);
+            analysisCache.put(cacheKey(contentSha256, style), responseText);
+            return result;
         } catch (Exception e) {
             logger.error("Vertex AI Gemini analysis failed: {}", e.getMessage(), e);
             throw new IOException("Gemini analysis failed: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Whether analyses are cached by content hash, which is only worth computing if they are
+     */
+    public boolean isAnalysisCacheEnabled() {
+        return analysisCache.isEnabled();
+    }
+
+    private GeminiAnalysisCache.Key cacheKey(String contentSha256, ShaderStyle style) {
+        return new GeminiAnalysisCache.Key(videoAnalysisModel.useCase(), PROMPT_VERSION, style.name(), contentSha256);
+    }
+
     /**
      * Build the response schema for Vertex AI structured output
      */
@@ -0,0 +1,96 @@
+package com.richwavelet.backend.service;
+
+import com.google.cloud.vertexai.api.Blob;
+import com.google.cloud.vertexai.api.FileData;
+import com.google.cloud.vertexai.api.Part;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Turns a local video into the request part Gemini reads it from. Small files are memory-mapped and
+ * wrapped without copying them onto the heap; files over the inline limit are staged in object storage
+ * and referenced by URI.
+ */
+@Component
+public class GeminiVideoParts {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiVideoParts.class);
+    private static final String MIME_TYPE = "video/mp4";
+
+    // Vertex AI caps inline request data at about 20 MB
+    @Value("${gemini.inline-max-bytes:15728640}")
+    private long inlineMaxBytes = 15L * 1024 * 1024;
+
+    private final VideoStagingStore stagingStore;
+
+    public GeminiVideoParts(VideoStagingStore stagingStore) {
+        this.stagingStore = stagingStore;
+    }
+
+    /**
+     * Build the video part for a request. Call {@link #release(Part)} once the request is done.
+     */
+    public Part videoPart(Path videoPath, String displayName) throws IOException {
+        long size = Files.size(videoPath);
+        if (size > inlineMaxBytes) {
+            if (stagingStore.isEnabled()) {
+                String objectName = "gemini-staging/" + UUID.randomUUID() + ".mp4";
+                String uri = stagingStore.stage(videoPath, objectName, MIME_TYPE);
+                logger.info("Video prepared for Vertex AI: {} ({} bytes, staged at {})", displayName, size, uri);
+                return Part.newBuilder()
+                        .setFileData(FileData.newBuilder()
+                                .setMimeType(MIME_TYPE)
+                                .setFileUri(uri)
+                                .build())
+                        .build();
+            }
+            logger.warn("{} is {} bytes, over the inline limit, and no staging bucket is configured; sending inline",
+                    displayName, size);
+        }
+
+        logger.info("Video prepared for Vertex AI: {} ({} bytes inline)", displayName, size);
+        return Part.newBuilder()
+                .setInlineData(Blob.newBuilder()
+                        .setMimeType(MIME_TYPE)
+                        .setData(mapFile(videoPath, size))
+                        .build())
+                .build();
+    }
+
+    /**
+     * Delete a staged video; inline parts need no cleanup
+     */
+    public void release(Part videoPart) {
+        if (videoPart == null || !videoPart.hasFileData()) {
+            return;
+        }
+        try {
+            stagingStore.delete(videoPart.getFileData().getFileUri());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to delete staged video {}: {}", videoPart.getFileData().getFileUri(), e.getMessage());
+        }
+    }
+
+    /**
+     * The file's bytes as a ByteString backed by a read-only mapping, so they are never copied onto the heap
+     */
+    private static ByteString mapFile(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return UnsafeByteOperations.unsafeWrap(mapped);
+        }
+    }
+}
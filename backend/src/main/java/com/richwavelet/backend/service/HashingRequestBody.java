@@ -0,0 +1,90 @@
+package com.richwavelet.backend.service;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Request body that streams from an input stream with a known length, computing the SHA-256
+ * of the bytes as they are sent. Only OkHttp's segment buffers are held in memory, whatever the size.
+ * The stream is reopened if OkHttp retries the request.
+ */
+public class HashingRequestBody extends RequestBody {
+
+    /**
+     * Opens a fresh stream over the content
+     */
+    @FunctionalInterface
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private final StreamOpener opener;
+    private final long contentLength;
+    private final MediaType contentType;
+
+    private volatile long bytesWritten = -1;
+    private volatile String sha256;
+
+    public HashingRequestBody(StreamOpener opener, long contentLength, MediaType contentType) {
+        this.opener = opener;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        MessageDigest digest = newDigest();
+        long written;
+        try (InputStream in = new DigestInputStream(opener.open(), digest);
+             Source source = Okio.source(in)) {
+            written = sink.writeAll(source);
+        }
+        if (written != contentLength) {
+            throw new IOException("Expected " + contentLength + " bytes but read " + written);
+        }
+        bytesWritten = written;
+        sha256 = HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Bytes sent by the last complete write, or -1 if the body has not been written
+     */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Hex SHA-256 of the content, or null if the body has not been written
+     */
+    public String sha256() {
+        return sha256;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.richwavelet.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richwavelet.backend.dto.MediaInfo;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.model.VideoUpload;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import com.richwavelet.backend.repository.VideoUploadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Probes media files with one ffprobe run each and caches the result, both by local file and by
+ * storage path, so the several properties a job needs (duration, size, codecs, frame rate) cost a
+ * single process spawn per asset. Probe results of uploads are persisted on the upload entities.
+ */
+@Service
+public class MediaProbeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaProbeService.class);
+
+    @Value("${video.probe.cache-size:1024}")
+    private int cacheSize = 1024;
+
+    /**
+     * A local file as it was when probed, so a file rewritten in place is probed again
+     */
+    private record FileKey(Path path, long size, long modifiedMillis) {
+
+        static FileKey of(Path file) throws IOException {
+            return new FileKey(file.toAbsolutePath(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<FileKey, MediaInfo> byFile = lruMap();
+    private final Map<String, MediaInfo> byStoragePath = lruMap();
+    private final VideoUploadRepository videoUploadRepository;
+    private final AdUploadRepository adUploadRepository;
+
+    public MediaProbeService(VideoUploadRepository videoUploadRepository, AdUploadRepository adUploadRepository) {
+        this.videoUploadRepository = videoUploadRepository;
+        this.adUploadRepository = adUploadRepository;
+    }
+
+    /**
+     * Probe a local file, reusing an earlier result if the file has not changed since
+     */
+    public MediaInfo probe(Path file) throws IOException, InterruptedException {
+        FileKey key = FileKey.of(file);
+        MediaInfo cached = byFile.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        MediaInfo info = runFfprobe(file);
+        byFile.put(key, info);
+        return info;
+    }
+
+    /**
+     * Probe a local copy of a stored object, reusing the result for that storage path if it was
+     * probed before (possibly as a different local file)
+     */
+    public MediaInfo probe(String storagePath, Path file) throws IOException, InterruptedException {
+        MediaInfo cached = storagePath != null ? byStoragePath.get(storagePath) : null;
+        if (cached != null) {
+            byFile.put(FileKey.of(file), cached);
+            return cached;
+        }
+        MediaInfo info = probe(file);
+        if (storagePath != null) {
+            byStoragePath.put(storagePath, info);
+        }
+        return info;
+    }
+
+    /**
+     * Probe the downloaded main video of a job, persisting the result the first time
+     */
+    public MediaInfo probeVideoUpload(VideoUpload upload, Path file) throws IOException, InterruptedException {
+        MediaInfo info = known(upload.getStoragePath(), upload.getMediaInfo(), file);
+        if (info == null) {
+            info = probe(upload.getStoragePath(), file);
+            String json = toJson(info);
+            videoUploadRepository.updateMediaInfo(upload.getId(), info.durationSeconds(), json);
+            upload.setDurationSeconds(info.durationSeconds());
+            upload.setMediaInfo(json);
+        }
+        return info;
+    }
+
+    /**
+     * Probe a downloaded original ad, persisting the result the first time
+     */
+    public MediaInfo probeAdUpload(AdUpload ad, Path file) throws IOException, InterruptedException {
+        MediaInfo info = known(ad.getStoragePath(), ad.getMediaInfo(), file);
+        if (info == null) {
+            info = probe(ad.getStoragePath(), file);
+            String json = toJson(info);
+            adUploadRepository.updateMediaInfo(ad.getId(), info.durationSeconds(), json);
+            ad.setDurationSeconds(info.durationSeconds());
+            ad.setMediaInfo(json);
+        }
+        return info;
+    }
+
+    /**
+     * Parse ffprobe {@code -show_streams -show_format} JSON. The first video stream that is not
+     * cover art and the first audio stream are kept.
+     */
+    static MediaInfo parse(JsonNode root) {
+        JsonNode video = null;
+        JsonNode audio = null;
+        for (JsonNode stream : root.path("streams")) {
+            String type = stream.path("codec_type").asText();
+            if ("video".equals(type) && video == null && stream.path("disposition").path("attached_pic").asInt() == 0) {
+                video = stream;
+            } else if ("audio".equals(type) && audio == null) {
+                audio = stream;
+            }
+        }
+
+        JsonNode format = root.path("format");
+        double duration = format.path("duration").asDouble(0);
+        if (duration <= 0 && video != null) {
+            duration = video.path("duration").asDouble(0);
+        }
+
+        MediaInfo.VideoStream videoStream = null;
+        if (video != null) {
+            String frameRate = video.path("r_frame_rate").asText("");
+            if (frameRate.isEmpty() || frameRate.startsWith("0")) {
+                frameRate = video.path("avg_frame_rate").asText("");
+            }
+            videoStream = new MediaInfo.VideoStream(
+                    video.path("codec_name").asText(),
+                    video.hasNonNull("profile") ? video.path("profile").asText() : null,
+                    video.path("width").asInt(),
+                    video.path("height").asInt(),
+                    video.path("pix_fmt").asText(),
+                    frameRate.isEmpty() || frameRate.startsWith("0") ? null : frameRate,
+                    video.path("bit_rate").asLong(0));
+        }
+
+        MediaInfo.AudioStream audioStream = null;
+        if (audio != null) {
+            audioStream = new MediaInfo.AudioStream(
+                    audio.path("codec_name").asText(),
+                    audio.path("sample_rate").asInt(),
+                    audio.path("channels").asInt(),
+                    audio.path("bit_rate").asLong(0));
+        }
+
+        return new MediaInfo(
+                duration,
+                format.path("format_name").asText(null),
+                format.path("size").asLong(0),
+                format.path("bit_rate").asLong(0),
+                videoStream,
+                audioStream);
+    }
+
+    String toJson(MediaInfo info) throws IOException {
+        return objectMapper.writeValueAsString(info);
+    }
+
+    /**
+     * A result already cached for the storage path or persisted on the entity, bound to the local file
+     */
+    private MediaInfo known(String storagePath, String persistedJson, Path file) throws IOException {
+        MediaInfo info = storagePath != null ? byStoragePath.get(storagePath) : null;
+        if (info == null && persistedJson != null) {
+            try {
+                info = objectMapper.readValue(persistedJson, MediaInfo.class);
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable media info for {}: {}", storagePath, e.getMessage());
+                return null;
+            }
+            if (storagePath != null) {
+                byStoragePath.put(storagePath, info);
+            }
+        }
+        if (info != null) {
+            byFile.put(FileKey.of(file), info);
+        }
+        return info;
+    }
+
+    private MediaInfo runFfprobe(Path file) throws IOException, InterruptedException {
+        List<String> command = List.of(
+                "ffprobe",
+                "-v", "error",
+                "-print_format", "json",
+                "-show_streams",
+                "-show_format",
+                file.toString()
+        );
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = pb.start();
+
+        JsonNode root;
+        try (InputStream in = process.getInputStream()) {
+            root = objectMapper.readTree(in);
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("ffprobe failed for " + file);
+        }
+
+        MediaInfo info = parse(root);
+        logger.debug("Probed {}: {}", file, info);
+        return info;
+    }
+
+    private <K> Map<K, MediaInfo> lruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, MediaInfo> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+}
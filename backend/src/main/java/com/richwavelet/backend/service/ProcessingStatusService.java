@@ -5,16 +5,21 @@ import com.richwavelet.backend.model.ProcessingStatus;
 import com.richwavelet.backend.repository.ProcessingStatusRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
 import java.util.Optional;
+import java.util.function.IntConsumer;
 
 @Service
 public class ProcessingStatusService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProcessingStatusService.class);
 
+    @Value("${processing.status.progress-interval-seconds:2}")
+    private double progressIntervalSeconds;
+
     private final ProcessingStatusRepository statusRepository;
 
     public ProcessingStatusService(ProcessingStatusRepository statusRepository) {
@@ -51,6 +56,76 @@ public class ProcessingStatusService {
         logger.info("Updated status for job {}: {} - {} ({}%)", jobId, stage, info, progressPercent);
     }
 
+    /**
+     * Progress listener for one stage that maps the stage's 0-1 progress onto
+     * fromPercent..toPercent and writes it at most once per progress interval
+     */
+    public FfmpegRunner.ProgressListener progressListener(String jobId, String userId, ProcessingStage stage,
+                                                          String info, int fromPercent, int toPercent) {
+        return progressListener(fromPercent, toPercent,
+                percent -> updateStatus(jobId, userId, stage, info, percent));
+    }
+
+    private FfmpegRunner.ProgressListener progressListener(int fromPercent, int toPercent, IntConsumer writer) {
+        long intervalNanos = (long) (progressIntervalSeconds * 1_000_000_000L);
+        return new FfmpegRunner.ProgressListener() {
+            private long lastUpdateNanos = System.nanoTime();
+            private int lastPercent = fromPercent;
+
+            @Override
+            public synchronized void onProgress(double fraction) {
+                int percent = fromPercent + (int) Math.round(Math.max(0, Math.min(1, fraction)) * (toPercent - fromPercent));
+                long now = System.nanoTime();
+                if (percent <= lastPercent || now - lastUpdateNanos < intervalNanos) {
+                    return;
+                }
+                lastUpdateNanos = now;
+                lastPercent = percent;
+                writer.accept(percent);
+            }
+        };
+    }
+
+    /**
+     * Status writer for one job whose steps run concurrently
+     */
+    public JobProgress jobProgress(String jobId, String userId) {
+        return new JobProgress(jobId, userId);
+    }
+
+    /**
+     * Status of one job shared by its concurrent steps. An update with a lower percent than the last
+     * one written is dropped, so a step that started earlier cannot move the stage users see backwards.
+     */
+    public class JobProgress {
+
+        private final String jobId;
+        private final String userId;
+        private int percent = -1;
+
+        private JobProgress(String jobId, String userId) {
+            this.jobId = jobId;
+            this.userId = userId;
+        }
+
+        public synchronized void update(ProcessingStage stage, String info, int progressPercent) {
+            if (progressPercent < percent) {
+                logger.debug("Skipped status {} ({}%) for job {}, already at {}%", stage, progressPercent, jobId, percent);
+                return;
+            }
+            percent = progressPercent;
+            updateStatus(jobId, userId, stage, info, progressPercent);
+        }
+
+        /**
+         * Progress listener for one stage of this job, as {@link #progressListener}
+         */
+        public FfmpegRunner.ProgressListener listener(ProcessingStage stage, String info, int fromPercent,
+                                                      int toPercent) {
+            return progressListener(fromPercent, toPercent, p -> update(stage, info, p));
+        }
+    }
+
     /**
      * Mark processing as failed
      */
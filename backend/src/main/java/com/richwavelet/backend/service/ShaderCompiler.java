@@ -0,0 +1,243 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.ShaderStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compiles a {@link ShaderStyle} into FFmpeg filters for a given frame size.
+ * Row-dependent scanline gains are baked into a mask frame that is generated once per
+ * style and resolution, cached on disk and applied with a single {@code blend}, instead of
+ * evaluating a {@code geq} expression for every pixel of every frame.
+ */
+@Component
+public class ShaderCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShaderCompiler.class);
+
+    private static final String MASK_LABEL = "shader_mask";
+    private static final String PRE_MASK_LABEL = "shader_pre";
+
+    @Value("${video.shader.mask-dir:${video.temp-dir:/tmp/video-processing}/shader-masks}")
+    private String maskDir;
+
+    /**
+     * Per-row gains of a scanline pattern, repeating every {@code period} rows of a plane
+     */
+    record Scanlines(int period, double[] lumaGains, double[] chromaGains) {
+
+        double lumaGain(int row) {
+            return lumaGains == null ? 1.0 : lumaGains[row % period];
+        }
+
+        double chromaGain(int row) {
+            return chromaGains == null ? 1.0 : chromaGains[row % period];
+        }
+    }
+
+    /**
+     * Filters for one shader style: the chain before the scanline mask, the mask itself
+     * (null when the style has none) and the chain after it
+     */
+    public record CompiledShader(List<String> preFilters, Path mask, String blend, List<String> postFilters) {
+
+        /**
+         * A plain filter chain without a mask
+         */
+        public static CompiledShader of(String... filters) {
+            return new CompiledShader(List.of(filters), null, null, List.of());
+        }
+
+        /**
+         * Filtergraph text that reads {@code [input]}, applies the shader followed by {@code extraFilters}
+         * and leaves the last chain open, so the caller appends an output label or further filters
+         */
+        public String chain(String input, String... extraFilters) {
+            if (mask == null) {
+                List<String> filters = new ArrayList<>(preFilters);
+                filters.addAll(postFilters);
+                filters.addAll(List.of(extraFilters));
+                return "[" + input + "]" + (filters.isEmpty() ? "null" : String.join(",", filters));
+            }
+
+            List<String> pre = new ArrayList<>(preFilters);
+            // The mask is yuv420p, and blend needs both inputs in the same format
+            pre.add("format=yuv420p");
+            List<String> post = new ArrayList<>();
+            post.add(blend);
+            post.addAll(postFilters);
+            post.addAll(List.of(extraFilters));
+
+            return "movie='" + mask + "'[" + MASK_LABEL + "];"
+                    + "[" + input + "]" + String.join(",", pre) + "[" + PRE_MASK_LABEL + "];"
+                    + "[" + PRE_MASK_LABEL + "][" + MASK_LABEL + "]" + String.join(",", post);
+        }
+
+        /**
+         * Argument for {@code -vf}
+         */
+        public String simpleGraph() {
+            return chain("in") + "[out]";
+        }
+    }
+
+    /**
+     * Compile the shader for frames of the given size, generating its mask if it is not cached yet
+     */
+    public CompiledShader compile(ShaderStyle style, int width, int height) throws IOException {
+        return switch (style) {
+            case CRT -> new CompiledShader(
+                    List.of(),
+                    maskFor(style, width, height),
+                    // Darken chroma on alternate chroma rows, luma untouched
+                    "blend=c1_mode=multiply:c2_mode=multiply",
+                    List.of(
+                            // Vignette effect
+                            "vignette=PI/4",
+                            // Warm color temperature
+                            "colorbalance=rs=0.1:gs=-0.05:bs=-0.1",
+                            // Slight blur for CRT softness
+                            "gblur=sigma=0.5",
+                            // Reduce saturation slightly
+                            "eq=saturation=0.85"
+                    ));
+            case VHS -> new CompiledShader(
+                    List.of(
+                            // Add noise for tape grain
+                            "noise=c0s=15:c0f=t",
+                            // Desaturate slightly
+                            "eq=saturation=0.75"
+                    ),
+                    maskFor(style, width, height),
+                    // Thicker scanlines for VHS
+                    "blend=c0_mode=multiply",
+                    List.of(
+                            // Warm color shift (aged tape)
+                            "colorbalance=rs=0.15:gs=0.05:bs=-0.1",
+                            // Blur for tape quality
+                            "gblur=sigma=0.8"
+                    ));
+            case ARCADE -> new CompiledShader(
+                    List.of(
+                            // High contrast and brightness
+                            "eq=contrast=1.2:brightness=0.05:saturation=1.2",
+                            // Vivid colors
+                            "colorbalance=rs=0.1:gs=0.1:bs=0.05"
+                    ),
+                    maskFor(style, width, height),
+                    // Phosphor dot pattern simulation via scanlines
+                    "blend=c0_mode=multiply",
+                    List.of(
+                            // Slight bloom/glow via blur blend
+                            "gblur=sigma=1.5"
+                    ));
+        };
+    }
+
+    /**
+     * The original per-pixel geq chain for a style. Not used for rendering; it is the
+     * reference the compiled chain is checked against.
+     */
+    String referenceChain(ShaderStyle style) {
+        return switch (style) {
+            case CRT -> String.join(",",
+                    "geq=lum='lum(X,Y)':cb='if(mod(Y,2),cb(X,Y)*0.7,cb(X,Y))':cr='if(mod(Y,2),cr(X,Y)*0.7,cr(X,Y))'",
+                    "vignette=PI/4",
+                    "colorbalance=rs=0.1:gs=-0.05:bs=-0.1",
+                    "gblur=sigma=0.5",
+                    "eq=saturation=0.85");
+            case VHS -> String.join(",",
+                    "noise=c0s=15:c0f=t",
+                    "eq=saturation=0.75",
+                    "geq=lum='lum(X,Y)*if(lt(mod(Y,4),2),0.85,1.0)'",
+                    "colorbalance=rs=0.15:gs=0.05:bs=-0.1",
+                    "gblur=sigma=0.8");
+            case ARCADE -> String.join(",",
+                    "eq=contrast=1.2:brightness=0.05:saturation=1.2",
+                    "colorbalance=rs=0.1:gs=0.1:bs=0.05",
+                    "geq=lum='lum(X,Y)*if(mod(Y,3),0.9,1.0)'",
+                    "gblur=sigma=1.5");
+        };
+    }
+
+    /**
+     * Scanline pattern of a style, matching the rows its reference geq expression darkens.
+     * Chroma rows are counted in the subsampled chroma plane, as geq does.
+     */
+    Scanlines scanlines(ShaderStyle style) {
+        return switch (style) {
+            case CRT -> new Scanlines(2, null, new double[]{1.0, 0.7});
+            case VHS -> new Scanlines(4, new double[]{0.85, 0.85, 1.0, 1.0}, null);
+            case ARCADE -> new Scanlines(3, new double[]{1.0, 0.9, 0.9}, null);
+        };
+    }
+
+    /**
+     * Cached mask for a style and frame size, written on first use
+     */
+    Path maskFor(ShaderStyle style, int width, int height) throws IOException {
+        Path mask = Path.of(maskDir).resolve(style.name().toLowerCase() + "-" + width + "x" + height + ".y4m");
+        if (Files.exists(mask)) {
+            return mask;
+        }
+
+        Files.createDirectories(mask.getParent());
+        // Concurrent jobs may race to create the same mask; each writes its own file and the move is atomic
+        Path partial = mask.resolveSibling(mask.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            out.write(buildMask(scanlines(style), width, height));
+        }
+        Files.move(partial, mask, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        logger.info("Generated {} scanline mask for {}x{}", style, width, height);
+        return mask;
+    }
+
+    /**
+     * A single yuv420p frame in YUV4MPEG2 format whose samples are the row gains scaled to 0-255,
+     * so blend's multiply mode (a * b / 255) applies the gain
+     */
+    byte[] buildMask(Scanlines scanlines, int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        byte[] header = ("YUV4MPEG2 W" + width + " H" + height + " F25:1 Ip A1:1 C420\nFRAME\n")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        byte[] frame = new byte[header.length + width * height + 2 * chromaWidth * chromaHeight];
+        System.arraycopy(header, 0, frame, 0, header.length);
+
+        int offset = header.length;
+        for (int row = 0; row < height; row++) {
+            byte value = gainToSample(scanlines.lumaGain(row));
+            for (int col = 0; col < width; col++) {
+                frame[offset++] = value;
+            }
+        }
+        // Cb then Cr, both with the same per-row gain
+        for (int plane = 0; plane < 2; plane++) {
+            for (int row = 0; row < chromaHeight; row++) {
+                byte value = gainToSample(scanlines.chromaGain(row));
+                for (int col = 0; col < chromaWidth; col++) {
+                    frame[offset++] = value;
+                }
+            }
+        }
+        return frame;
+    }
+
+    private byte gainToSample(double gain) {
+        return (byte) Math.round(gain * 255);
+    }
+}
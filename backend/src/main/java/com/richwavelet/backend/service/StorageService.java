@@ -2,26 +2,71 @@ package com.richwavelet.backend.service;
 
 import com.richwavelet.backend.config.SupabaseConfig;
 import okhttp3.*;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class StorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(StorageService.class);
     private static final int SIGNED_URL_EXPIRY_SECONDS = 3600; // 1 hour
+    private static final String TUS_VERSION = "1.0.0";
+    private static final MediaType TUS_CHUNK_TYPE = MediaType.parse("application/offset+octet-stream");
+    private static final int RANGE_BUFFER_BYTES = 64 * 1024;
+
+    // Files at least this large are sent with Supabase's resumable (TUS) upload
+    @Value("${storage.resumable.threshold-bytes:52428800}")
+    private long resumableThresholdBytes = 50L * 1024 * 1024;
+
+    // Supabase requires every resumable chunk except the last to be exactly 6 MB
+    @Value("${storage.resumable.chunk-size-bytes:6291456}")
+    private long resumableChunkBytes = 6L * 1024 * 1024;
+
+    @Value("${storage.resumable.max-retries:3}")
+    private int resumableMaxRetries = 3;
+
+    @Value("${storage.resumable.backoff-millis:500}")
+    private long resumableBackoffMillis = 500;
+
+    // Downloads at least this large are split into parallel Range requests
+    @Value("${storage.download.ranged-threshold-bytes:33554432}")
+    private long rangedThresholdBytes = 32L * 1024 * 1024;
+
+    @Value("${storage.download.ranged-parallelism:8}")
+    private int rangedParallelism = 8;
+
+    @Value("${storage.download.min-range-bytes:8388608}")
+    private long minRangeBytes = 8L * 1024 * 1024;
+
+    @Value("${storage.download.max-retries:3}")
+    private int downloadMaxRetries = 3;
 
     private final OkHttpClient httpClient;
     private final SupabaseConfig supabaseConfig;
@@ -33,27 +78,58 @@ public class StorageService {
         this.supabaseService = supabaseService;
     }
 
+    /**
+     * An object written to storage, with the size and SHA-256 measured while it was sent
+     */
+    public record StoredUpload(String storagePath, long sizeBytes, String sha256) {}
+
     /**
      * Upload a video file to Supabase Storage
      * @return The storage path (not the full URL)
      */
     public String uploadVideo(String userId, MultipartFile file, String bucket) throws IOException {
+        return ingestVideo(userId, file, bucket).storagePath();
+    }
+
+    /**
+     * Upload a video file to Supabase Storage, streaming it from the container's multipart spill file
+     * into the storage request instead of copying it into a byte array
+     */
+    public StoredUpload ingestVideo(String userId, MultipartFile file, String bucket) throws IOException {
         String sanitizedName = sanitizeFileName(file.getOriginalFilename());
         String uniqueName = UUID.randomUUID().toString() + "-" + sanitizedName;
         String storagePath = userId + "/" + uniqueName;
 
-        uploadToStorage(bucket, storagePath, file.getBytes(), file.getContentType());
+        HashingRequestBody body = new HashingRequestBody(
+                file::getInputStream, file.getSize(), MediaType.parse(file.getContentType()));
+        putObject(bucket, storagePath, body, file.getContentType());
 
-        logger.info("Uploaded video to {}/{}", bucket, storagePath);
-        return storagePath;
+        logger.info("Uploaded video to {}/{} (sha256 {})", bucket, storagePath, body.sha256());
+        long size = body.bytesWritten() >= 0 ? body.bytesWritten() : file.getSize();
+        return new StoredUpload(storagePath, size, body.sha256());
     }
 
     /**
      * Upload bytes to Supabase Storage
      */
     public void uploadToStorage(String bucket, String path, byte[] data, String contentType) throws IOException {
-        var requestBody = RequestBody.create(data, MediaType.parse(contentType));
+        putObject(bucket, path, RequestBody.create(data, MediaType.parse(contentType)), contentType);
+    }
+
+    /**
+     * Upload a local file to Supabase Storage without reading it into memory.
+     * Large files use the resumable upload protocol so a dropped connection only resends the current chunk.
+     */
+    public void uploadFileToStorage(String bucket, String path, Path file, String contentType) throws IOException {
+        long size = Files.size(file);
+        if (size >= resumableThresholdBytes) {
+            uploadResumable(bucket, path, file, size, contentType);
+            return;
+        }
+        putObject(bucket, path, fileRegionBody(file, 0, size, MediaType.parse(contentType)), contentType);
+    }
 
+    private void putObject(String bucket, String path, RequestBody requestBody, String contentType) throws IOException {
         var request = new Request.Builder()
                 .url(supabaseConfig.getSupabaseUrl() + "/storage/v1/object/" + bucket + "/" + path)
                 .put(requestBody)  // Use PUT for upsert behavior
@@ -69,24 +145,463 @@ public class StorageService {
     }
 
     /**
-     * Download a file from a URL to a local path
+     * Upload with the TUS protocol: create the upload, then PATCH fixed-size chunks in order.
+     * After a failed chunk the server's offset is read back and the upload resumes from there.
+     */
+    private void uploadResumable(String bucket, String path, Path file, long size, String contentType) throws IOException {
+        HttpUrl uploadUrl = createResumableUpload(bucket, path, size, contentType);
+        logger.info("Started resumable upload of {} bytes to {}/{}", size, bucket, path);
+
+        long offset = 0;
+        int failures = 0;
+        boolean resync = false;
+        while (offset < size) {
+            try {
+                if (resync) {
+                    // Fetching the offset can fail too, so it is retried like a chunk
+                    offset = fetchUploadOffset(uploadUrl);
+                    resync = false;
+                    continue;
+                }
+                long length = Math.min(resumableChunkBytes, size - offset);
+                offset = patchChunk(uploadUrl, file, offset, length);
+                failures = 0;
+            } catch (IOException e) {
+                if (++failures > resumableMaxRetries) {
+                    throw new IOException("Resumable upload failed at offset " + offset + ": " + e.getMessage(), e);
+                }
+                logger.warn("{} at offset {} of {}/{} failed ({}), resuming", resync ? "Offset check" : "Chunk",
+                        offset, bucket, path, e.getMessage());
+                backOff(failures);
+                resync = true;
+            }
+        }
+    }
+
+    /**
+     * Wait before the given retry, doubling each time with jitter so parallel uploads spread out
+     */
+    private void backOff(int attempt) throws IOException {
+        long delay = resumableBackoffMillis << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during resumable upload");
+        }
+    }
+
+    private HttpUrl createResumableUpload(String bucket, String path, long size, String contentType) throws IOException {
+        String metadata = String.join(",",
+                "bucketName " + base64(bucket),
+                "objectName " + base64(path),
+                "contentType " + base64(contentType),
+                "cacheControl " + base64("3600"));
+
+        HttpUrl endpoint = HttpUrl.get(supabaseConfig.getSupabaseUrl() + "/storage/v1/upload/resumable");
+        var request = new Request.Builder()
+                .url(endpoint)
+                .post(RequestBody.create(new byte[0], null))
+                .addHeader("Tus-Resumable", TUS_VERSION)
+                .addHeader("Upload-Length", String.valueOf(size))
+                .addHeader("Upload-Metadata", metadata)
+                .addHeader("x-upsert", "true")
+                .build();
+
+        try (var response = httpClient.newCall(request).execute()) {
+            String location = response.header("Location");
+            if (response.code() != 201 || location == null) {
+                String errorBody = response.body() != null ? response.body().string() : "No error body";
+                throw new IOException("Resumable upload creation failed: " + response.code() + " - " + errorBody);
+            }
+            HttpUrl uploadUrl = endpoint.resolve(location);
+            if (uploadUrl == null) {
+                throw new IOException("Invalid resumable upload location: " + location);
+            }
+            return uploadUrl;
+        }
+    }
+
+    /**
+     * Send one chunk and return the new offset reported by the server
+     */
+    private long patchChunk(HttpUrl uploadUrl, Path file, long offset, long length) throws IOException {
+        var request = new Request.Builder()
+                .url(uploadUrl)
+                .patch(fileRegionBody(file, offset, length, TUS_CHUNK_TYPE))
+                .addHeader("Tus-Resumable", TUS_VERSION)
+                .addHeader("Upload-Offset", String.valueOf(offset))
+                .build();
+
+        try (var response = httpClient.newCall(request).execute()) {
+            if (response.code() != 204) {
+                throw new IOException("Chunk upload failed: " + response.code());
+            }
+            return parseOffset(response, offset + length);
+        }
+    }
+
+    private long fetchUploadOffset(HttpUrl uploadUrl) throws IOException {
+        var request = new Request.Builder()
+                .url(uploadUrl)
+                .head()
+                .addHeader("Tus-Resumable", TUS_VERSION)
+                .addHeader("Cache-Control", "no-store")
+                .build();
+
+        try (var response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Could not read resumable upload offset: " + response.code());
+            }
+            return parseOffset(response, -1);
+        }
+    }
+
+    private long parseOffset(Response response, long fallback) throws IOException {
+        String header = response.header("Upload-Offset");
+        try {
+            if (header != null) {
+                return Long.parseLong(header.trim());
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        if (fallback < 0) {
+            throw new IOException("Missing Upload-Offset header: " + header);
+        }
+        return fallback;
+    }
+
+    /**
+     * Request body that streams a byte range of a file, so memory use does not depend on its size
+     */
+    static RequestBody fileRegionBody(Path file, long offset, long length, MediaType contentType) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    channel.position(offset);
+                    try (Source source = Okio.source(Channels.newInputStream(channel))) {
+                        sink.write(source, length);
+                    }
+                }
+            }
+        };
+    }
+
+    private String base64(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Download a file from a URL to a local path. Large objects on servers that accept byte ranges are
+     * fetched as several parallel Range requests written straight into a preallocated file; each range
+     * resumes from its last written byte if its connection fails.
      */
     public void downloadFile(String fileUrl, Path destination) throws IOException {
+        try {
+            probeAndDownload(fileUrl, destination);
+        } catch (ObjectChangedException e) {
+            logger.warn("{} changed during download, restarting", fileUrl);
+            probeAndDownload(fileUrl, destination);
+        }
+    }
+
+    /**
+     * Download a file whose size and version were already fetched with {@link #describe(String)}
+     */
+    public void downloadFile(String fileUrl, Path destination, RemoteObject remote) throws IOException {
         logger.info("Downloading file from {} to {}", fileUrl, destination);
+        HttpUrl url = HttpUrl.get(fileUrl);
+        OkHttpClient client = clientFor(url);
 
-        try (InputStream in = new URL(fileUrl).openStream();
-             OutputStream out = Files.newOutputStream(destination,
-                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+        if (remote != null && remote.acceptsRanges() && remote.length() >= rangedThresholdBytes) {
+            List<long[]> ranges = planRanges(remote.length(), rangedParallelism, minRangeBytes);
+            try {
+                downloadRanges(client, url, remote, null, ranges, destination);
+            } catch (ObjectChangedException e) {
+                // The description is stale, so learn the new size and version from scratch
+                logger.warn("{} changed since it was described, restarting", fileUrl);
+                downloadFile(fileUrl, destination);
+                return;
+            }
+            logger.info("Downloaded {} bytes to {} in {} ranges", remote.length(), destination, ranges.size());
+            return;
+        }
+
+        Request request = new Request.Builder().url(url).get().build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Download failed: " + response.code() + " " + response.message());
+            }
+            try (BufferedSink sink = Okio.buffer(Okio.sink(destination))) {
+                sink.writeAll(response.body().source());
             }
         }
 
         logger.info("Downloaded file to {}", destination);
     }
 
+    /**
+     * GET the first range of the file instead of sending a HEAD first. Files no longer than one range
+     * arrive whole in this response, as do files from servers that ignore ranges. For larger files the
+     * response reports the size and version, and the rest is fetched in parallel while it is read.
+     */
+    private void probeAndDownload(String fileUrl, Path destination) throws IOException {
+        logger.info("Downloading file from {} to {}", fileUrl, destination);
+        HttpUrl url = HttpUrl.get(fileUrl);
+        OkHttpClient client = clientFor(url);
+
+        long headLength = Math.max(1, minRangeBytes);
+        Request request = new Request.Builder().url(url).get()
+                .header("Range", "bytes=0-" + (headLength - 1))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() == 416) {
+                // Only an empty object has no byte 0
+                Files.write(destination, new byte[0]);
+                logger.info("Downloaded empty file to {}", destination);
+                return;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Download failed: " + response.code() + " " + response.message());
+            }
+            long length = -1;
+            if (response.code() == 206) {
+                length = totalLength(response.header("Content-Range"));
+                if (length < 0) {
+                    throw new IOException("Download returned unusable Content-Range: "
+                            + response.header("Content-Range"));
+                }
+            }
+            if (length <= headLength) {
+                try (BufferedSink sink = Okio.buffer(Okio.sink(destination))) {
+                    sink.writeAll(response.body().source());
+                }
+                logger.info("Downloaded file to {}", destination);
+                return;
+            }
+
+            // Small files still get a second connection for the rest; large ones the full parallelism
+            int parallelism = length >= rangedThresholdBytes ? Math.max(1, rangedParallelism - 1) : 1;
+            List<long[]> ranges = new ArrayList<>();
+            ranges.add(new long[] {0, headLength - 1});
+            for (long[] range : planRanges(length - headLength, parallelism, minRangeBytes)) {
+                ranges.add(new long[] {range[0] + headLength, range[1] + headLength});
+            }
+            RemoteObject remote = new RemoteObject(length, true, response.header("ETag"));
+            downloadRanges(client, url, remote, response.body().source(), ranges, destination);
+            logger.info("Downloaded {} bytes to {} in {} ranges", length, destination, ranges.size());
+        }
+    }
+
+    /**
+     * The total size from a Content-Range header such as "bytes 0-99/1000"
+     * @return -1 if the header is missing or the size is unknown
+     */
+    static long totalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Size, range support and version of a remote object, from a HEAD request
+     */
+    public record RemoteObject(long length, boolean acceptsRanges, String etag) {}
+
+    /**
+     * HEAD a file to learn its size, range support and ETag
+     * @return null if the server does not answer HEAD requests
+     */
+    public RemoteObject describe(String fileUrl) throws IOException {
+        HttpUrl url = HttpUrl.get(fileUrl);
+        Request request = new Request.Builder().url(url).head().build();
+        try (Response response = clientFor(url).newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                // Some servers reject HEAD; fall back to a single GET
+                return null;
+            }
+            String length = response.header("Content-Length");
+            return new RemoteObject(
+                    length != null ? Long.parseLong(length.trim()) : -1,
+                    "bytes".equalsIgnoreCase(response.header("Accept-Ranges")),
+                    response.header("ETag"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Split an object into at most {@code parallelism} contiguous inclusive byte ranges of at least
+     * {@code minRangeBytes} each (except when the object is smaller than that)
+     */
+    static List<long[]> planRanges(long length, int parallelism, long minRangeBytes) {
+        long count = Math.max(1, Math.min(parallelism, (length + minRangeBytes - 1) / minRangeBytes));
+        long size = (length + count - 1) / count;
+        List<long[]> ranges = new ArrayList<>();
+        for (long start = 0; start < length; start += size) {
+            ranges.add(new long[] {start, Math.min(length, start + size) - 1});
+        }
+        return ranges;
+    }
+
+    /**
+     * Fetch the ranges in parallel into a preallocated file. The first range is read from
+     * {@code head} when the caller already has a response open for it.
+     */
+    private void downloadRanges(OkHttpClient client, HttpUrl url, RemoteObject remote, BufferedSource head,
+                                List<long[]> ranges, Path destination) throws IOException {
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Preallocate so every range can write at its own offset
+            channel.write(ByteBuffer.wrap(new byte[1]), remote.length() - 1);
+
+            List<Future<?>> parts = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                BufferedSource opened = i == 0 ? head : null;
+                parts.add(executor.submit(() -> {
+                    downloadRange(client, url, remote.etag(), channel, range[0], range[1], opened);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> part : parts) {
+                    part.get();
+                }
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Ranged download failed", e.getCause());
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during ranged download", e);
+            }
+        }
+    }
+
+    /**
+     * A range request the server refused, which retrying will not fix
+     */
+    static class RangeRejectedException extends IOException {
+        RangeRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A range request answered with the whole object, because it changed since its size was read
+     */
+    static class ObjectChangedException extends RangeRejectedException {
+        ObjectChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Fetch bytes {@code start..end} (inclusive) into the channel at the same offsets, resuming from
+     * the last written byte after a failed connection. Reads from {@code opened} first if it is given.
+     */
+    void downloadRange(OkHttpClient client, HttpUrl url, String etag, FileChannel channel,
+                       long start, long end, BufferedSource opened) throws IOException {
+        byte[] buffer = new byte[RANGE_BUFFER_BYTES];
+        long position = start;
+        int failures = 0;
+        BufferedSource pending = opened;
+        while (position <= end) {
+            Response response = null;
+            try {
+                BufferedSource source = pending;
+                pending = null;
+                if (source == null) {
+                    Request.Builder request = new Request.Builder().url(url).get()
+                            .header("Range", "bytes=" + position + "-" + end);
+                    if (etag != null) {
+                        // A changed object comes back as a full 200 instead of mixing versions
+                        request.header("If-Range", etag);
+                    }
+                    response = client.newCall(request.build()).execute();
+                    checkRangeResponse(response);
+                    source = response.body().source();
+                }
+                int read;
+                while (position <= end
+                        && (read = source.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        position += channel.write(chunk, position);
+                    }
+                }
+                if (position <= end) {
+                    throw new IOException("Range " + start + "-" + end + " ended early at " + position);
+                }
+            } catch (RangeRejectedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (++failures > downloadMaxRetries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.warn("Range {}-{} failed at byte {}, resuming (attempt {}): {}",
+                        start, end, position, failures, e.getMessage());
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+    }
+
+    private void checkRangeResponse(Response response) throws IOException {
+        int code = response.code();
+        if (code == 206) {
+            return;
+        }
+        String status = code + " " + response.message();
+        if (code == 200) {
+            throw new ObjectChangedException("Range request returned the whole object: " + status);
+        }
+        // Timeouts and rate limits are worth another attempt; other client errors are not
+        if (code >= 400 && code < 500 && code != 408 && code != 429) {
+            throw new RangeRejectedException("Range request rejected: " + status);
+        }
+        throw new IOException("Range request returned " + status);
+    }
+
+    /**
+     * The shared client carries the service key, so it is only used for our own Supabase host;
+     * other hosts get a copy without the auth interceptor that still shares the connection pool
+     */
+    private OkHttpClient clientFor(HttpUrl url) {
+        HttpUrl supabase = HttpUrl.parse(supabaseConfig.getSupabaseUrl());
+        if (supabase != null && supabase.host().equalsIgnoreCase(url.host())) {
+            return httpClient;
+        }
+        OkHttpClient.Builder builder = httpClient.newBuilder();
+        builder.interceptors().clear();
+        return builder.build();
+    }
+
     /**
      * Download a file from Supabase Storage to a local path using a signed URL (for private buckets)
      */
@@ -183,9 +698,8 @@ public class StorageService {
      */
     public String uploadProcessedVideo(String userId, Path localPath, String outputFileName) throws IOException {
         String storagePath = userId + "/" + outputFileName;
-        byte[] fileBytes = Files.readAllBytes(localPath);
 
-        uploadToStorage("processed-videos", storagePath, fileBytes, "video/mp4");
+        uploadFileToStorage("processed-videos", storagePath, localPath, "video/mp4");
 
         logger.info("Uploaded processed video to processed-videos/{}", storagePath);
         return storagePath;
@@ -119,8 +119,13 @@ public class SupabaseService {
      * Upload a file to Supabase Storage
      */
     public String uploadFile(String bucket, String path, byte[] fileData, String contentType) throws IOException {
-        var requestBody = RequestBody.create(fileData, MediaType.parse(contentType));
+        return uploadFile(bucket, path, RequestBody.create(fileData, MediaType.parse(contentType)), contentType);
+    }
 
+    /**
+     * Upload a file to Supabase Storage from a request body, which may stream its content
+     */
+    public String uploadFile(String bucket, String path, RequestBody requestBody, String contentType) throws IOException {
         var request = new Request.Builder()
                 .url(supabaseConfig.getSupabaseUrl() + "/storage/v1/object/" + bucket + "/" + path)
                 .post(requestBody)
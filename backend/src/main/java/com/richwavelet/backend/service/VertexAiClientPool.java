@@ -0,0 +1,171 @@
+package com.richwavelet.backend.service;
+
+import com.google.api.gax.rpc.UnavailableException;
+import com.google.cloud.vertexai.VertexAI;
+import com.google.cloud.vertexai.api.Content;
+import com.google.cloud.vertexai.api.GenerateContentResponse;
+import com.google.cloud.vertexai.api.GenerationConfig;
+import com.google.cloud.vertexai.api.Schema;
+import com.google.cloud.vertexai.generativeai.GenerativeModel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived Vertex AI clients shared by every Gemini caller. Each client owns a gRPC channel and
+ * credentials, so they are created once and reused instead of per request. Models are built once per
+ * use case and client. A client whose channel reports UNAVAILABLE is replaced and the call is retried
+ * once on a fresh one; all clients are closed when the application shuts down. Calls are paced to the
+ * configured quota and back off when Vertex AI reports it exhausted.
+ */
+@Component
+public class VertexAiClientPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(VertexAiClientPool.class);
+
+    @Value("${gcp.project-id}")
+    private String projectId;
+
+    @Value("${gcp.location:us-central1}")
+    private String location;
+
+    @Value("${gemini.model:gemini-2.0-flash-001}")
+    private String geminiModel;
+
+    @Value("${gemini.client.pool-size:2}")
+    private int poolSize;
+
+    @Value("${gemini.rate-limit.requests-per-minute:60}")
+    private double requestsPerMinute = 60;
+
+    @Value("${gemini.rate-limit.burst:5}")
+    private int burst = 5;
+
+    @Value("${gemini.concurrency.min:1}")
+    private int minConcurrency = 1;
+
+    @Value("${gemini.concurrency.max:8}")
+    private int maxConcurrency = 8;
+
+    @Value("${gemini.rate-limit.max-retries:4}")
+    private int maxThrottleRetries = 4;
+
+    @Value("${gemini.rate-limit.backoff-millis:1000}")
+    private long backoffMillis = 1000;
+
+    /**
+     * A Gemini use case: its structured response schema, built once by the caller
+     */
+    public record ModelSpec(String useCase, Schema responseSchema) {}
+
+    /**
+     * One client and the models built on it
+     */
+    private record Slot(VertexAI client, Map<String, GenerativeModel> models) {}
+
+    private final AtomicInteger next = new AtomicInteger();
+    private Slot[] slots;
+    private VertexAiQuota quota;
+    private boolean closed;
+
+    /**
+     * Generate content with the model for a use case on the next client in the pool
+     */
+    public GenerateContentResponse generate(ModelSpec spec, Content content) throws IOException {
+        int index = Math.floorMod(next.getAndIncrement(), slots().length);
+        Slot slot = slot(index);
+        return quota().call(geminiModel, () -> {
+            try {
+                return model(slot, spec).generateContent(content);
+            } catch (UnavailableException e) {
+                logger.warn("Vertex AI client {} unavailable ({}), replacing it and retrying once", index, e.getMessage());
+                return model(replace(index, slot), spec).generateContent(content);
+            }
+        });
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closed = true;
+        if (slots == null) {
+            return;
+        }
+        for (Slot slot : slots) {
+            if (slot != null) {
+                closeQuietly(slot.client());
+            }
+        }
+        logger.info("Closed {} Vertex AI clients", slots.length);
+    }
+
+    private GenerativeModel model(Slot slot, ModelSpec spec) {
+        return slot.models().computeIfAbsent(spec.useCase(), useCase -> new GenerativeModel.Builder()
+                .setModelName(geminiModel)
+                .setVertexAi(slot.client())
+                .setGenerationConfig(GenerationConfig.newBuilder()
+                        .setResponseMimeType("application/json")
+                        .setResponseSchema(spec.responseSchema())
+                        .build())
+                .build());
+    }
+
+    /**
+     * Request pacing and adaptive concurrency shared by every call through the pool
+     */
+    private synchronized VertexAiQuota quota() {
+        if (quota == null) {
+            quota = new VertexAiQuota(requestsPerMinute / 60.0, burst, minConcurrency, maxConcurrency,
+                    maxThrottleRetries, backoffMillis, System::nanoTime);
+        }
+        return quota;
+    }
+
+    private synchronized Slot[] slots() {
+        if (slots == null) {
+            slots = new Slot[Math.max(1, poolSize)];
+        }
+        return slots;
+    }
+
+    private synchronized Slot slot(int index) {
+        if (closed) {
+            throw new IllegalStateException("Vertex AI client pool is shut down");
+        }
+        Slot[] current = slots();
+        if (current[index] == null) {
+            current[index] = newSlot();
+            logger.info("Created Vertex AI client {} for {}/{}", index, projectId, location);
+        }
+        return current[index];
+    }
+
+    private synchronized Slot replace(int index, Slot failed) {
+        Slot[] current = slots();
+        // Another caller may already have replaced it
+        if (current[index] == failed) {
+            current[index] = newSlot();
+            // Calls still running on the old channel complete before it terminates
+            closeQuietly(failed.client());
+        }
+        return slot(index);
+    }
+
+    private Slot newSlot() {
+        return new Slot(new VertexAI(projectId, location), new ConcurrentHashMap<>());
+    }
+
+    private static void closeQuietly(VertexAI client) {
+        try {
+            client.close();
+        } catch (RuntimeException e) {
+            logger.warn("Error closing Vertex AI client: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.richwavelet.backend.service;
+
+import com.google.api.gax.rpc.ResourceExhaustedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side pacing of Vertex AI calls so load stays at the quota ceiling instead of collapsing into
+ * retries: a token bucket per model spaces requests at the configured rate, and a concurrency limit
+ * shared by all calls halves whenever Vertex AI answers RESOURCE_EXHAUSTED and grows back by one slot
+ * per limit's worth of successful calls
+ */
+class VertexAiQuota {
+
+    private static final Logger logger = LoggerFactory.getLogger(VertexAiQuota.class);
+
+    @FunctionalInterface
+    interface Call<T> {
+        T run() throws IOException;
+    }
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxThrottleRetries;
+    private final long backoffMillis;
+    private final LongSupplier nanoClock;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrencyLimit concurrency;
+
+    VertexAiQuota(double requestsPerSecond, int burst, int minConcurrency, int maxConcurrency,
+                  int maxThrottleRetries, long backoffMillis, LongSupplier nanoClock) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxThrottleRetries = maxThrottleRetries;
+        this.backoffMillis = backoffMillis;
+        this.nanoClock = nanoClock;
+        this.concurrency = new ConcurrencyLimit(minConcurrency, maxConcurrency);
+    }
+
+    /**
+     * Run a call against a model once it has a token and a concurrency slot, retrying with
+     * exponential backoff while Vertex AI reports the quota exhausted
+     */
+    <T> T call(String model, Call<T> call) throws IOException {
+        TokenBucket bucket = requestsPerSecond > 0
+                ? buckets.computeIfAbsent(model, m -> new TokenBucket(requestsPerSecond, burst, nanoClock))
+                : null;
+        try {
+            for (int attempt = 0; ; attempt++) {
+                if (bucket != null) {
+                    bucket.acquire();
+                }
+                concurrency.acquire();
+                try {
+                    T result = call.run();
+                    concurrency.onSuccess();
+                    return result;
+                } catch (ResourceExhaustedException e) {
+                    concurrency.onThrottled();
+                    if (attempt >= maxThrottleRetries) {
+                        throw e;
+                    }
+                } finally {
+                    concurrency.release();
+                }
+                // Back off without holding a slot
+                long delay = backoffMillis << attempt;
+                logger.warn("Vertex AI quota exhausted for {}, concurrency limit now {}, retrying in ~{} ms",
+                        model, concurrency.limit(), delay);
+                Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for Vertex AI quota");
+        }
+    }
+
+    int concurrencyLimit() {
+        return concurrency.limit();
+    }
+
+    /**
+     * Requests per second with bursts up to the capacity. Callers reserve a token and sleep until it
+     * is due, so waiting callers are served in arrival order without polling.
+     */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private final LongSupplier nanoClock;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double perSecond, int capacity, LongSupplier nanoClock) {
+            this.capacity = capacity;
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.nanoClock = nanoClock;
+            this.tokens = capacity;
+            this.lastRefill = nanoClock.getAsLong();
+        }
+
+        void acquire() throws InterruptedException {
+            long wait = reserve();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        /**
+         * Take a token, possibly one not yet refilled
+         * @return nanoseconds until that token is due
+         */
+        synchronized long reserve() {
+            long now = nanoClock.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+    }
+
+    /**
+     * Additive-increase, multiplicative-decrease limit on calls in flight
+     */
+    static final class ConcurrencyLimit {
+        private final int min;
+        private final int max;
+        private double limit;
+        private int inFlight;
+
+        ConcurrencyLimit(int min, int max) {
+            this.min = Math.max(1, min);
+            this.max = Math.max(this.min, max);
+            this.limit = this.max;
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void onSuccess() {
+            limit = Math.min(max, limit + 1.0 / limit);
+            notifyAll();
+        }
+
+        synchronized void onThrottled() {
+            limit = Math.max(min, limit / 2);
+        }
+
+        synchronized int limit() {
+            return (int) limit;
+        }
+    }
+}
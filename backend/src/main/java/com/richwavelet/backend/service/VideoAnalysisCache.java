@@ -0,0 +1,118 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.AdBreakSuggestion;
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process tier in front of video_analysis holding fully decoded analyses, ad break suggestions
+ * included, so popular videos are not read and JSON-parsed again on every match request. Entries
+ * expire after a TTL, since another instance may re-analyze a video, and the least recently used
+ * are evicted beyond the size bound.
+ */
+@Component
+public class VideoAnalysisCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoAnalysisCache.class);
+
+    @Value("${youtube.analysis.cache.max-entries:2000}")
+    private int maxEntries = 2000;
+
+    @Value("${youtube.analysis.cache.ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    /**
+     * Cache counters since startup
+     */
+    public record Stats(long hits, long misses, long evictions, int entries) {
+
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    private record Entry(VideoAnalysisResult result, long loadedAtNanos) {}
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by "this"
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The analysis of a video, from memory or else from the loader, whose result is kept if present
+     */
+    public Optional<VideoAnalysisResult> get(String videoId, Function<String, Optional<VideoAnalysisResult>> loader) {
+        synchronized (this) {
+            Entry entry = entries.get(videoId);
+            if (entry != null && System.nanoTime() - entry.loadedAtNanos() < TimeUnit.SECONDS.toNanos(ttlSeconds)) {
+                hits.incrementAndGet();
+                return Optional.of(entry.result());
+            }
+            if (entry != null) {
+                entries.remove(videoId);
+            }
+        }
+
+        misses.incrementAndGet();
+        Optional<VideoAnalysisResult> loaded = loader.apply(videoId);
+        loaded.ifPresent(this::put);
+        if (logger.isDebugEnabled()) {
+            Stats stats = stats();
+            logger.debug("Video analysis cache miss for {} ({} entries, {}% hit ratio)",
+                    videoId, stats.entries(), Math.round(stats.hitRatio() * 100));
+        }
+        return loaded;
+    }
+
+    /**
+     * Store a fresh analysis, replacing any earlier one for the video
+     */
+    public void put(VideoAnalysisResult result) {
+        Entry entry = new Entry(immutable(result), System.nanoTime());
+        synchronized (this) {
+            entries.put(result.videoId(), entry);
+            var eldest = entries.entrySet().iterator();
+            while (entries.size() > Math.max(1, maxEntries) && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drop a video's analysis, e.g. after it was re-analyzed elsewhere
+     */
+    public synchronized void invalidate(String videoId) {
+        entries.remove(videoId);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size());
+    }
+
+    /**
+     * Cached results are shared between requests, so none of their lists may be modified
+     */
+    private static VideoAnalysisResult immutable(VideoAnalysisResult result) {
+        List<AdBreakSuggestion> suggestions = result.adBreakSuggestions().stream()
+                .map(suggestion -> new AdBreakSuggestion(suggestion.timestamp(), suggestion.reason(),
+                        suggestion.priority(), List.copyOf(suggestion.suggestedAdCategories())))
+                .toList();
+        return new VideoAnalysisResult(result.videoId(), result.youtubeUrl(), result.title(), result.description(),
+                result.durationSeconds(), List.copyOf(result.categories()), List.copyOf(result.topics()),
+                result.sentiment(), suggestions);
+    }
+}
@@ -0,0 +1,330 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.dto.YouTubeMetadata;
+import com.richwavelet.backend.model.VideoAnalysis;
+import com.richwavelet.backend.model.VideoPreanalysisItem;
+import com.richwavelet.backend.repository.VideoAnalysisClaimRepository;
+import com.richwavelet.backend.repository.VideoAnalysisRepository;
+import com.richwavelet.backend.repository.VideoPreanalysisItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Analyzes many YouTube videos ahead of viewing, so later lookups hit a saved analysis instead of
+ * waiting on Gemini. Videos stream through id extraction, batched metadata lookups, Gemini calls with
+ * bounded concurrency and batched writes to video_analysis, with each video's progress recorded.
+ */
+@Service
+public class VideoPreanalysisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoPreanalysisService.class);
+    private static final Pattern VIDEO_ID = Pattern.compile("[a-zA-Z0-9_-]{11}");
+    private static final int METADATA_CHUNK_SIZE = 50;
+
+    @Value("${youtube.preanalysis.gemini-concurrency:4}")
+    private int geminiConcurrency = 4;
+
+    @Value("${youtube.preanalysis.write-batch-size:25}")
+    private int writeBatchSize = 25;
+
+    @Value("${youtube.preanalysis.write-interval-millis:2000}")
+    private long writeIntervalMillis = 2000;
+
+    @Value("${youtube.analysis.claim-lease-seconds:120}")
+    private int claimLeaseSeconds = 120;
+
+    /**
+     * A job as accepted: its id, the videos queued and the inputs that were not YouTube URLs or ids
+     */
+    public record Submission(String jobId, List<String> videoIds, List<String> invalid) {}
+
+    private final YouTubeAnalysisService youTubeAnalysisService;
+    private final YouTubeMetadataClient youTubeMetadataClient;
+    private final VideoAnalysisRepository videoAnalysisRepository;
+    private final VideoAnalysisClaimRepository videoAnalysisClaimRepository;
+    private final VideoPreanalysisItemRepository itemRepository;
+    private final AnalysisScheduler analysisScheduler;
+    private final String owner = UUID.randomUUID().toString();
+
+    public VideoPreanalysisService(
+            YouTubeAnalysisService youTubeAnalysisService,
+            YouTubeMetadataClient youTubeMetadataClient,
+            VideoAnalysisRepository videoAnalysisRepository,
+            VideoAnalysisClaimRepository videoAnalysisClaimRepository,
+            VideoPreanalysisItemRepository itemRepository,
+            AnalysisScheduler analysisScheduler) {
+        this.youTubeAnalysisService = youTubeAnalysisService;
+        this.youTubeMetadataClient = youTubeMetadataClient;
+        this.videoAnalysisRepository = videoAnalysisRepository;
+        this.videoAnalysisClaimRepository = videoAnalysisClaimRepository;
+        this.itemRepository = itemRepository;
+        this.analysisScheduler = analysisScheduler;
+    }
+
+    /**
+     * Record a job for the given YouTube URLs or video ids and queue it on the scheduler's bulk lane
+     * @throws AnalysisScheduler.QueueFullException if the lane is full; nothing is recorded then
+     */
+    public Submission submit(String userId, Collection<String> urlsOrIds) {
+        Set<String> videoIds = new LinkedHashSet<>();
+        List<String> invalid = new ArrayList<>();
+        for (String input : urlsOrIds) {
+            String videoId = toVideoId(input);
+            if (videoId != null) {
+                videoIds.add(videoId);
+            } else if (input != null && !input.isBlank()) {
+                invalid.add(input);
+            }
+        }
+        String jobId = UUID.randomUUID().toString();
+        if (videoIds.isEmpty()) {
+            return new Submission(jobId, List.of(), invalid);
+        }
+
+        itemRepository.saveAll(videoIds.stream()
+                .map(videoId -> new VideoPreanalysisItem(jobId, userId, videoId, "queued"))
+                .toList());
+        List<String> queued = List.copyOf(videoIds);
+        try {
+            analysisScheduler.submit("video pre-analysis " + jobId, AnalysisScheduler.Priority.BULK, () -> {
+                try {
+                    run(jobId, queued);
+                } catch (Exception e) {
+                    logger.error("Pre-analysis job {} failed: {}", jobId, e.getMessage(), e);
+                }
+            });
+        } catch (AnalysisScheduler.QueueFullException e) {
+            itemRepository.deleteByJobId(jobId);
+            throw e;
+        }
+        logger.info("Queued pre-analysis job {} for {} videos ({} invalid inputs)", jobId, queued.size(), invalid.size());
+        return new Submission(jobId, queued, invalid);
+    }
+
+    /**
+     * Progress of every video in a job
+     */
+    public List<VideoPreanalysisItem> getItems(String jobId) {
+        return itemRepository.findByJobIdOrderById(jobId);
+    }
+
+    /**
+     * Run a job: metadata is fetched 50 videos at a time and each chunk's videos go to Gemini as soon
+     * as it arrives, while a writer saves finished analyses in batches
+     */
+    void run(String jobId, List<String> videoIds) throws InterruptedException {
+        Set<String> analyzed = videoAnalysisRepository.findByVideoIdIn(videoIds).stream()
+                .map(VideoAnalysis::getVideoId)
+                .collect(Collectors.toSet());
+        mark(jobId, analyzed, "cached", null);
+        List<String> remaining = videoIds.stream().filter(videoId -> !analyzed.contains(videoId)).toList();
+        logger.info("Pre-analysis job {}: {} videos, {} already analyzed", jobId, videoIds.size(), analyzed.size());
+
+        Semaphore geminiCalls = new Semaphore(Math.max(1, geminiConcurrency));
+        BlockingQueue<VideoAnalysisResult> finished = new LinkedBlockingQueue<>();
+        List<Future<?>> analyses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> writer = executor.submit(() -> {
+                write(jobId, finished, remaining.size());
+                return null;
+            });
+
+            for (int from = 0; from < remaining.size(); from += METADATA_CHUNK_SIZE) {
+                List<String> chunk = remaining.subList(from, Math.min(remaining.size(), from + METADATA_CHUNK_SIZE));
+                Map<String, YouTubeMetadata> metadata;
+                try {
+                    metadata = youTubeMetadataClient.fetchAll(chunk);
+                } catch (IOException e) {
+                    logger.error("Metadata lookup failed for job {}: {}", jobId, e.getMessage());
+                    mark(jobId, chunk, "failed", e.getMessage());
+                    finished.addAll(placeholders(chunk.size()));
+                    continue;
+                }
+
+                List<String> notFound = chunk.stream().filter(videoId -> !metadata.containsKey(videoId)).toList();
+                mark(jobId, notFound, "not_found", null);
+                finished.addAll(placeholders(notFound.size()));
+                for (YouTubeMetadata video : metadata.values()) {
+                    analyses.add(executor.submit(() -> {
+                        analyzeOne(jobId, video, geminiCalls, finished);
+                        return null;
+                    }));
+                }
+            }
+
+            for (Future<?> analysis : analyses) {
+                try {
+                    analysis.get();
+                } catch (Exception e) {
+                    logger.error("Pre-analysis task failed in job {}: {}", jobId, e.getMessage(), e);
+                }
+            }
+            try {
+                writer.get();
+            } catch (Exception e) {
+                logger.error("Pre-analysis writer failed in job {}: {}", jobId, e.getMessage(), e);
+            }
+        }
+        logger.info("Pre-analysis job {} finished", jobId);
+    }
+
+    /**
+     * Analyze one video once a Gemini slot is free. The video is claimed only then, so claims are
+     * held while a call is actually running and an interactive request for a video still waiting
+     * here analyzes it right away instead of waiting on this job.
+     */
+    private void analyzeOne(String jobId, YouTubeMetadata video, Semaphore geminiCalls,
+                            BlockingQueue<VideoAnalysisResult> finished) throws InterruptedException {
+        String videoId = video.videoId();
+        geminiCalls.acquire();
+        try {
+            // Leave videos another request is already analyzing to that request
+            if (videoAnalysisClaimRepository.tryClaim(videoId, owner,
+                    OffsetDateTime.now().plusSeconds(claimLeaseSeconds)) == 0) {
+                mark(jobId, List.of(videoId), "skipped", "Being analyzed by another request");
+                finished.put(placeholder());
+                return;
+            }
+            // Another request may have analyzed it while this one waited for a slot
+            if (videoAnalysisRepository.existsByVideoId(videoId)) {
+                mark(jobId, List.of(videoId), "cached", null);
+                release(List.of(videoId));
+                finished.put(placeholder());
+                return;
+            }
+            mark(jobId, List.of(videoId), "analyzing", null);
+            finished.put(youTubeAnalysisService.analyzeMetadata(video));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Pre-analysis of video {} failed: {}", videoId, e.getMessage());
+            mark(jobId, List.of(videoId), "failed", e.getMessage());
+            release(List.of(videoId));
+            finished.put(placeholder());
+        } finally {
+            geminiCalls.release();
+        }
+    }
+
+    /**
+     * Save finished analyses once a batch is full or the write interval passes, until every video of
+     * the job is accounted for. Videos that produced no analysis arrive as placeholders.
+     */
+    private void write(String jobId, BlockingQueue<VideoAnalysisResult> finished, int expected)
+            throws InterruptedException {
+        List<VideoAnalysisResult> batch = new ArrayList<>();
+        int seen = 0;
+        long flushAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeIntervalMillis);
+        while (seen < expected) {
+            VideoAnalysisResult next = finished.poll(Math.max(0, flushAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                seen++;
+                if (next.videoId() != null) {
+                    batch.add(next);
+                }
+            }
+            if (batch.size() >= writeBatchSize || (!batch.isEmpty() && System.nanoTime() >= flushAt) || seen == expected) {
+                flush(jobId, List.copyOf(batch));
+                batch.clear();
+            }
+            if (System.nanoTime() >= flushAt) {
+                flushAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeIntervalMillis);
+            }
+        }
+    }
+
+    void flush(String jobId, List<VideoAnalysisResult> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<String> videoIds = batch.stream().map(VideoAnalysisResult::videoId).toList();
+        try {
+            youTubeAnalysisService.saveAnalyses(batch);
+            mark(jobId, videoIds, "analyzed", null);
+        } catch (RuntimeException e) {
+            // One conflicting row rolls back the whole batch, so retry the videos one at a time
+            logger.warn("Batch write for job {} failed, saving individually: {}", jobId, e.getMessage());
+            for (VideoAnalysisResult analysis : batch) {
+                try {
+                    youTubeAnalysisService.saveAnalyses(List.of(analysis));
+                    mark(jobId, List.of(analysis.videoId()), "analyzed", null);
+                } catch (RuntimeException single) {
+                    mark(jobId, List.of(analysis.videoId()), "failed", single.getMessage());
+                }
+            }
+        } finally {
+            release(videoIds);
+        }
+    }
+
+    private void mark(String jobId, Collection<String> videoIds, String status, String error) {
+        if (videoIds.isEmpty()) {
+            return;
+        }
+        try {
+            itemRepository.updateStatus(jobId, videoIds, status, error, OffsetDateTime.now());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to record pre-analysis progress for job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    private void release(List<String> videoIds) {
+        for (String videoId : videoIds) {
+            try {
+                videoAnalysisClaimRepository.release(videoId, owner);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to release analysis claim on video {}: {}", videoId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A video id from a YouTube URL or a bare id, or null if the input is neither
+     */
+    String toVideoId(String input) {
+        if (input == null || input.isBlank()) {
+            return null;
+        }
+        String trimmed = input.trim();
+        if (VIDEO_ID.matcher(trimmed).matches()) {
+            return trimmed;
+        }
+        try {
+            return youTubeAnalysisService.extractVideoId(trimmed);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static VideoAnalysisResult placeholder() {
+        return new VideoAnalysisResult(null, null, null, null, 0, List.of(), List.of(), null, List.of());
+    }
+
+    private static List<VideoAnalysisResult> placeholders(int count) {
+        List<VideoAnalysisResult> placeholders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            placeholders.add(placeholder());
+        }
+        return placeholders;
+    }
+}
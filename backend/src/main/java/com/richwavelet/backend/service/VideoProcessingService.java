@@ -1,6 +1,8 @@
 package com.richwavelet.backend.service;
 
+import com.richwavelet.backend.dto.MediaInfo;
 import com.richwavelet.backend.model.ShaderStyle;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,24 +15,181 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 @Service
 public class VideoProcessingService {
 
     private static final Logger logger = LoggerFactory.getLogger(VideoProcessingService.class);
 
+    static final String CUT_MODE_KEYFRAME_COPY = "keyframe-copy";
+
     @Value("${video.temp-dir:/tmp/video-processing}")
     private String tempDir;
 
+    @Value("${video.ad-insertion.cut-mode:keyframe-copy}")
+    private String adCutMode;
+
+    @Value("${video.ad-insertion.keyframe-tolerance-seconds:2.0}")
+    private double keyframeToleranceSeconds;
+
+    @Value("${video.shader.chunk-seconds:60}")
+    private double shaderChunkSeconds;
+
+    @Value("${video.shader.min-chunked-duration-seconds:120}")
+    private double minChunkedDurationSeconds;
+
+    @Value("${video.shader.chunk-parallelism:0}")
+    private int chunkParallelism;
+
+    @Value("${video.analysis-proxy.enabled:true}")
+    private boolean analysisProxyEnabled = true;
+
+    @Value("${video.analysis-proxy.height:360}")
+    private int analysisProxyHeight = 360;
+
+    @Value("${video.analysis-proxy.fps:1}")
+    private double analysisProxyFps = 1;
+
+    @Value("${video.analysis-proxy.audio-sample-rate:16000}")
+    private int analysisProxyAudioSampleRate = 16000;
+
+    @Value("${video.analysis-proxy.crf:32}")
+    private int analysisProxyCrf = 32;
+
+    private ExecutorService chunkExecutor;
+
+    /**
+     * Codec parameters that must match for two files to be joined with the concat demuxer without re-encoding
+     */
+    record StreamParams(String videoCodec, String videoProfile, int width, int height, String pixelFormat,
+                        String frameRate, String audioCodec, int sampleRate, int channels) {
+
+        boolean hasAudio() {
+            return audioCodec != null;
+        }
+
+        boolean videoMatches(StreamParams other) {
+            return videoCodec.equals(other.videoCodec)
+                    && Objects.equals(videoProfile, other.videoProfile)
+                    && width == other.width
+                    && height == other.height
+                    && pixelFormat.equals(other.pixelFormat)
+                    && frameRate.equals(other.frameRate);
+        }
+
+        boolean audioMatches(StreamParams other) {
+            return Objects.equals(audioCodec, other.audioCodec)
+                    && sampleRate == other.sampleRate
+                    && channels == other.channels;
+        }
+    }
+
+    private final FilterGraphPlanner filterGraphPlanner;
+    private final ShaderCompiler shaderCompiler;
+    private final FfmpegRunner ffmpegRunner;
+    private final MediaProbeService mediaProbeService;
+
+    public VideoProcessingService(FilterGraphPlanner filterGraphPlanner, ShaderCompiler shaderCompiler,
+                                  FfmpegRunner ffmpegRunner, MediaProbeService mediaProbeService) {
+        this.filterGraphPlanner = filterGraphPlanner;
+        this.shaderCompiler = shaderCompiler;
+        this.ffmpegRunner = ffmpegRunner;
+        this.mediaProbeService = mediaProbeService;
+    }
+
+    /**
+     * Render shader effects, ad insertions and audio effects in a single FFmpeg pass.
+     * Equivalent to applyShaderEffects, insertAds and addAudioEffects run in sequence,
+     * but the main video is decoded and encoded only once.
+     */
+    public Path renderPipeline(Path inputVideo, ShaderStyle style, List<Path> adVideos,
+                               List<String> insertionPoints, Path outputDir) throws IOException, InterruptedException {
+        return renderPipeline(inputVideo, style, adVideos, insertionPoints, outputDir, FfmpegRunner.ProgressListener.NONE);
+    }
+
+    /**
+     * Single-pass render that reports encode progress to the listener
+     */
+    public Path renderPipeline(Path inputVideo, ShaderStyle style, List<Path> adVideos, List<String> insertionPoints,
+                               Path outputDir, FfmpegRunner.ProgressListener progress) throws IOException, InterruptedException {
+        Path outputVideo = outputDir.resolve("rendered-" + UUID.randomUUID() + ".mp4");
+
+        FilterGraphPlanner.InputSpec main = probeInput(inputVideo);
+
+        List<Double> insertSeconds = List.of();
+        List<FilterGraphPlanner.InputSpec> ads = new ArrayList<>();
+        if (!adVideos.isEmpty() && !insertionPoints.isEmpty()) {
+            insertSeconds = insertionPoints.stream()
+                    .map(this::parseTimestamp)
+                    .filter(t -> t > 0 && t < main.durationSeconds())
+                    .distinct()
+                    .sorted()
+                    .toList();
+            if (!insertSeconds.isEmpty()) {
+                for (Path ad : adVideos) {
+                    ads.add(probeInput(ad));
+                }
+            }
+        }
+
+        List<String> command = filterGraphPlanner.plan(
+                main,
+                style != null ? shaderCompiler.compile(style, main.width(), main.height()) : null,
+                getAudioFilterChain(),
+                ads,
+                insertSeconds,
+                outputVideo
+        );
+
+        // The output runs for the whole main video plus every spliced ad
+        double expectedSeconds = main.durationSeconds();
+        if (!ads.isEmpty()) {
+            for (int i = 0; i < insertSeconds.size(); i++) {
+                expectedSeconds += ads.get(i % ads.size()).durationSeconds();
+            }
+        }
+        ffmpegRunner.run(command, "single-pass render", expectedSeconds, progress);
+
+        logger.info("Rendered {} effects with {} ad insertions in a single pass", style, insertSeconds.size());
+        return outputVideo;
+    }
+
     /**
      * Apply shader effects to a video based on the selected style
      */
     public Path applyShaderEffects(Path inputVideo, ShaderStyle style, Path outputDir) throws IOException, InterruptedException {
+        return applyShaderEffects(inputVideo, style, outputDir, FfmpegRunner.ProgressListener.NONE);
+    }
+
+    /**
+     * Apply shader effects, reporting encode progress to the listener
+     */
+    public Path applyShaderEffects(Path inputVideo, ShaderStyle style, Path outputDir,
+                                   FfmpegRunner.ProgressListener progress) throws IOException, InterruptedException {
         Path outputVideo = outputDir.resolve("shaded-" + UUID.randomUUID() + ".mp4");
 
-        String filterChain = getFilterChain(style);
+        FilterGraphPlanner.InputSpec input = probeInput(inputVideo);
+        String filterChain = shaderCompiler.compile(style, input.width(), input.height()).simpleGraph();
+
+        List<Double> chunkBoundaries = planShaderChunks(inputVideo, input.durationSeconds());
+        if (chunkBoundaries.size() > 2) {
+            renderShaderChunks(inputVideo, filterChain, chunkBoundaries, outputVideo, outputDir, progress);
+            logger.info("Applied {} shader effects to video in {} parallel chunks", style, chunkBoundaries.size() - 1);
+            return outputVideo;
+        }
 
         List<String> command = new ArrayList<>(List.of(
                 "ffmpeg", "-y",
@@ -44,79 +203,207 @@ public class VideoProcessingService {
                 outputVideo.toString()
         ));
 
-        runFfmpegCommand(command, "shader effects");
+        ffmpegRunner.run(command, "shader effects", input.durationSeconds(), progress);
 
         logger.info("Applied {} shader effects to video", style);
         return outputVideo;
     }
 
     /**
-     * Get the FFmpeg filter chain for a shader style
+     * Decide where to cut the input for a chunked shader render.
+     * Returns chunk boundaries including 0 and the end, or fewer than three entries for a single-process render.
      */
-    private String getFilterChain(ShaderStyle style) {
-        return switch (style) {
-            case CRT -> getCrtFilterChain();
-            case VHS -> getVhsFilterChain();
-            case ARCADE -> getArcadeFilterChain();
-        };
+    private List<Double> planShaderChunks(Path inputVideo, double duration) throws IOException, InterruptedException {
+        if (shaderChunkSeconds <= 0 || effectiveChunkParallelism() < 2) {
+            return List.of();
+        }
+        if (duration < minChunkedDurationSeconds) {
+            return List.of();
+        }
+        return planChunkBoundaries(probeKeyframes(inputVideo), duration, shaderChunkSeconds);
     }
 
     /**
-     * CRT monitor effect: scanlines, vignette, warm colors
+     * Pick keyframes roughly chunkSeconds apart as chunk boundaries, so every chunk starts on a keyframe.
+     * A trailing chunk shorter than half the chunk length is merged into the previous one.
      */
-    private String getCrtFilterChain() {
-        return String.join(",",
-                // Add scanlines
-                "geq=lum='lum(X,Y)':cb='if(mod(Y,2),cb(X,Y)*0.7,cb(X,Y))':cr='if(mod(Y,2),cr(X,Y)*0.7,cr(X,Y))'",
-                // Vignette effect
-                "vignette=PI/4",
-                // Warm color temperature
-                "colorbalance=rs=0.1:gs=-0.05:bs=-0.1",
-                // Slight blur for CRT softness
-                "gblur=sigma=0.5",
-                // Reduce saturation slightly
-                "eq=saturation=0.85"
-        );
+    List<Double> planChunkBoundaries(List<Double> keyframes, double duration, double chunkSeconds) {
+        List<Double> boundaries = new ArrayList<>();
+        boundaries.add(0.0);
+        double lastBoundary = 0;
+        for (double keyframe : keyframes) {
+            if (keyframe - lastBoundary >= chunkSeconds && duration - keyframe >= chunkSeconds / 2) {
+                boundaries.add(keyframe);
+                lastBoundary = keyframe;
+            }
+        }
+        boundaries.add(duration);
+        return boundaries;
     }
 
     /**
-     * VHS tape effect: chromatic aberration, noise, tape wobble
+     * Render each chunk's shader chain in its own FFmpeg process, then stitch the chunks
+     * with a stream-copy concat and copy the original audio back in
      */
-    private String getVhsFilterChain() {
-        return String.join(",",
-                // Add noise for tape grain
-                "noise=c0s=15:c0f=t",
-                // Desaturate slightly
-                "eq=saturation=0.75",
-                // Thicker scanlines for VHS
-                "geq=lum='lum(X,Y)*if(mod(Y,4)<2,0.85,1.0)'",
-                // Warm color shift (aged tape)
-                "colorbalance=rs=0.15:gs=0.05:bs=-0.1",
-                // Blur for tape quality
-                "gblur=sigma=0.8"
-        );
+    private void renderShaderChunks(Path inputVideo, String filterChain, List<Double> boundaries, Path outputVideo,
+                                    Path outputDir, FfmpegRunner.ProgressListener progress) throws IOException, InterruptedException {
+        int chunkCount = boundaries.size() - 1;
+        double totalSeconds = boundaries.get(chunkCount);
+        // Seconds rendered so far by each chunk, combined into one fraction for the listener
+        double[] chunkDone = new double[chunkCount];
+        List<Path> chunks = new ArrayList<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        // Threads rendering a chunk right now, so a failure can interrupt them; guarded by itself
+        Set<Thread> rendering = new HashSet<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        for (int i = 0; i < chunkCount; i++) {
+            Path chunk = outputDir.resolve("shaded-chunk-" + i + "-" + UUID.randomUUID() + ".mp4");
+            chunks.add(chunk);
+
+            List<String> command = new ArrayList<>(List.of(
+                    "ffmpeg", "-y",
+                    "-ss", String.format(Locale.ROOT, "%.6f", boundaries.get(i)),
+                    "-i", inputVideo.toString()
+            ));
+            if (i < chunkCount - 1) {
+                command.addAll(List.of("-t", String.format(Locale.ROOT, "%.6f", boundaries.get(i + 1) - boundaries.get(i))));
+            }
+            command.addAll(List.of(
+                    "-map", "0:v:0",
+                    "-vf", filterChain,
+                    "-c:v", "libx264",
+                    "-preset", "fast",
+                    "-crf", "23",
+                    "-an",
+                    chunk.toString()
+            ));
+
+            String description = "shader chunk " + (i + 1) + "/" + chunkCount;
+            int chunkIndex = i;
+            double chunkSeconds = boundaries.get(i + 1) - boundaries.get(i);
+            FfmpegRunner.ProgressListener chunkProgress = fraction -> {
+                double done;
+                synchronized (chunkDone) {
+                    chunkDone[chunkIndex] = fraction * chunkSeconds;
+                    done = 0;
+                    for (double seconds : chunkDone) {
+                        done += seconds;
+                    }
+                }
+                progress.onProgress(done / totalSeconds);
+            };
+            futures.add(chunkExecutor().submit(() -> {
+                synchronized (rendering) {
+                    if (aborted.get()) {
+                        return null;
+                    }
+                    rendering.add(Thread.currentThread());
+                }
+                try {
+                    ffmpegRunner.run(command, description, chunkSeconds, chunkProgress);
+                    return null;
+                } finally {
+                    synchronized (rendering) {
+                        rendering.remove(Thread.currentThread());
+                    }
+                }
+            }));
+        }
+
+        // After a failure or an interrupt the remaining chunks are skipped and running ones interrupted,
+        // which destroys their FFmpeg processes. Every chunk is still waited for, so no process is
+        // writing when the chunk files are deleted.
+        Exception failure = null;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException io ? io : new IOException("Shader chunk failed", e.getCause());
+                        abortChunks(rendering, aborted);
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    if (!(failure instanceof InterruptedException)) {
+                        failure = e;
+                    }
+                    abortChunks(rendering, aborted);
+                }
+            }
+        }
+        if (failure != null) {
+            for (Path chunk : chunks) {
+                Files.deleteIfExists(chunk);
+            }
+            if (failure instanceof InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw interrupted;
+            }
+            throw (IOException) failure;
+        }
+
+        Path concatList = writeConcatList(chunks, outputDir);
+        runFfmpegCommand(List.of(
+                "ffmpeg", "-y",
+                "-f", "concat",
+                "-safe", "0",
+                "-i", concatList.toString(),
+                "-i", inputVideo.toString(),
+                "-map", "0:v:0",
+                "-map", "1:a:0?",
+                "-c", "copy",
+                "-movflags", "+faststart",
+                outputVideo.toString()
+        ), "stitch shader chunks");
+
+        Files.deleteIfExists(concatList);
+        for (Path chunk : chunks) {
+            Files.deleteIfExists(chunk);
+        }
+    }
+
+    private static void abortChunks(Set<Thread> rendering, AtomicBoolean aborted) {
+        synchronized (rendering) {
+            aborted.set(true);
+            rendering.forEach(Thread::interrupt);
+        }
+    }
+
+    private int effectiveChunkParallelism() {
+        return chunkParallelism > 0 ? chunkParallelism : Runtime.getRuntime().availableProcessors();
     }
 
     /**
-     * Arcade cabinet effect: phosphor dots, high contrast, glow
+     * Shared pool for chunk renders, so concurrent jobs together never run more FFmpeg processes than cores
      */
-    private String getArcadeFilterChain() {
-        return String.join(",",
-                // High contrast and brightness
-                "eq=contrast=1.2:brightness=0.05:saturation=1.2",
-                // Vivid colors
-                "colorbalance=rs=0.1:gs=0.1:bs=0.05",
-                // Phosphor dot pattern simulation via scanlines
-                "geq=lum='lum(X,Y)*if(mod(Y,3),0.9,1.0)'",
-                // Slight bloom/glow via blur blend
-                "gblur=sigma=1.5"
-        );
+    private synchronized ExecutorService chunkExecutor() {
+        if (chunkExecutor == null) {
+            chunkExecutor = Executors.newFixedThreadPool(effectiveChunkParallelism());
+        }
+        return chunkExecutor;
+    }
+
+    @PreDestroy
+    synchronized void shutdownChunkExecutor() {
+        if (chunkExecutor != null) {
+            chunkExecutor.shutdownNow();
+        }
     }
 
     /**
      * Add crackly/vintage audio effects
      */
     public Path addAudioEffects(Path inputVideo, Path outputDir) throws IOException, InterruptedException {
+        return addAudioEffects(inputVideo, outputDir, FfmpegRunner.ProgressListener.NONE);
+    }
+
+    /**
+     * Add vintage audio effects, reporting progress to the listener
+     */
+    public Path addAudioEffects(Path inputVideo, Path outputDir, FfmpegRunner.ProgressListener progress) throws IOException, InterruptedException {
         Path outputVideo = outputDir.resolve("audio-fx-" + UUID.randomUUID() + ".mp4");
 
         List<String> command = List.of(
@@ -127,7 +414,8 @@ public class VideoProcessingService {
                 outputVideo.toString()
         );
 
-        runFfmpegCommand(command, "audio effects");
+        double expectedSeconds = progress == FfmpegRunner.ProgressListener.NONE ? 0 : getVideoDuration(inputVideo);
+        ffmpegRunner.run(command, "audio effects", expectedSeconds, progress);
 
         logger.info("Applied vintage audio effects to video");
         return outputVideo;
@@ -171,6 +459,14 @@ public class VideoProcessingService {
             return mainVideo;
         }
 
+        if (CUT_MODE_KEYFRAME_COPY.equals(adCutMode)) {
+            Optional<Path> copied = insertAdsWithStreamCopy(mainVideo, adVideos, insertSeconds, outputDir);
+            if (copied.isPresent()) {
+                return copied.get();
+            }
+            logger.info("Falling back to re-encoding ad insertion");
+        }
+
         // Create segments
         List<Path> segments = new ArrayList<>();
         double lastEnd = 0;
@@ -201,6 +497,325 @@ public class VideoProcessingService {
         return concatenateVideos(segments, outputDir);
     }
 
+    /**
+     * Insert ads without re-encoding the main video: insertion points are snapped to keyframes,
+     * the main video is split with stream copy and only ads whose codec parameters differ are conformed.
+     * Returns empty when the main video cannot be cut this way.
+     */
+    private Optional<Path> insertAdsWithStreamCopy(Path mainVideo, List<Path> adVideos, List<Double> insertSeconds,
+                                                   Path outputDir) throws IOException, InterruptedException {
+        List<Double> keyframes = probeKeyframes(mainVideo);
+        Optional<List<Double>> snapped = snapToKeyframes(insertSeconds, keyframes, keyframeToleranceSeconds);
+        if (snapped.isEmpty()) {
+            logger.info("Insertion points {} are not within {}s of a keyframe", insertSeconds, keyframeToleranceSeconds);
+            return Optional.empty();
+        }
+        List<Double> cutPoints = snapped.get();
+
+        StreamParams mainParams = probeStreamParams(mainVideo);
+        List<Path> ads = new ArrayList<>();
+        for (Path ad : adVideos) {
+            StreamParams adParams = probeStreamParams(ad);
+            if (adParams.videoMatches(mainParams) && adParams.audioMatches(mainParams)) {
+                ads.add(ad);
+                continue;
+            }
+            Optional<Path> conformed = conformAd(ad, adParams, mainParams, outputDir);
+            if (conformed.isEmpty()) {
+                logger.info("Cannot conform ad {} to {} without a matching encoder", ad, mainParams.videoCodec());
+                return Optional.empty();
+            }
+            ads.add(conformed.get());
+        }
+
+        List<Path> mainSegments = splitAtKeyframes(mainVideo, cutPoints, mainParams.hasAudio(), outputDir);
+        if (mainSegments.size() != cutPoints.size() + 1) {
+            logger.warn("Expected {} segments but stream copy produced {}", cutPoints.size() + 1, mainSegments.size());
+            return Optional.empty();
+        }
+
+        List<Path> segments = new ArrayList<>();
+        for (int i = 0; i < mainSegments.size(); i++) {
+            segments.add(mainSegments.get(i));
+            if (i < cutPoints.size()) {
+                segments.add(ads.get(i % ads.size()));
+            }
+        }
+
+        Path output = outputDir.resolve("concatenated-" + UUID.randomUUID() + ".mp4");
+        Path concatList = writeConcatList(segments, outputDir);
+        runFfmpegCommand(List.of(
+                "ffmpeg", "-y",
+                "-f", "concat",
+                "-safe", "0",
+                "-i", concatList.toString(),
+                "-c", "copy",
+                "-movflags", "+faststart",
+                output.toString()
+        ), "concatenate videos (stream copy)");
+        Files.deleteIfExists(concatList);
+
+        logger.info("Inserted {} ads at keyframes {} without re-encoding the main video", cutPoints.size(), cutPoints);
+        return Optional.of(output);
+    }
+
+    /**
+     * Snap each insertion point to the nearest keyframe within the tolerance.
+     * Returns empty if any point has no keyframe close enough.
+     */
+    Optional<List<Double>> snapToKeyframes(List<Double> insertSeconds, List<Double> keyframes, double toleranceSeconds) {
+        List<Double> snapped = new ArrayList<>();
+        for (double insertTime : insertSeconds) {
+            Double nearest = null;
+            for (double keyframe : keyframes) {
+                if (keyframe <= 0) {
+                    continue;
+                }
+                if (nearest == null || Math.abs(keyframe - insertTime) < Math.abs(nearest - insertTime)) {
+                    nearest = keyframe;
+                }
+            }
+            if (nearest == null || Math.abs(nearest - insertTime) > toleranceSeconds) {
+                return Optional.empty();
+            }
+            snapped.add(nearest);
+        }
+        return Optional.of(snapped.stream().distinct().sorted().toList());
+    }
+
+    /**
+     * Split a video at the given keyframe times with stream copy, returning the pieces in order
+     */
+    private List<Path> splitAtKeyframes(Path video, List<Double> cutPoints, boolean withAudio, Path outputDir) throws IOException, InterruptedException {
+        String prefix = "seg-" + UUID.randomUUID() + "-";
+        List<String> times = cutPoints.stream()
+                .map(t -> String.format(Locale.ROOT, "%.6f", t))
+                .toList();
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg", "-y",
+                "-i", video.toString(),
+                "-map", "0:v:0"
+        ));
+        if (withAudio) {
+            command.addAll(List.of("-map", "0:a:0"));
+        }
+        command.addAll(List.of(
+                "-c", "copy",
+                "-f", "segment",
+                "-segment_times", String.join(",", times),
+                // Absorbs rounding in the printed keyframe times; GOPs are far longer than this
+                "-segment_time_delta", "0.05",
+                "-reset_timestamps", "1",
+                "-avoid_negative_ts", "make_zero",
+                outputDir.resolve(prefix + "%03d.mp4").toString()
+        ));
+
+        runFfmpegCommand(command, "split at keyframes");
+
+        try (Stream<Path> files = Files.list(outputDir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Re-encode only the parts of an ad that differ from the main video's codec parameters
+     */
+    private Optional<Path> conformAd(Path ad, StreamParams adParams, StreamParams mainParams, Path outputDir) throws IOException, InterruptedException {
+        boolean copyVideo = adParams.videoMatches(mainParams);
+        String videoEncoder = copyVideo ? "copy" : encoderFor(mainParams.videoCodec());
+        String audioEncoder = null;
+        if (mainParams.hasAudio()) {
+            audioEncoder = adParams.hasAudio() && adParams.audioMatches(mainParams) ? "copy" : encoderFor(mainParams.audioCodec());
+        }
+        if (videoEncoder == null || (mainParams.hasAudio() && audioEncoder == null)) {
+            return Optional.empty();
+        }
+
+        Path output = outputDir.resolve("conformed-" + UUID.randomUUID() + ".mp4");
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y", "-i", ad.toString()));
+        boolean generateSilence = mainParams.hasAudio() && !adParams.hasAudio();
+        if (generateSilence) {
+            command.addAll(List.of(
+                    "-f", "lavfi",
+                    "-i", "anullsrc=r=" + mainParams.sampleRate() + ":cl=" + (mainParams.channels() == 1 ? "mono" : "stereo")
+            ));
+        }
+
+        command.addAll(List.of("-map", "0:v:0"));
+        if (copyVideo) {
+            command.addAll(List.of("-c:v", "copy"));
+        } else {
+            int width = mainParams.width();
+            int height = mainParams.height();
+            command.addAll(List.of(
+                    "-vf", String.join(",",
+                            "scale=" + width + ":" + height + ":force_original_aspect_ratio=decrease",
+                            "pad=" + width + ":" + height + ":(ow-iw)/2:(oh-ih)/2",
+                            "setsar=1",
+                            "fps=" + mainParams.frameRate(),
+                            "format=" + mainParams.pixelFormat()),
+                    "-c:v", videoEncoder,
+                    "-preset", "fast",
+                    "-crf", "23"
+            ));
+            String profile = encoderProfile(mainParams.videoProfile());
+            if (profile != null && "libx264".equals(videoEncoder)) {
+                command.addAll(List.of("-profile:v", profile));
+            }
+        }
+
+        if (mainParams.hasAudio()) {
+            command.addAll(List.of("-map", generateSilence ? "1:a:0" : "0:a:0"));
+            if ("copy".equals(audioEncoder)) {
+                command.addAll(List.of("-c:a", "copy"));
+            } else {
+                command.addAll(List.of(
+                        "-c:a", audioEncoder,
+                        "-ar", String.valueOf(mainParams.sampleRate()),
+                        "-ac", String.valueOf(mainParams.channels())
+                ));
+            }
+            if (generateSilence) {
+                command.add("-shortest");
+            }
+        } else {
+            command.add("-an");
+        }
+        command.addAll(List.of("-movflags", "+faststart", output.toString()));
+
+        runFfmpegCommand(command, "conform ad");
+        return Optional.of(output);
+    }
+
+    /**
+     * Encode an ad at a canonical size and frame rate: letterboxed H.264 High 4:2:0 with a fixed GOP and no
+     * scene-cut keyframes, and 48 kHz stereo AAC (silence when the ad has none), so renditions of different
+     * ads share codec parameters
+     */
+    Path encodeRendition(Path ad, int width, int height, int frameRate, int gopFrames, Path outputDir)
+            throws IOException, InterruptedException {
+        Path output = outputDir.resolve("rendition-" + width + "x" + height + "-" + UUID.randomUUID() + ".mp4");
+        boolean hasAudio = probeInput(ad).hasAudio();
+
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y", "-i", ad.toString()));
+        if (!hasAudio) {
+            command.addAll(List.of("-f", "lavfi", "-i", "anullsrc=r=48000:cl=stereo"));
+        }
+        command.addAll(List.of(
+                "-map", "0:v:0",
+                "-map", hasAudio ? "0:a:0" : "1:a:0",
+                "-vf", String.join(",",
+                        "scale=" + width + ":" + height + ":force_original_aspect_ratio=decrease",
+                        "pad=" + width + ":" + height + ":(ow-iw)/2:(oh-ih)/2",
+                        "setsar=1",
+                        "fps=" + frameRate,
+                        "format=yuv420p"),
+                "-c:v", "libx264",
+                "-profile:v", "high",
+                "-preset", "medium",
+                "-crf", "21",
+                "-g", String.valueOf(gopFrames),
+                "-keyint_min", String.valueOf(gopFrames),
+                "-sc_threshold", "0",
+                "-c:a", "aac",
+                "-b:a", "192k",
+                "-ar", "48000",
+                "-ac", "2"
+        ));
+        if (!hasAudio) {
+            command.add("-shortest");
+        }
+        command.addAll(List.of("-movflags", "+faststart", output.toString()));
+
+        runFfmpegCommand(command, "encode " + width + "x" + height + " ad rendition");
+        return output;
+    }
+
+    /**
+     * Make the small rendition that is sent to Gemini for analysis instead of the source: downscaled,
+     * a frame or two per second and mono speech-rate audio, keeping the source timeline so timestamps
+     * in the analysis still apply to the original. Falls back to the source if the proxy is disabled
+     * or cannot be made.
+     */
+    public Path createAnalysisProxy(Path input, Path outputDir) throws InterruptedException {
+        if (!analysisProxyEnabled) {
+            return input;
+        }
+        try {
+            Path output = outputDir.resolve("analysis-proxy-" + UUID.randomUUID() + ".mp4");
+            runFfmpegCommand(analysisProxyCommand(input, output, probeInput(input).hasAudio()),
+                    "create analysis proxy");
+            logger.info("Analysis proxy {} bytes (source {} bytes)", Files.size(output), Files.size(input));
+            return output;
+        } catch (IOException e) {
+            logger.warn("Could not create analysis proxy for {}, analyzing the source: {}", input, e.getMessage());
+            return input;
+        }
+    }
+
+    List<String> analysisProxyCommand(Path input, Path output, boolean hasAudio) {
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg", "-y",
+                "-i", input.toString(),
+                "-map", "0:v:0",
+                "-vf", String.join(",",
+                        // Never upscale sources already smaller than the proxy
+                        "scale=-2:'min(" + analysisProxyHeight + ",ih)'",
+                        "fps=" + analysisProxyFps,
+                        "format=yuv420p"),
+                "-c:v", "libx264",
+                "-preset", "veryfast",
+                "-crf", String.valueOf(analysisProxyCrf)
+        ));
+        if (hasAudio) {
+            command.addAll(List.of(
+                    "-map", "0:a:0",
+                    "-c:a", "aac",
+                    "-b:a", "32k",
+                    "-ar", String.valueOf(analysisProxyAudioSampleRate),
+                    "-ac", "1"));
+        } else {
+            command.add("-an");
+        }
+        command.addAll(List.of("-movflags", "+faststart", output.toString()));
+        return command;
+    }
+
+    /**
+     * FFmpeg encoder that produces the given codec, or null if there is none we use
+     */
+    private String encoderFor(String codec) {
+        if (codec == null) {
+            return null;
+        }
+        return switch (codec) {
+            case "h264" -> "libx264";
+            case "hevc" -> "libx265";
+            case "aac" -> "aac";
+            case "mp3" -> "libmp3lame";
+            case "opus" -> "libopus";
+            default -> null;
+        };
+    }
+
+    /**
+     * Map an ffprobe H.264 profile name to the libx264 profile option
+     */
+    private String encoderProfile(String probedProfile) {
+        if (probedProfile == null) {
+            return null;
+        }
+        return switch (probedProfile) {
+            case "Baseline", "Constrained Baseline" -> "baseline";
+            case "Main" -> "main";
+            case "High" -> "high";
+            default -> null;
+        };
+    }
+
     /**
      * Extract a segment from a video
      */
@@ -230,16 +845,9 @@ public class VideoProcessingService {
      * Concatenate multiple videos
      */
     private Path concatenateVideos(List<Path> videos, Path outputDir) throws IOException, InterruptedException {
-        Path concatList = outputDir.resolve("concat-" + UUID.randomUUID() + ".txt");
+        Path concatList = writeConcatList(videos, outputDir);
         Path output = outputDir.resolve("concatenated-" + UUID.randomUUID() + ".mp4");
 
-        // Create concat file
-        try (PrintWriter writer = new PrintWriter(concatList.toFile())) {
-            for (Path video : videos) {
-                writer.println("file '" + video.toString().replace("'", "\\'") + "'");
-            }
-        }
-
         List<String> command = List.of(
                 "ffmpeg", "-y",
                 "-f", "concat",
@@ -262,53 +870,106 @@ public class VideoProcessingService {
         return output;
     }
 
+    /**
+     * Write a concat demuxer file list
+     */
+    private Path writeConcatList(List<Path> videos, Path outputDir) throws IOException {
+        Path concatList = outputDir.resolve("concat-" + UUID.randomUUID() + ".txt");
+        try (PrintWriter writer = new PrintWriter(concatList.toFile())) {
+            for (Path video : videos) {
+                writer.println("file '" + video.toString().replace("'", "\\'") + "'");
+            }
+        }
+        return concatList;
+    }
+
     /**
      * Get video duration in seconds
      */
     public double getVideoDuration(Path videoPath) throws IOException, InterruptedException {
-        List<String> command = List.of(
-                "ffprobe",
-                "-v", "error",
-                "-show_entries", "format=duration",
-                "-of", "default=noprint_wrappers=1:nokey=1",
-                videoPath.toString()
-        );
-
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
+        return mediaProbeService.probe(videoPath).durationSeconds();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line = reader.readLine();
-            process.waitFor();
-            return line != null ? Double.parseDouble(line.trim()) : 0;
+    /**
+     * Probe the stream properties the filter graph planner needs
+     */
+    FilterGraphPlanner.InputSpec probeInput(Path videoPath) throws IOException, InterruptedException {
+        MediaInfo info = mediaProbeService.probe(videoPath);
+        if (!info.hasVideo()) {
+            throw new IOException("No video stream found in " + videoPath);
         }
+        MediaInfo.VideoStream video = info.video();
+        String frameRate = video.frameRate() != null ? video.frameRate() : "30";
+        return new FilterGraphPlanner.InputSpec(videoPath, info.durationSeconds(), video.width(), video.height(),
+                frameRate, info.hasAudio());
     }
 
     /**
-     * Run an FFmpeg command and wait for completion
+     * List keyframe timestamps of the first video stream, read from packet flags so nothing is decoded
      */
-    private void runFfmpegCommand(List<String> command, String description) throws IOException, InterruptedException {
-        logger.info("Running FFmpeg command for {}: {}", description, String.join(" ", command));
+    List<Double> probeKeyframes(Path videoPath) throws IOException, InterruptedException {
+        List<String> command = List.of(
+                "ffprobe",
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "packet=pts_time,flags",
+                "-of", "csv=p=0",
+                videoPath.toString()
+        );
 
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
         Process process = pb.start();
 
-        // Read and log output
+        List<Double> keyframes = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                logger.debug("FFmpeg: {}", line);
+                String[] fields = line.trim().split(",");
+                if (fields.length >= 2 && fields[1].startsWith("K")) {
+                    try {
+                        keyframes.add(Double.parseDouble(fields[0]));
+                    } catch (NumberFormatException e) {
+                        // Packets without a timestamp report N/A
+                    }
+                }
             }
         }
+        if (process.waitFor() != 0) {
+            throw new IOException("ffprobe failed for " + videoPath);
+        }
+
+        return keyframes.stream().sorted().toList();
+    }
 
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("FFmpeg command failed for " + description + " with exit code: " + exitCode);
+    /**
+     * Probe the codec parameters of the first video and audio streams
+     */
+    StreamParams probeStreamParams(Path videoPath) throws IOException, InterruptedException {
+        MediaInfo info = mediaProbeService.probe(videoPath);
+        if (!info.hasVideo()) {
+            throw new IOException("No video stream found in " + videoPath);
         }
+        MediaInfo.VideoStream video = info.video();
+        MediaInfo.AudioStream audio = info.audio();
+        return new StreamParams(
+                video.codec(),
+                video.profile(),
+                video.width(),
+                video.height(),
+                video.pixelFormat(),
+                video.frameRate() != null ? video.frameRate() : "",
+                audio != null ? audio.codec() : null,
+                audio != null ? audio.sampleRate() : 0,
+                audio != null ? audio.channels() : 0
+        );
+    }
 
-        logger.info("FFmpeg command completed successfully for {}", description);
+    /**
+     * Run an FFmpeg command and wait for completion
+     */
+    private void runFfmpegCommand(List<String> command, String description) throws IOException, InterruptedException {
+        ffmpegRunner.run(command, description);
     }
 
     /**
@@ -0,0 +1,26 @@
+package com.richwavelet.backend.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Object store that Gemini can read video from by URI, for files too large to send inline
+ */
+public interface VideoStagingStore {
+
+    /**
+     * Whether staging is configured; when it is not, every video is sent inline
+     */
+    boolean isEnabled();
+
+    /**
+     * Copy a local file into the store
+     * @return URI Gemini can read the object from
+     */
+    String stage(Path file, String objectName, String mimeType) throws IOException;
+
+    /**
+     * Remove an object previously returned by {@link #stage}
+     */
+    void delete(String uri) throws IOException;
+}
@@ -2,27 +2,37 @@ package com.richwavelet.backend.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.cloud.vertexai.VertexAI;
 import com.google.cloud.vertexai.api.*;
-import com.google.cloud.vertexai.generativeai.GenerativeModel;
 import com.google.cloud.vertexai.generativeai.ResponseHandler;
 import com.richwavelet.backend.dto.AdBreakSuggestion;
 import com.richwavelet.backend.dto.VideoAnalysisResult;
 import com.richwavelet.backend.dto.YouTubeMetadata;
 import com.richwavelet.backend.model.VideoAnalysis;
+import com.richwavelet.backend.repository.VideoAnalysisClaimRepository;
 import com.richwavelet.backend.repository.VideoAnalysisRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 public class YouTubeAnalysisService {
@@ -33,26 +43,35 @@ public class YouTubeAnalysisService {
     private static final Pattern YOUTUBE_PATTERN_1 = Pattern.compile("(?:youtube\\.com/watch\\?v=|youtu\\.be/)([a-zA-Z0-9_-]{11})");
     private static final Pattern YOUTUBE_PATTERN_2 = Pattern.compile("youtube\\.com/embed/([a-zA-Z0-9_-]{11})");
 
-    @Value("${youtube.api.key}")
-    private String youtubeApiKey;
+    @Value("${youtube.analysis.claim-lease-seconds:120}")
+    private int claimLeaseSeconds = 120;
 
-    @Value("${gcp.project-id}")
-    private String projectId;
-
-    @Value("${gcp.location:us-central1}")
-    private String location;
-
-    @Value("${gemini.model:gemini-2.0-flash-001}")
-    private String geminiModel;
+    @Value("${youtube.analysis.claim-poll-millis:500}")
+    private long claimPollMillis = 500;
 
     private final VideoAnalysisRepository videoAnalysisRepository;
+    private final VideoAnalysisClaimRepository videoAnalysisClaimRepository;
     private final ObjectMapper objectMapper;
-    private final RestTemplate restTemplate;
-
-    public YouTubeAnalysisService(VideoAnalysisRepository videoAnalysisRepository) {
+    private final YouTubeMetadataClient youTubeMetadataClient;
+    private final VideoAnalysisCache videoAnalysisCache;
+    private final VertexAiClientPool vertexAiClientPool;
+    private final VertexAiClientPool.ModelSpec videoAnalysisModel =
+            new VertexAiClientPool.ModelSpec("youtube-analysis", buildVideoAnalysisSchema());
+    // Identifies this instance's claims
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, CompletableFuture<VideoAnalysisResult>> inFlight = new ConcurrentHashMap<>();
+
+    public YouTubeAnalysisService(VideoAnalysisRepository videoAnalysisRepository,
+                                  VideoAnalysisClaimRepository videoAnalysisClaimRepository,
+                                  VertexAiClientPool vertexAiClientPool,
+                                  YouTubeMetadataClient youTubeMetadataClient,
+                                  VideoAnalysisCache videoAnalysisCache) {
         this.videoAnalysisRepository = videoAnalysisRepository;
+        this.videoAnalysisClaimRepository = videoAnalysisClaimRepository;
         this.objectMapper = new ObjectMapper();
-        this.restTemplate = new RestTemplate();
+        this.youTubeMetadataClient = youTubeMetadataClient;
+        this.videoAnalysisCache = videoAnalysisCache;
+        this.vertexAiClientPool = vertexAiClientPool;
     }
 
     /**
@@ -77,86 +96,92 @@ public class YouTubeAnalysisService {
     }
 
     /**
-     * Fetch video metadata from YouTube Data API v3
+     * Fetch video metadata from YouTube Data API v3, batched with other lookups made meanwhile
      */
     public YouTubeMetadata fetchMetadata(String videoId) throws IOException {
-        logger.info("Fetching YouTube metadata for video: {}", videoId);
-
-        String url = String.format(
-                "https://www.googleapis.com/youtube/v3/videos?id=%s&part=snippet,contentDetails&key=%s",
-                videoId, youtubeApiKey
-        );
-
-        try {
-            String response = restTemplate.getForObject(url, String.class);
-            JsonNode root = objectMapper.readTree(response);
-
-            JsonNode items = root.path("items");
-            if (items.isEmpty()) {
-                throw new IOException("Video not found: " + videoId);
-            }
-
-            JsonNode item = items.get(0);
-            JsonNode snippet = item.path("snippet");
-            JsonNode contentDetails = item.path("contentDetails");
-
-            String title = snippet.path("title").asText();
-            String description = snippet.path("description").asText();
-            String category = snippet.path("categoryId").asText();
-            String duration = contentDetails.path("duration").asText();
-
-            // Parse ISO 8601 duration (PT#M#S format)
-            int durationSeconds = parseDuration(duration);
-
-            // Parse tags
-            JsonNode tagsNode = snippet.path("tags");
-            String[] tags = new String[0];
-            if (tagsNode.isArray()) {
-                List<String> tagList = new ArrayList<>();
-                tagsNode.forEach(tag -> tagList.add(tag.asText()));
-                tags = tagList.toArray(new String[0]);
-            }
-
-            logger.info("Fetched metadata for video: {} ({}s)", title, durationSeconds);
-
-            return new YouTubeMetadata(videoId, title, description, durationSeconds, category, tags);
-        } catch (Exception e) {
-            logger.error("Failed to fetch YouTube metadata: {}", e.getMessage(), e);
-            throw new IOException("Failed to fetch YouTube metadata: " + e.getMessage(), e);
-        }
+        return youTubeMetadataClient.fetch(videoId);
     }
 
     /**
-     * Parse ISO 8601 duration string (e.g., PT1M30S -> 90 seconds)
+     * Analyze YouTube video using metadata and Gemini AI. Concurrent requests for the same video share
+     * one analysis: within this instance through an in-flight future, and across instances through a
+     * short claim in the database that other instances wait on.
      */
-    private int parseDuration(String duration) {
-        Pattern pattern = Pattern.compile("PT(?:(\\d+)H)?(?:(\\d+)M)?(?:(\\d+)S)?");
-        Matcher matcher = pattern.matcher(duration);
+    public VideoAnalysisResult analyze(String youtubeUrl) throws IOException {
+        String videoId = extractVideoId(youtubeUrl);
 
-        if (!matcher.matches()) {
-            return 0;
+        // Check if we have cached analysis
+        Optional<VideoAnalysisResult> cached = getCachedAnalysis(videoId);
+        if (cached.isPresent()) {
+            logger.debug("Returning cached analysis for video: {}", videoId);
+            return cached.get();
         }
 
-        int hours = matcher.group(1) != null ? Integer.parseInt(matcher.group(1)) : 0;
-        int minutes = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
-        int seconds = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
-
-        return hours * 3600 + minutes * 60 + seconds;
+        CompletableFuture<VideoAnalysisResult> analysis = new CompletableFuture<>();
+        CompletableFuture<VideoAnalysisResult> running = inFlight.putIfAbsent(videoId, analysis);
+        if (running != null) {
+            logger.info("Joining in-flight analysis of video: {}", videoId);
+            return await(running);
+        }
+        try {
+            VideoAnalysisResult result = analyzeClaimed(videoId, youtubeUrl);
+            analysis.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            analysis.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(videoId, analysis);
+        }
     }
 
     /**
-     * Analyze YouTube video using metadata and Gemini AI
+     * Analyze a video once this instance holds the cluster-wide claim on it, or return the result of
+     * the instance that held it
      */
-    public VideoAnalysisResult analyze(String youtubeUrl) throws IOException {
-        String videoId = extractVideoId(youtubeUrl);
+    private VideoAnalysisResult analyzeClaimed(String videoId, String youtubeUrl) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2L * claimLeaseSeconds);
+        while (true) {
+            boolean claimed;
+            try {
+                claimed = videoAnalysisClaimRepository.tryClaim(videoId, instanceId,
+                        OffsetDateTime.now().plusSeconds(claimLeaseSeconds)) > 0;
+            } catch (RuntimeException e) {
+                logger.warn("Could not claim video {} for analysis, analyzing unclaimed: {}", videoId, e.getMessage());
+                return analyzeAndSave(videoId, youtubeUrl);
+            }
 
-        // Check if we have cached analysis
-        Optional<VideoAnalysis> cached = videoAnalysisRepository.findByVideoId(videoId);
-        if (cached.isPresent()) {
-            logger.info("Returning cached analysis for video: {}", videoId);
-            return convertToDto(cached.get());
+            if (claimed) {
+                try {
+                    // Another instance may have finished between the cache check and the claim
+                    Optional<VideoAnalysis> saved = videoAnalysisRepository.findByVideoId(videoId);
+                    if (saved.isPresent()) {
+                        return convertToDto(saved.get());
+                    }
+                    return analyzeAndSave(videoId, youtubeUrl);
+                } finally {
+                    releaseClaim(videoId);
+                }
+            }
+
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Timed out waiting for analysis of video " + videoId + " on another instance");
+            }
+            try {
+                Thread.sleep(claimPollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for analysis of video " + videoId);
+            }
+            Optional<VideoAnalysis> saved = videoAnalysisRepository.findByVideoId(videoId);
+            if (saved.isPresent()) {
+                logger.info("Analysis of video {} finished on another instance", videoId);
+                return convertToDto(saved.get());
+            }
         }
+    }
 
+    private VideoAnalysisResult analyzeAndSave(String videoId, String youtubeUrl) throws IOException {
         // Fetch metadata from YouTube
         YouTubeMetadata metadata = fetchMetadata(videoId);
 
@@ -164,28 +189,100 @@ public class YouTubeAnalysisService {
         VideoAnalysisResult analysis = analyzeWithGemini(metadata);
 
         // Save to database
-        VideoAnalysis entity = new VideoAnalysis(videoId, youtubeUrl);
-        entity.setTitle(metadata.title());
-        entity.setDescription(metadata.description());
-        entity.setDurationSeconds(metadata.durationSeconds());
+        VideoAnalysis entity = toEntity(analysis, youtubeUrl);
+
+        try {
+            videoAnalysisRepository.save(entity);
+            videoAnalysisCache.put(analysis);
+            logger.info("Saved analysis for video: {}", videoId);
+        } catch (DataIntegrityViolationException e) {
+            // An unclaimed analysis elsewhere saved first; its row is equivalent
+            videoAnalysisCache.invalidate(videoId);
+            logger.info("Analysis for video {} was already saved", videoId);
+        }
+
+        return analysis;
+    }
+
+    /**
+     * Analyze already-fetched metadata with Gemini without saving, for callers that write in batches
+     */
+    public VideoAnalysisResult analyzeMetadata(YouTubeMetadata metadata) throws IOException {
+        return analyzeWithGemini(metadata);
+    }
+
+    /**
+     * Save many analyses in one transaction, skipping videos that already have one
+     * @return number of analyses saved
+     */
+    @Transactional
+    public int saveAnalyses(List<VideoAnalysisResult> analyses) {
+        Set<String> existing = videoAnalysisRepository.findByVideoIdIn(
+                        analyses.stream().map(VideoAnalysisResult::videoId).toList()).stream()
+                .map(VideoAnalysis::getVideoId)
+                .collect(Collectors.toSet());
+        List<VideoAnalysis> entities = analyses.stream()
+                .filter(analysis -> !existing.contains(analysis.videoId()))
+                .map(analysis -> toEntity(analysis, analysis.youtubeUrl()))
+                .toList();
+        videoAnalysisRepository.saveAll(entities);
+        analyses.stream()
+                .filter(analysis -> !existing.contains(analysis.videoId()))
+                .forEach(videoAnalysisCache::put);
+        logger.info("Saved {} video analyses ({} already existed)", entities.size(), analyses.size() - entities.size());
+        return entities.size();
+    }
+
+    private VideoAnalysis toEntity(VideoAnalysisResult analysis, String youtubeUrl) {
+        VideoAnalysis entity = new VideoAnalysis(analysis.videoId(), youtubeUrl);
+        entity.setTitle(analysis.title());
+        entity.setDescription(analysis.description());
+        entity.setDurationSeconds(analysis.durationSeconds());
         entity.setCategories(analysis.categories());
         entity.setTopics(analysis.topics());
         entity.setSentiment(analysis.sentiment());
         entity.setAdBreakSuggestions(serializeAdBreakSuggestions(analysis.adBreakSuggestions()));
+        return entity;
+    }
 
-        videoAnalysisRepository.save(entity);
-
-        logger.info("Saved analysis for video: {}", videoId);
+    private void releaseClaim(String videoId) {
+        try {
+            videoAnalysisClaimRepository.release(videoId, instanceId);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to release analysis claim on video {}: {}", videoId, e.getMessage());
+        }
+    }
 
-        return analysis;
+    private static VideoAnalysisResult await(CompletableFuture<VideoAnalysisResult> analysis) throws IOException {
+        try {
+            return analysis.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for in-flight analysis");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Analysis failed: " + e.getCause().getMessage(), e.getCause());
+        }
     }
 
     /**
-     * Get cached analysis if available
+     * Get cached analysis if available, from memory or else the database
      */
     public Optional<VideoAnalysisResult> getCachedAnalysis(String videoId) {
-        return videoAnalysisRepository.findByVideoId(videoId)
-                .map(this::convertToDto);
+        return videoAnalysisCache.get(videoId, id -> videoAnalysisRepository.findByVideoId(id)
+                .map(this::convertToDto));
+    }
+
+    /**
+     * Hit and eviction counts of the in-memory analysis cache
+     */
+    public VideoAnalysisCache.Stats getCacheStats() {
+        return videoAnalysisCache.stats();
     }
 
     /**
@@ -200,24 +297,13 @@ public class YouTubeAnalysisService {
                 metadata.durationSeconds()
         );
 
-        try (VertexAI vertexAI = new VertexAI(projectId, location)) {
-            GenerationConfig generationConfig = GenerationConfig.newBuilder()
-                    .setResponseMimeType("application/json")
-                    .setResponseSchema(buildVideoAnalysisSchema())
-                    .build();
-
-            GenerativeModel model = new GenerativeModel.Builder()
-                    .setModelName(geminiModel)
-                    .setVertexAi(vertexAI)
-                    .setGenerationConfig(generationConfig)
-                    .build();
-
+        try {
             Content content = Content.newBuilder()
                     .setRole("user")
                     .addParts(Part.newBuilder().setText(prompt).build())
                     .build();
 
-            GenerateContentResponse response = model.generateContent(content);
+            GenerateContentResponse response = vertexAiClientPool.generate(videoAnalysisModel, content);
             String responseText = ResponseHandler.getText(response);
 
             return parseGeminiResponse(metadata, responseText);
@@ -0,0 +1,281 @@
+package com.richwavelet.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richwavelet.backend.dto.YouTubeMetadata;
+import jakarta.annotation.PreDestroy;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * YouTube Data API video metadata client that batches lookups: ids requested within a short window
+ * are fetched together, up to the API's 50 ids per call, and each caller gets its own video back.
+ * Results are cached per id; once stale they are refetched, keeping the cached copy when the
+ * video's ETag is unchanged.
+ */
+@Component
+public class YouTubeMetadataClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(YouTubeMetadataClient.class);
+    private static final int MAX_IDS_PER_REQUEST = 50;
+    private static final Pattern DURATION_PATTERN = Pattern.compile("PT(?:(\\d+)H)?(?:(\\d+)M)?(?:(\\d+)S)?");
+    private static final HttpUrl VIDEOS_URL = HttpUrl.get("https://www.googleapis.com/youtube/v3/videos");
+
+    @Value("${youtube.api.key:}")
+    private String youtubeApiKey;
+
+    @Value("${youtube.metadata.batch-window-millis:5}")
+    private long batchWindowMillis = 5;
+
+    @Value("${youtube.metadata.cache-ttl-seconds:3600}")
+    private long cacheTtlSeconds = 3600;
+
+    @Value("${youtube.metadata.cache-size:10000}")
+    private int cacheSize = 10000;
+
+    record Cached(YouTubeMetadata metadata, String etag, long fetchedAtMillis) {}
+
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(15, TimeUnit.SECONDS)
+            .callTimeout(30, TimeUnit.SECONDS)
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Cached> cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > cacheSize;
+        }
+    });
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("youtube-metadata-batch").factory());
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Ids waiting for the next batch, each with the future its callers wait on
+    private Map<String, CompletableFuture<YouTubeMetadata>> pending = new LinkedHashMap<>();
+
+    /**
+     * Metadata of one video, fetched in a batch with any other ids requested meanwhile
+     */
+    public YouTubeMetadata fetch(String videoId) throws IOException {
+        return await(videoId, request(videoId));
+    }
+
+    /**
+     * Metadata of many videos, fetched in as few calls as possible
+     * @return metadata keyed by video id; ids YouTube does not know are absent
+     */
+    public Map<String, YouTubeMetadata> fetchAll(Collection<String> videoIds) throws IOException {
+        Map<String, CompletableFuture<YouTubeMetadata>> futures = new LinkedHashMap<>();
+        for (String videoId : new LinkedHashSet<>(videoIds)) {
+            futures.put(videoId, request(videoId));
+        }
+        Map<String, YouTubeMetadata> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<YouTubeMetadata>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), await(entry.getKey(), entry.getValue()));
+            } catch (VideoNotFoundException e) {
+                logger.info("Skipping unknown video {}", entry.getKey());
+            }
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        requests.shutdownNow();
+    }
+
+    /**
+     * Thrown when YouTube returns no item for a requested id
+     */
+    static class VideoNotFoundException extends IOException {
+        VideoNotFoundException(String videoId) {
+            super("Video not found: " + videoId);
+        }
+    }
+
+    private CompletableFuture<YouTubeMetadata> request(String videoId) {
+        Cached cached = cache.get(videoId);
+        if (cached != null && isFresh(cached)) {
+            return CompletableFuture.completedFuture(cached.metadata());
+        }
+
+        Map<String, CompletableFuture<YouTubeMetadata>> full = null;
+        CompletableFuture<YouTubeMetadata> future;
+        synchronized (this) {
+            future = pending.get(videoId);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(videoId, future);
+                if (pending.size() == 1) {
+                    timer.schedule(this::flush, batchWindowMillis, TimeUnit.MILLISECONDS);
+                }
+                if (pending.size() >= MAX_IDS_PER_REQUEST) {
+                    full = takePending();
+                }
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    /**
+     * Send whatever is pending when the batch window closes
+     */
+    private void flush() {
+        Map<String, CompletableFuture<YouTubeMetadata>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private Map<String, CompletableFuture<YouTubeMetadata>> takePending() {
+        Map<String, CompletableFuture<YouTubeMetadata>> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void dispatch(Map<String, CompletableFuture<YouTubeMetadata>> batch) {
+        requests.submit(() -> {
+            try {
+                Map<String, Cached> fetched = fetchBatch(List.copyOf(batch.keySet()));
+                batch.forEach((videoId, future) -> {
+                    Cached result = fetched.get(videoId);
+                    if (result != null) {
+                        future.complete(result.metadata());
+                    } else {
+                        future.completeExceptionally(new VideoNotFoundException(videoId));
+                    }
+                });
+            } catch (Exception e) {
+                batch.values().forEach(future -> future.completeExceptionally(e));
+            }
+        });
+    }
+
+    /**
+     * One videos.list call for up to 50 ids
+     */
+    Map<String, Cached> fetchBatch(List<String> videoIds) throws IOException {
+        logger.info("Fetching YouTube metadata for {} videos", videoIds.size());
+        HttpUrl url = VIDEOS_URL.newBuilder()
+                .addQueryParameter("id", String.join(",", videoIds))
+                .addQueryParameter("part", "snippet,contentDetails")
+                .addQueryParameter("maxResults", String.valueOf(MAX_IDS_PER_REQUEST))
+                .addQueryParameter("key", youtubeApiKey)
+                .build();
+
+        JsonNode root;
+        try (Response response = httpClient.newCall(new Request.Builder().url(url).get().build()).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("YouTube metadata request failed: " + response.code() + " " + response.message());
+            }
+            root = objectMapper.readTree(body.byteStream());
+        }
+        return store(root);
+    }
+
+    /**
+     * Cache the items of a videos.list response, keeping the cached copy of any video whose ETag is unchanged
+     */
+    Map<String, Cached> store(JsonNode root) {
+        long now = System.currentTimeMillis();
+        Map<String, Cached> fetched = new HashMap<>();
+        for (JsonNode item : root.path("items")) {
+            String videoId = item.path("id").asText();
+            String etag = item.path("etag").asText(null);
+            Cached previous = cache.get(videoId);
+            YouTubeMetadata metadata = previous != null && etag != null && etag.equals(previous.etag())
+                    ? previous.metadata()
+                    : parseItem(item);
+            Cached entry = new Cached(metadata, etag, now);
+            cache.put(videoId, entry);
+            fetched.put(videoId, entry);
+        }
+        return fetched;
+    }
+
+    static YouTubeMetadata parseItem(JsonNode item) {
+        JsonNode snippet = item.path("snippet");
+        JsonNode contentDetails = item.path("contentDetails");
+
+        List<String> tags = new ArrayList<>();
+        snippet.path("tags").forEach(tag -> tags.add(tag.asText()));
+
+        return new YouTubeMetadata(
+                item.path("id").asText(),
+                snippet.path("title").asText(),
+                snippet.path("description").asText(),
+                parseDuration(contentDetails.path("duration").asText()),
+                snippet.path("categoryId").asText(),
+                tags.toArray(new String[0]));
+    }
+
+    /**
+     * Parse ISO 8601 duration string (e.g., PT1M30S -> 90 seconds)
+     */
+    static int parseDuration(String duration) {
+        Matcher matcher = DURATION_PATTERN.matcher(duration);
+        if (!matcher.matches()) {
+            return 0;
+        }
+
+        int hours = matcher.group(1) != null ? Integer.parseInt(matcher.group(1)) : 0;
+        int minutes = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+        int seconds = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    private boolean isFresh(Cached cached) {
+        return System.currentTimeMillis() - cached.fetchedAtMillis() < TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+    }
+
+    private static YouTubeMetadata await(String videoId, CompletableFuture<YouTubeMetadata> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching metadata for " + videoId);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to fetch YouTube metadata: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.richwavelet.backend.worker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the steps of one worker job as a dependency graph: each node starts on the executor as soon
+ * as all of its dependencies have finished, so independent steps overlap. A failed node fails every
+ * node that depends on it right away, without waiting for their other dependencies. Start, finish and
+ * duration of each node are recorded.
+ */
+class JobGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobGraph.class);
+
+    /**
+     * Work done by a node. Results of dependencies are read with {@link Node#result()}.
+     */
+    @FunctionalInterface
+    interface Task<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Handle to a node's eventual result
+     */
+    record Node<T>(String name, CompletableFuture<T> future) {
+
+        /**
+         * Result of a finished node; only call this from a task that depends on it
+         */
+        T result() {
+            return future.join();
+        }
+    }
+
+    /**
+     * When a node ran, relative to the start of the graph
+     */
+    record NodeTiming(String name, Duration start, Duration finish, boolean succeeded) {
+
+        Duration duration() {
+            return finish.minus(start);
+        }
+    }
+
+    private final String jobId;
+    private final ExecutorService executor;
+    private final long createdNanos = System.nanoTime();
+    private final List<Node<?>> nodes = new ArrayList<>();
+    private final List<NodeTiming> timings = Collections.synchronizedList(new ArrayList<>());
+    // Completes exceptionally with the first failure of any node
+    private final CompletableFuture<Void> failure = new CompletableFuture<>();
+
+    JobGraph(String jobId, ExecutorService executor) {
+        this.jobId = jobId;
+        this.executor = executor;
+    }
+
+    /**
+     * Add a node that runs once every dependency has completed successfully, and fails as soon as any of them fails
+     */
+    <T> Node<T> add(String name, Task<T> task, Node<?>... dependencies) {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencyFutures[i] = dependencies[i].future();
+            dependencyFutures[i].whenComplete((result, error) -> {
+                if (error != null) {
+                    ready.completeExceptionally(error);
+                }
+            });
+        }
+        CompletableFuture.allOf(dependencyFutures).thenRun(() -> ready.complete(null));
+
+        CompletableFuture<T> future = ready.thenApplyAsync(ignored -> runTimed(name, task), executor);
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                failure.completeExceptionally(error);
+            }
+        });
+        Node<T> node = new Node<>(name, future);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Add a node with no work of its own that completes when all the given nodes have, yielding their results in order
+     */
+    <T> Node<List<T>> join(String name, List<Node<T>> members) {
+        return add(name, () -> members.stream().map(Node::result).toList(), members.toArray(Node<?>[]::new));
+    }
+
+    /**
+     * Wait for a node and rethrow its failure as the original exception. Returns early with the first
+     * failure of any node in the graph, so the caller can stop the remaining steps.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T await(Node<T> node) throws IOException, InterruptedException {
+        try {
+            return (T) CompletableFuture.anyOf(node.future(), failure).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Recorded timings, in start order
+     */
+    List<NodeTiming> timings() {
+        synchronized (timings) {
+            return timings.stream().sorted(Comparator.comparing(NodeTiming::start)).toList();
+        }
+    }
+
+    /**
+     * Log when each node ran, one line for the whole job
+     */
+    void logTimings() {
+        logger.info("Job {} steps: {}", jobId, timings().stream()
+                .map(t -> t.name() + " " + t.start().toMillis() + "-" + t.finish().toMillis() + "ms ("
+                        + t.duration().toMillis() + "ms" + (t.succeeded() ? "" : ", failed") + ")")
+                .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Cancel nodes that have not started yet
+     */
+    void cancel() {
+        for (Node<?> node : nodes) {
+            node.future().cancel(true);
+        }
+    }
+
+    private <T> T runTimed(String name, Task<T> task) {
+        Duration start = elapsed();
+        boolean succeeded = false;
+        try {
+            T result = task.run();
+            succeeded = true;
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            timings.add(new NodeTiming(name, start, elapsed(), succeeded));
+        }
+    }
+
+    private Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - createdNanos);
+    }
+}
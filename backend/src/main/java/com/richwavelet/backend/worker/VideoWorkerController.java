@@ -4,6 +4,7 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
+import com.google.cloud.vertexai.api.Part;
 import com.richwavelet.backend.dto.AdInsertionPoint;
 import com.richwavelet.backend.dto.GeminiAnalysisResult;
 import com.richwavelet.backend.dto.WorkerPayload;
@@ -24,6 +25,10 @@ import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,6 +36,8 @@ import java.util.stream.Collectors;
 public class VideoWorkerController {
 
     private static final Logger logger = LoggerFactory.getLogger(VideoWorkerController.class);
+    private static final String SINGLE_PASS_MODE = "single-pass";
+    private static final long STEP_SHUTDOWN_SECONDS = 30;
 
     @Value("${gcp.worker-base-url}")
     private String workerBaseUrl;
@@ -38,6 +45,12 @@ public class VideoWorkerController {
     @Value("${gcp.service-account}")
     private String serviceAccount;
 
+    @Value("${video.render.mode:single-pass}")
+    private String renderMode;
+
+    @Value("${video.download.parallelism:4}")
+    private int downloadParallelism;
+
     private final VideoUploadRepository videoUploadRepository;
     private final AdUploadRepository adUploadRepository;
     private final ProcessedVideoRepository processedVideoRepository;
@@ -45,6 +58,9 @@ public class VideoWorkerController {
     private final GeminiService geminiService;
     private final VideoProcessingService videoProcessingService;
     private final ProcessingStatusService statusService;
+    private final AdCreativeCache adCreativeCache;
+    private final AdRenditionService adRenditionService;
+    private final MediaProbeService mediaProbeService;
 
     public VideoWorkerController(
             VideoUploadRepository videoUploadRepository,
@@ -53,7 +69,10 @@ public class VideoWorkerController {
             StorageService storageService,
             GeminiService geminiService,
             VideoProcessingService videoProcessingService,
-            ProcessingStatusService statusService) {
+            ProcessingStatusService statusService,
+            AdCreativeCache adCreativeCache,
+            AdRenditionService adRenditionService,
+            MediaProbeService mediaProbeService) {
         this.videoUploadRepository = videoUploadRepository;
         this.adUploadRepository = adUploadRepository;
         this.processedVideoRepository = processedVideoRepository;
@@ -61,6 +80,9 @@ public class VideoWorkerController {
         this.geminiService = geminiService;
         this.videoProcessingService = videoProcessingService;
         this.statusService = statusService;
+        this.adCreativeCache = adCreativeCache;
+        this.adRenditionService = adRenditionService;
+        this.mediaProbeService = mediaProbeService;
     }
 
     @PostMapping("/process-video-worker")
@@ -81,13 +103,14 @@ public class VideoWorkerController {
         }
 
         Path workDir = null;
+        ProcessingStatusService.JobProgress progress = statusService.jobProgress(jobId, userId);
 
         try {
             // Parse shader style
             ShaderStyle style = ShaderStyle.valueOf(payload.shaderStyle());
 
             // Update status: DOWNLOADING
-            statusService.updateStatus(jobId, userId, ProcessingStage.DOWNLOADING,
+            progress.update(ProcessingStage.DOWNLOADING,
                     "Downloading video files from storage...", 5);
 
             // Create work directory
@@ -102,76 +125,70 @@ public class VideoWorkerController {
                 ads = adUploadRepository.findAllById(payload.adIds());
             }
 
-            // Download main video
-            Path mainVideoPath = workDir.resolve("main-" + UUID.randomUUID() + ".mp4");
-            storageService.downloadFile(mainVideo.getFileUrl(), mainVideoPath);
-            logger.info("Downloaded main video to: {}", mainVideoPath);
-
-            // Download ads
-            List<Path> adPaths = new ArrayList<>();
-            for (AdUpload ad : ads) {
-                Path adPath = workDir.resolve("ad-" + ad.getId() + "-" + UUID.randomUUID() + ".mp4");
-                storageService.downloadFile(ad.getFileUrl(), adPath);
-                adPaths.add(adPath);
-                logger.info("Downloaded ad {} to: {}", ad.getId(), adPath);
-            }
-
-            // Update status: ANALYZING
-            statusService.updateStatus(jobId, userId, ProcessingStage.ANALYZING,
-                    "Uploading video to Gemini for analysis...", 15);
-
-            // Upload to Gemini and analyze
-            String geminiFileUri = geminiService.uploadVideo(mainVideoPath, mainVideo.getFileName());
-
-            statusService.updateStatus(jobId, userId, ProcessingStage.ANALYZING,
-                    "Analyzing video for scene breaks and ad insertion points...", 25);
-
-            GeminiAnalysisResult analysis = geminiService.analyzeVideo(geminiFileUri, style);
-            logger.info("Gemini analysis complete: {} scene breaks, {} ad insertion points",
-                    analysis.sceneBreaks().size(), analysis.adInsertionPoints().size());
-
-            // Update status: APPLYING_EFFECTS
-            statusService.updateStatus(jobId, userId, ProcessingStage.APPLYING_EFFECTS,
-                    "Applying " + style.name() + " shader effects...", 40);
-
-            // Apply shader effects
-            Path shadedVideo = videoProcessingService.applyShaderEffects(mainVideoPath, style, workDir);
-            logger.info("Applied shader effects, output: {}", shadedVideo);
-
-            // Update status: INSERTING_ADS
-            Path videoWithAds = shadedVideo;
-            if (!adPaths.isEmpty() && !analysis.adInsertionPoints().isEmpty()) {
-                statusService.updateStatus(jobId, userId, ProcessingStage.INSERTING_ADS,
-                        "Inserting ads at optimal points...", 55);
-
-                // Get top insertion points (limit to number of ads available)
-                List<String> insertionTimestamps = analysis.adInsertionPoints().stream()
-                        .limit(adPaths.size())
-                        .map(AdInsertionPoint::timestamp)
-                        .collect(Collectors.toList());
-
-                videoWithAds = videoProcessingService.insertAds(shadedVideo, adPaths, insertionTimestamps, workDir);
-                logger.info("Inserted {} ads, output: {}", insertionTimestamps.size(), videoWithAds);
-            } else {
-                logger.info("No ads to insert, skipping ad insertion step");
+            // Steps run as a dependency graph, so the analysis overlaps whatever does not need it. In staged
+            // mode (download -> {analyze, shade} -> insert ads -> audio -> upload) the shader pass runs alongside
+            // Gemini; the single pass needs the insertion points up front, so it waits for the analysis.
+            Path jobDir = workDir;
+            String outputFileName = "retro-" + style.name().toLowerCase() + "-" + UUID.randomUUID() + ".mp4";
+            GeminiAnalysisResult analysis;
+            String storagePath;
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            JobGraph graph = new JobGraph(jobId, executor);
+            try {
+                // Fair, so the main video is first in line for a permit
+                Semaphore permits = new Semaphore(Math.max(1, downloadParallelism), true);
+
+                Path mainVideoPath = jobDir.resolve("main-" + UUID.randomUUID() + ".mp4");
+                JobGraph.Node<Path> mainDownload = graph.add("download-main", () -> {
+                    download(permits, mainVideo.getFileUrl(), mainVideoPath, "main video");
+                    // Probed once here; later steps read the cached result
+                    mediaProbeService.probeVideoUpload(mainVideo, mainVideoPath);
+                    return mainVideoPath;
+                });
+
+                // Ads are fetched alongside the main video. The staged pipeline can stream-copy an ad whose
+                // pre-normalized rendition matches the shaded video, which is only known once shading is
+                // done, so it fetches each ad's renditions with the original and picks one afterwards.
+                // The single pass re-encodes everything, so it only needs the originals.
+                boolean singlePass = SINGLE_PASS_MODE.equals(renderMode);
+                List<AdUpload> jobAds = ads;
+                JobGraph.Node<Map<String, List<AdRendition>>> adRenditions = singlePass || ads.isEmpty()
+                        ? graph.add("find-ad-renditions", () -> Map.<String, List<AdRendition>>of())
+                        : graph.add("find-ad-renditions", () -> adRenditionService.renditionsFor(jobAds));
+
+                List<JobGraph.Node<AdRenditionService.LocalAd>> adDownloadNodes = new ArrayList<>();
+                for (AdUpload ad : ads) {
+                    adDownloadNodes.add(graph.add("download-ad-" + ad.getId(), () -> downloadAd(permits, ad,
+                            adRenditions.result().getOrDefault(ad.getId(), List.of()), jobDir), adRenditions));
+                }
+                JobGraph.Node<List<AdRenditionService.LocalAd>> adDownloads = graph.join("download-ads", adDownloadNodes);
+
+                JobGraph.Node<GeminiAnalysisResult> analysisNode = graph.add("analyze",
+                        () -> analyze(progress, style, mainDownload.result(), mainVideo, jobDir),
+                        mainDownload);
+
+                JobGraph.Node<Path> finalVideo = singlePass
+                        ? renderSinglePass(graph, progress, style, mainDownload, adDownloads, analysisNode, jobDir)
+                        : renderStaged(graph, progress, style, mainDownload, adDownloads, analysisNode, jobDir);
+
+                JobGraph.Node<String> upload = graph.add("upload", () -> {
+                    // Update status: UPLOADING
+                    progress.update(ProcessingStage.UPLOADING,
+                            "Uploading processed video to storage...", 85);
+
+                    // Upload final video to Supabase
+                    return storageService.uploadProcessedVideo(userId, finalVideo.result(), outputFileName);
+                }, finalVideo);
+
+                // Throws on the first failed step, so the steps still running are stopped right away
+                storagePath = graph.await(upload);
+                analysis = graph.await(analysisNode);
+            } finally {
+                stopSteps(jobId, graph, executor);
+                graph.logTimings();
             }
 
-            // Update status: ADDING_AUDIO_EFFECTS
-            statusService.updateStatus(jobId, userId, ProcessingStage.ADDING_AUDIO_EFFECTS,
-                    "Adding vintage crackly audio effects...", 70);
-
-            Path finalVideo = videoProcessingService.addAudioEffects(videoWithAds, workDir);
-            logger.info("Added audio effects, final output: {}", finalVideo);
-
-            // Update status: UPLOADING
-            statusService.updateStatus(jobId, userId, ProcessingStage.UPLOADING,
-                    "Uploading processed video to storage...", 85);
-
-            // Upload final video to Supabase
-            String outputFileName = "retro-" + style.name().toLowerCase() + "-" + UUID.randomUUID() + ".mp4";
-            String storagePath = storageService.uploadProcessedVideo(userId, finalVideo, outputFileName);
             String publicUrl = storageService.getPublicUrl("processed-videos", storagePath);
-
             logger.info("Uploaded processed video to: {}", publicUrl);
 
             // Save to database
@@ -216,6 +233,193 @@ public class VideoWorkerController {
         }
     }
 
+    /**
+     * Cancel steps that have not started and interrupt running ones, which stops their FFmpeg
+     * processes, then wait for them so nothing is still writing when the work directory is deleted
+     */
+    private void stopSteps(String jobId, JobGraph graph, ExecutorService executor) {
+        graph.cancel();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STEP_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Steps of job {} still running {}s after cancellation", jobId, STEP_SHUTDOWN_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Send a low-bitrate proxy of the main video to Gemini and analyze it for ad insertion points,
+     * unless the same content was already analyzed in this style
+     */
+    private GeminiAnalysisResult analyze(ProcessingStatusService.JobProgress progress, ShaderStyle style,
+                                         Path mainVideoPath, VideoUpload mainVideo, Path jobDir) throws IOException, InterruptedException {
+        String contentSha256 = mainVideo.getContentSha256();
+        if (contentSha256 == null && geminiService.isAnalysisCacheEnabled()) {
+            // Uploads from before hashing at ingest; reading the whole file is only worth it for the cache
+            contentSha256 = GeminiAnalysisCache.sha256(mainVideoPath);
+        }
+        Optional<GeminiAnalysisResult> cached = geminiService.findCachedAnalysis(contentSha256, style);
+        if (cached.isPresent()) {
+            logger.info("Reusing cached Gemini analysis of {}", mainVideo.getFileName());
+            return cached.get();
+        }
+
+        // Update status: ANALYZING
+        progress.update(ProcessingStage.ANALYZING,
+                "Uploading video to Gemini for analysis...", 15);
+
+        // Upload to Gemini and analyze
+        Path proxy = videoProcessingService.createAnalysisProxy(mainVideoPath, jobDir);
+        Part video = geminiService.uploadVideo(proxy, mainVideo.getFileName());
+
+        GeminiAnalysisResult analysis;
+        try {
+            progress.update(ProcessingStage.ANALYZING,
+                    "Analyzing video for scene breaks and ad insertion points...", 25);
+
+            analysis = geminiService.analyzeVideo(video, contentSha256, style);
+        } finally {
+            geminiService.releaseVideo(video);
+        }
+        logger.info("Gemini analysis complete: {} scene breaks, {} ad insertion points",
+                analysis.sceneBreaks().size(), analysis.adInsertionPoints().size());
+        return analysis;
+    }
+
+    /**
+     * Download a file while holding one of the job's download permits
+     */
+    private Path download(Semaphore permits, String fileUrl, Path destination, String description)
+            throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            storageService.downloadFile(fileUrl, destination);
+        } finally {
+            permits.release();
+        }
+        logger.info("Downloaded {} to: {}", description, destination);
+        return destination;
+    }
+
+    /**
+     * Place an ad's original upload and renditions in the work directory from the local ad cache,
+     * downloading them on a miss
+     */
+    private AdRenditionService.LocalAd downloadAd(Semaphore permits, AdUpload ad, List<AdRendition> renditions,
+                                                  Path jobDir) throws IOException, InterruptedException {
+        Path original = placeAd(permits, new AdRenditionService.AdSource(ad.getId(), ad.getFileUrl()), jobDir);
+        mediaProbeService.probeAdUpload(ad, original);
+
+        List<AdRenditionService.RenditionFile> files = new ArrayList<>();
+        for (AdRendition rendition : renditions) {
+            Path path = placeAd(permits, AdRenditionService.sourceOf(rendition), jobDir);
+            files.add(new AdRenditionService.RenditionFile(rendition, path));
+        }
+        return new AdRenditionService.LocalAd(original, files);
+    }
+
+    private Path placeAd(Semaphore permits, AdRenditionService.AdSource source, Path jobDir)
+            throws IOException, InterruptedException {
+        Path destination = jobDir.resolve("ad-" + source.cacheId() + "-" + UUID.randomUUID() + ".mp4");
+        permits.acquire();
+        try {
+            adCreativeCache.materialize(source.cacheId(), source.fileUrl(), destination);
+        } finally {
+            permits.release();
+        }
+        logger.info("Placed ad {} at: {}", source.cacheId(), destination);
+        return destination;
+    }
+
+    /**
+     * Top insertion points from the analysis, limited to the number of ads available
+     */
+    private List<String> insertionTimestamps(GeminiAnalysisResult analysis, int adCount) {
+        return analysis.adInsertionPoints().stream()
+                .limit(adCount)
+                .map(AdInsertionPoint::timestamp)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Render shader effects, ads and audio in one FFmpeg pass. The pass needs the insertion
+     * points up front, so it starts only once the analysis has finished.
+     */
+    private JobGraph.Node<Path> renderSinglePass(JobGraph graph, ProcessingStatusService.JobProgress progress,
+                                                 ShaderStyle style,
+                                                 JobGraph.Node<Path> mainDownload,
+                                                 JobGraph.Node<List<AdRenditionService.LocalAd>> adDownloads,
+                                                 JobGraph.Node<GeminiAnalysisResult> analysis, Path workDir) {
+        return graph.add("render", () -> {
+            List<Path> adPaths = adDownloads.result().stream().map(AdRenditionService.LocalAd::original).toList();
+            List<String> insertionTimestamps = insertionTimestamps(analysis.result(), adPaths.size());
+
+            // Update status: ENCODING
+            String info = "Rendering " + style.name() + " effects, ads and audio in a single pass...";
+            progress.update(ProcessingStage.ENCODING, info, 40);
+
+            Path finalVideo = videoProcessingService.renderPipeline(
+                    mainDownload.result(), style, adPaths, insertionTimestamps, workDir,
+                    progress.listener(ProcessingStage.ENCODING, info, 40, 85));
+            logger.info("Rendered video in a single pass, final output: {}", finalVideo);
+            return finalVideo;
+        }, mainDownload, adDownloads, analysis);
+    }
+
+    /**
+     * Render the video one step at a time: the shader pass runs alongside the analysis,
+     * then ad insertion and audio effects run on its output
+     */
+    private JobGraph.Node<Path> renderStaged(JobGraph graph, ProcessingStatusService.JobProgress progress,
+                                             ShaderStyle style,
+                                             JobGraph.Node<Path> mainDownload,
+                                             JobGraph.Node<List<AdRenditionService.LocalAd>> adDownloads,
+                                             JobGraph.Node<GeminiAnalysisResult> analysis, Path workDir) {
+        JobGraph.Node<Path> shaded = graph.add("shade", () -> {
+            // Update status: APPLYING_EFFECTS
+            String shaderInfo = "Applying " + style.name() + " shader effects...";
+            progress.update(ProcessingStage.APPLYING_EFFECTS, shaderInfo, 40);
+
+            // Apply shader effects
+            Path shadedVideo = videoProcessingService.applyShaderEffects(mainDownload.result(), style, workDir,
+                    progress.listener(ProcessingStage.APPLYING_EFFECTS, shaderInfo, 40, 55));
+            logger.info("Applied shader effects, output: {}", shadedVideo);
+            return shadedVideo;
+        }, mainDownload);
+
+        JobGraph.Node<Path> withAds = graph.add("insert-ads", () -> {
+            List<AdRenditionService.LocalAd> localAds = adDownloads.result();
+            List<String> insertionTimestamps = insertionTimestamps(analysis.result(), localAds.size());
+            if (localAds.isEmpty() || insertionTimestamps.isEmpty()) {
+                logger.info("No ads to insert, skipping ad insertion step");
+                return shaded.result();
+            }
+            // Renditions are matched against the shaded video, which the ads are joined with
+            List<Path> adPaths = adRenditionService.choose(localAds, shaded.result());
+
+            // Update status: INSERTING_ADS
+            progress.update(ProcessingStage.INSERTING_ADS,
+                    "Inserting ads at optimal points...", 55);
+
+            Path videoWithAds = videoProcessingService.insertAds(shaded.result(), adPaths, insertionTimestamps, workDir);
+            logger.info("Inserted {} ads, output: {}", insertionTimestamps.size(), videoWithAds);
+            return videoWithAds;
+        }, shaded, adDownloads, analysis);
+
+        return graph.add("audio", () -> {
+            // Update status: ADDING_AUDIO_EFFECTS
+            String audioInfo = "Adding vintage crackly audio effects...";
+            progress.update(ProcessingStage.ADDING_AUDIO_EFFECTS, audioInfo, 70);
+
+            Path finalVideo = videoProcessingService.addAudioEffects(withAds.result(), workDir,
+                    progress.listener(ProcessingStage.ADDING_AUDIO_EFFECTS, audioInfo, 70, 85));
+            logger.info("Added audio effects, final output: {}", finalVideo);
+            return finalVideo;
+        }, withAds);
+    }
+
     /**
      * Verify the OIDC token from Cloud Tasks
      */
@@ -0,0 +1,13 @@
+-- Per-video progress of bulk YouTube pre-analysis jobs
+CREATE TABLE IF NOT EXISTS video_preanalysis_items (
+    id BIGSERIAL PRIMARY KEY,
+    job_id VARCHAR(36) NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    video_id VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    error_message TEXT,
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    UNIQUE (job_id, video_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_video_preanalysis_items_job_id ON video_preanalysis_items(job_id);
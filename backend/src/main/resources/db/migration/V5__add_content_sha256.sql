@@ -0,0 +1,6 @@
+-- SHA-256 of uploaded files, computed while they are streamed to storage
+ALTER TABLE video_uploads
+ADD COLUMN IF NOT EXISTS content_sha256 VARCHAR(64);
+
+ALTER TABLE ads
+ADD COLUMN IF NOT EXISTS content_sha256 VARCHAR(64);
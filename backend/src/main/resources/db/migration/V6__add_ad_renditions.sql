@@ -0,0 +1,23 @@
+-- Canonical re-encodes of each ad, generated once after upload so workers can stream-copy them
+CREATE TABLE IF NOT EXISTS ad_renditions (
+    id VARCHAR(36) PRIMARY KEY,
+    ad_id VARCHAR(36) NOT NULL,
+    label VARCHAR(20) NOT NULL,
+    storage_path VARCHAR(500) NOT NULL,
+    file_url VARCHAR(1000) NOT NULL,
+    file_size BIGINT,
+    video_codec VARCHAR(20),
+    video_profile VARCHAR(50),
+    width INT,
+    height INT,
+    pixel_format VARCHAR(20),
+    frame_rate VARCHAR(20),
+    gop_frames INT,
+    audio_codec VARCHAR(20),
+    sample_rate INT,
+    channels INT,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    UNIQUE(ad_id, label)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ad_renditions_ad_id ON ad_renditions(ad_id);
@@ -0,0 +1,6 @@
+-- ffprobe results of uploaded files: container, codecs, resolution, frame rate
+ALTER TABLE video_uploads
+ADD COLUMN IF NOT EXISTS media_info JSONB;
+
+ALTER TABLE ads
+ADD COLUMN IF NOT EXISTS media_info JSONB;
@@ -0,0 +1,15 @@
+-- Gemini responses keyed by media content hash, use case, prompt version, model and style,
+-- so identical analyses are served without calling Vertex AI again
+CREATE TABLE IF NOT EXISTS gemini_analysis_cache (
+    cache_key VARCHAR(64) PRIMARY KEY,
+    use_case VARCHAR(50) NOT NULL,
+    model VARCHAR(100) NOT NULL,
+    prompt_version VARCHAR(20) NOT NULL,
+    variant VARCHAR(50),
+    content_sha256 VARCHAR(64) NOT NULL,
+    response JSONB NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_gemini_analysis_cache_expires_at ON gemini_analysis_cache(expires_at);
@@ -0,0 +1,7 @@
+-- Short leases on YouTube videos being analyzed, so concurrent requests across instances wait for
+-- one analysis instead of each calling Gemini
+CREATE TABLE IF NOT EXISTS video_analysis_claims (
+    video_id VARCHAR(20) PRIMARY KEY,
+    claimed_by VARCHAR(36) NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
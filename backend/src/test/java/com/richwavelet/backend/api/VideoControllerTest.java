@@ -81,7 +81,8 @@ class VideoControllerTest {
         savedVideo.setFileSize(1000L);
         savedVideo.setStatus(UploadStatus.READY);
 
-        when(storageService.uploadVideo(anyString(), any(), anyString())).thenReturn("user123/video.mp4");
+        when(storageService.ingestVideo(anyString(), any(), anyString()))
+                .thenReturn(new StorageService.StoredUpload("user123/video.mp4", 18L, "abc123"));
         when(storageService.getPublicUrl(anyString(), anyString())).thenReturn("http://example.com/video.mp4");
         when(storageService.sanitizeFileName(anyString())).thenReturn("test-video.mp4");
         when(videoUploadRepository.save(any(VideoUpload.class))).thenReturn(savedVideo);
@@ -93,7 +94,7 @@ class VideoControllerTest {
                 .andExpect(jsonPath("$.userId").value(userId));
 
         verify(storageService).ensureUserFolderExists(userId, "videos");
-        verify(storageService).uploadVideo(userId, file, "videos");
+        verify(storageService).ingestVideo(userId, file, "videos");
         verify(videoUploadRepository).save(any(VideoUpload.class));
     }
 
@@ -0,0 +1,81 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.AdAnalysisResult;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdBatchAnalysisServiceTest {
+
+    @Mock
+    private AdAnalysisService adAnalysisService;
+
+    @Mock
+    private AdUploadRepository adUploadRepository;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private VideoProcessingService videoProcessingService;
+
+    @Mock
+    private AnalysisScheduler analysisScheduler;
+
+    @InjectMocks
+    private AdBatchAnalysisService adBatchAnalysisService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAnalyzeBatch_CachedAdsSkipDownloadAndFailuresDoNotStopTheBatch() throws Exception {
+        AdUpload cached = ad("ad-1", "sha-1");
+        AdUpload fresh = ad("ad-2", "sha-2");
+        AdUpload broken = ad("ad-3", "sha-3");
+        AdAnalysisResult cachedResult = result("Cached");
+        AdAnalysisResult freshResult = result("Fresh");
+        when(adAnalysisService.cachedAnalysis("sha-1")).thenReturn(cachedResult);
+        when(videoProcessingService.createAnalysisProxy(any(), any())).thenAnswer(inv -> inv.getArgument(0));
+        when(adAnalysisService.analyzePrepared(any(), eq("ad-2.mp4"), eq("sha-2"))).thenReturn(freshResult);
+        lenient().doThrow(new IOException("download failed"))
+                .when(storageService).downloadFromStorage(eq("ads"), eq("user123/ad-3.mp4"), any(Path.class));
+
+        Map<String, AdAnalysisResult> results = adBatchAnalysisService.analyzeBatch(List.of(cached, fresh, broken));
+
+        assertEquals(Map.of("ad-1", cachedResult, "ad-2", freshResult), results);
+        verify(storageService, never()).downloadFromStorage(anyString(), eq("user123/ad-1.mp4"), any(Path.class));
+        ArgumentCaptor<Map<String, AdAnalysisResult>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(adAnalysisService).saveBatch(eq(List.of(cached, fresh, broken)), saved.capture());
+        assertEquals(results, saved.getValue());
+    }
+
+    private static AdUpload ad(String id, String sha256) {
+        AdUpload ad = new AdUpload("user123", id + ".mp4", "https://s/" + id + ".mp4", "user123/" + id + ".mp4");
+        ad.setId(id);
+        ad.setContentSha256(sha256);
+        return ad;
+    }
+
+    private static AdAnalysisResult result(String brand) {
+        return new AdAnalysisResult(List.of("tech"), "upbeat", "modern", List.of("gadget"), "", brand, 5);
+    }
+}
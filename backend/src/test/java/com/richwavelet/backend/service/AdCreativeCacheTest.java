@@ -0,0 +1,97 @@
+package com.richwavelet.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdCreativeCacheTest {
+
+    @Mock
+    private StorageService storageService;
+
+    @TempDir
+    Path tempDir;
+
+    private AdCreativeCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cache = new AdCreativeCache(storageService);
+        ReflectionTestUtils.setField(cache, "cacheDir", tempDir.resolve("cache").toString());
+        ReflectionTestUtils.setField(cache, "maxBytes", 250L);
+        doAnswer(invocation -> {
+            Path destination = invocation.getArgument(1);
+            Files.write(destination, new byte[100]);
+            return null;
+        }).when(storageService).downloadFile(any(String.class), any(Path.class), any());
+    }
+
+    @Test
+    void testMaterialize_SecondJobHitsCache() throws IOException {
+        when(storageService.describe("https://s/ad-1.mp4")).thenReturn(new StorageService.RemoteObject(100, true, "\"v1\""));
+
+        cache.materialize("ad-1", "https://s/ad-1.mp4", tempDir.resolve("job1-ad.mp4"));
+        cache.materialize("ad-1", "https://s/ad-1.mp4", tempDir.resolve("job2-ad.mp4"));
+
+        verify(storageService, times(1)).downloadFile(eq("https://s/ad-1.mp4"), any(Path.class), any());
+        assertEquals(100, Files.size(tempDir.resolve("job2-ad.mp4")));
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void testMaterialize_NewEtagIsDownloadedAgain() throws IOException {
+        when(storageService.describe("https://s/ad-1.mp4"))
+                .thenReturn(new StorageService.RemoteObject(100, true, "\"v1\""))
+                .thenReturn(new StorageService.RemoteObject(100, true, "\"v2\""));
+
+        cache.materialize("ad-1", "https://s/ad-1.mp4", tempDir.resolve("job1-ad.mp4"));
+        cache.materialize("ad-1", "https://s/ad-1.mp4", tempDir.resolve("job2-ad.mp4"));
+
+        verify(storageService, times(2)).downloadFile(eq("https://s/ad-1.mp4"), any(Path.class), any());
+        assertEquals(0, cache.stats().hits());
+    }
+
+    @Test
+    void testMaterialize_EvictsLeastRecentlyUsedOverBudget() throws IOException {
+        for (String id : new String[] {"a", "b", "c"}) {
+            when(storageService.describe("https://s/" + id)).thenReturn(new StorageService.RemoteObject(100, true, id));
+        }
+
+        cache.materialize("a", "https://s/a", tempDir.resolve("a1.mp4"));
+        cache.materialize("b", "https://s/b", tempDir.resolve("b1.mp4"));
+        cache.materialize("a", "https://s/a", tempDir.resolve("a2.mp4"));
+        cache.materialize("c", "https://s/c", tempDir.resolve("c1.mp4"));
+
+        // "b" was least recently used, so it made room for "c"
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(200, cache.stats().bytes());
+        assertFalse(Files.exists(tempDir.resolve("cache").resolve(AdCreativeCache.cacheKey("b", "b") + ".mp4")));
+        // A job's linked copy outlives eviction of the cache entry
+        assertEquals(100, Files.size(tempDir.resolve("b1.mp4")));
+    }
+
+    @Test
+    void testMaterialize_WithoutEtagBypassesCache() throws IOException {
+        when(storageService.describe("https://s/ad-1.mp4")).thenReturn(null);
+
+        cache.materialize("ad-1", "https://s/ad-1.mp4", tempDir.resolve("job1-ad.mp4"));
+
+        verify(storageService).downloadFile("https://s/ad-1.mp4", tempDir.resolve("job1-ad.mp4"), null);
+        assertEquals(0, cache.stats().entries());
+    }
+}
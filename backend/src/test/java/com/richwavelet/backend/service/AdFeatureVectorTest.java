@@ -0,0 +1,116 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.model.AdMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdFeatureVectorTest {
+
+    @Test
+    void testCategoryScore_MatchesSetJaccard() {
+        Random random = new Random(42);
+        List<String> pool = new ArrayList<>(AdFeatureVector.CATEGORIES);
+        pool.addAll(List.of("music", "news", "science"));
+
+        for (int run = 0; run < 1000; run++) {
+            List<String> adCategories = sample(random, pool);
+            List<String> videoCategories = sample(random, pool);
+
+            AdFeatureVector ad = AdFeatureVector.compile(metadata(adCategories, null, null, null));
+            AdFeatureVector.Video video = AdFeatureVector.Video.compile(video(videoCategories, null));
+
+            assertEquals(jaccard(adCategories, videoCategories), ad.categoryScore(video), 1e-12,
+                    adCategories + " vs " + videoCategories);
+        }
+    }
+
+    @Test
+    void testToneScore_UsesCompatibilityTable() {
+        AdFeatureVector.Video positive = AdFeatureVector.Video.compile(video(List.of(), "positive"));
+        AdFeatureVector.Video negative = AdFeatureVector.Video.compile(video(List.of(), "Negative"));
+        AdFeatureVector.Video unknown = AdFeatureVector.Video.compile(video(List.of(), null));
+
+        AdFeatureVector humorous = AdFeatureVector.compile(metadata(List.of(), "Humorous", null, null));
+        AdFeatureVector calm = AdFeatureVector.compile(metadata(List.of(), "calm", null, null));
+        AdFeatureVector odd = AdFeatureVector.compile(metadata(List.of(), "whimsical", null, null));
+
+        assertEquals(1.0, humorous.toneScore(positive));
+        assertEquals(0.3, humorous.toneScore(negative));
+        assertEquals(0.4, calm.toneScore(negative));
+        assertEquals(0.5, calm.toneScore(unknown));
+        assertEquals(0.5, odd.toneScore(positive));
+    }
+
+    @Test
+    void testEraAndEnergyScores() {
+        assertEquals(1.0, AdFeatureVector.compile(metadata(List.of(), null, "1980s", 7)).eraScore());
+        assertEquals(0.8, AdFeatureVector.compile(metadata(List.of(), null, "Modern-Retro", 7)).eraScore());
+        assertEquals(0.5, AdFeatureVector.compile(metadata(List.of(), null, "2020s", 7)).eraScore());
+        assertEquals(0.5, AdFeatureVector.compile(metadata(List.of(), null, null, 7)).eraScore());
+
+        assertEquals(0.7, AdFeatureVector.compile(metadata(List.of(), null, null, 7)).energyScore(), 1e-12);
+        assertEquals(1.0, AdFeatureVector.compile(metadata(List.of(), null, null, 14)).energyScore());
+        assertEquals(0.5, AdFeatureVector.compile(metadata(List.of(), null, null, null)).energyScore());
+    }
+
+    @Test
+    void testFeatureVectors_RecompileOnlyForNewAnalysis() {
+        AdFeatureVectors vectors = new AdFeatureVectors();
+        AdMetadata first = metadata(List.of("food"), "calm", "1990s", 5);
+        first.setId(1L);
+        vectors.put(first);
+
+        assertSame(vectors.get(first), vectors.get(first));
+
+        AdMetadata reanalyzed = metadata(List.of("sports"), "exciting", "modern", 9);
+        reanalyzed.setId(2L);
+        AdFeatureVector updated = vectors.get(reanalyzed);
+        assertEquals(2L, updated.version());
+        assertEquals(0.9, updated.energyScore(), 1e-12);
+    }
+
+    private static List<String> sample(Random random, List<String> pool) {
+        List<String> sample = new ArrayList<>();
+        int size = random.nextInt(6);
+        for (int i = 0; i < size; i++) {
+            sample.add(pool.get(random.nextInt(pool.size())));
+        }
+        return sample;
+    }
+
+    /**
+     * The set-based Jaccard similarity the bitmask kernel replaces
+     */
+    private static double jaccard(List<String> a, List<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+        Set<String> intersection = new HashSet<>(a);
+        intersection.retainAll(new HashSet<>(b));
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return (double) intersection.size() / union.size();
+    }
+
+    private static AdMetadata metadata(List<String> categories, String tone, String eraStyle, Integer energyLevel) {
+        AdMetadata metadata = new AdMetadata("ad-1");
+        metadata.setCategories(categories);
+        metadata.setTone(tone);
+        metadata.setEraStyle(eraStyle);
+        metadata.setEnergyLevel(energyLevel);
+        return metadata;
+    }
+
+    private static VideoAnalysisResult video(List<String> categories, String sentiment) {
+        return new VideoAnalysisResult("video1", "https://www.youtube.com/watch?v=video1", "Title", "Description",
+                300, categories, List.of(), sentiment, List.of());
+    }
+}
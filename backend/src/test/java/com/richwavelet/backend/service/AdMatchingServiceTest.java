@@ -0,0 +1,110 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.AdBreakSuggestion;
+import com.richwavelet.backend.dto.MatchResponse;
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.model.AdMetadata;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.repository.AdMetadataRepository;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdMatchingServiceTest {
+
+    private static final String YOUTUBE_URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+
+    @Mock
+    private AdMetadataRepository adMetadataRepository;
+
+    @Mock
+    private AdUploadRepository adUploadRepository;
+
+    @Mock
+    private YouTubeAnalysisService youTubeAnalysisService;
+
+    @Spy
+    private AdFeatureVectors adFeatureVectors = new AdFeatureVectors();
+
+    @InjectMocks
+    private AdMatchingService adMatchingService;
+
+    @Test
+    void testMatchAdsToVideo_LoadsAllAdsWithTwoQueries() throws Exception {
+        List<String> adIds = new ArrayList<>();
+        List<AdMetadata> metadata = new ArrayList<>();
+        List<AdUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String adId = "ad-" + i;
+            adIds.add(adId);
+            // Every tenth ad has no analysis yet and is skipped
+            if (i % 10 != 0) {
+                metadata.add(metadata(adId, i % 2 == 0 ? List.of("music") : List.of("food")));
+            }
+            uploads.add(upload(adId));
+        }
+        when(youTubeAnalysisService.analyze(YOUTUBE_URL)).thenReturn(video());
+        when(adMetadataRepository.findByAdIdIn(anyCollection())).thenReturn(metadata);
+        when(adUploadRepository.findAllById(anyIterable())).thenReturn(uploads);
+
+        MatchResponse response = adMatchingService.matchAdsToVideo(YOUTUBE_URL, adIds, 2);
+
+        verify(adMetadataRepository, times(1)).findByAdIdIn(anyCollection());
+        verify(adUploadRepository, times(1)).findAllById(anyIterable());
+        verifyNoMoreInteractions(adMetadataRepository, adUploadRepository);
+
+        assertEquals(2, response.schedule().size());
+        assertEquals(60, response.schedule().get(0).insertAt());
+        assertEquals(240, response.schedule().get(1).insertAt());
+        assertTrue(response.schedule().stream().allMatch(item -> Integer.parseInt(item.adId().substring(3)) % 2 == 0));
+    }
+
+    @Test
+    void testMatchAdsToVideo_NoAdsNeedsNoQueries() throws Exception {
+        when(youTubeAnalysisService.analyze(YOUTUBE_URL)).thenReturn(video());
+
+        MatchResponse response = adMatchingService.matchAdsToVideo(YOUTUBE_URL, List.of(), 3);
+
+        assertTrue(response.schedule().isEmpty());
+        verifyNoMoreInteractions(adMetadataRepository, adUploadRepository);
+    }
+
+    private static VideoAnalysisResult video() {
+        return new VideoAnalysisResult("dQw4w9WgXcQ", YOUTUBE_URL, "Title", "Description", 300,
+                List.of("music"), List.of("pop"), "positive", List.of(
+                        new AdBreakSuggestion(60, "Intro ends", 8, List.of("music")),
+                        new AdBreakSuggestion(240, "Bridge", 6, List.of("music"))));
+    }
+
+    private static AdMetadata metadata(String adId, List<String> categories) {
+        AdMetadata metadata = new AdMetadata(adId);
+        metadata.setCategories(categories);
+        metadata.setTone("exciting");
+        metadata.setEraStyle("1980s");
+        metadata.setEnergyLevel(7);
+        return metadata;
+    }
+
+    private static AdUpload upload(String adId) {
+        AdUpload upload = new AdUpload("user123", adId + ".mp4", "https://s/" + adId + ".mp4", "user123/" + adId + ".mp4");
+        upload.setId(adId);
+        upload.setDurationSeconds(15.0);
+        return upload;
+    }
+}
@@ -0,0 +1,102 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.AdRendition;
+import com.richwavelet.backend.repository.AdRenditionRepository;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdRenditionServiceTest {
+
+    private static final VideoProcessingService.StreamParams MAIN_720P = new VideoProcessingService.StreamParams(
+            "h264", "High", 1280, 720, "yuv420p", "30/1", "aac", 48000, 2);
+
+    @Mock
+    private AdUploadRepository adUploadRepository;
+
+    @Mock
+    private AdRenditionRepository adRenditionRepository;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private VideoProcessingService videoProcessingService;
+
+    @Mock
+    private MediaProbeService mediaProbeService;
+
+    @InjectMocks
+    private AdRenditionService adRenditionService;
+
+    @Test
+    void testRenditionSpec_Parse() {
+        AdRenditionService.RenditionSpec spec = AdRenditionService.RenditionSpec.parse(" 1920x1080@25 ");
+
+        assertEquals(new AdRenditionService.RenditionSpec(1920, 1080, 25), spec);
+        assertEquals("1080p25", spec.label());
+    }
+
+    @Test
+    void testSelect_PrefersRenditionWhoseAudioAlsoMatches() {
+        AdRendition p1080 = rendition("ad-1", "1080p30", 1920, 1080, 48000);
+        AdRendition p720Resampled = rendition("ad-1", "720p30-44k", 1280, 720, 44100);
+        AdRendition p720 = rendition("ad-1", "720p30", 1280, 720, 48000);
+
+        assertEquals("720p30", AdRenditionService.select(List.of(p1080, p720Resampled, p720), MAIN_720P)
+                .map(AdRendition::getLabel).orElseThrow());
+        assertEquals("720p30-44k", AdRenditionService.select(List.of(p1080, p720Resampled), MAIN_720P)
+                .map(AdRendition::getLabel).orElseThrow());
+        assertTrue(AdRenditionService.select(List.of(p1080), MAIN_720P).isEmpty());
+    }
+
+    @Test
+    void testChoose_MatchesShadedVideoAndFallsBackToOriginal() throws Exception {
+        Path shaded = Path.of("shaded.mp4");
+        when(videoProcessingService.probeStreamParams(shaded)).thenReturn(MAIN_720P);
+        AdRendition p720 = rendition("ad-1", "720p30", 1280, 720, 48000);
+        AdRendition p1080 = rendition("ad-2", "1080p30", 1920, 1080, 48000);
+        List<AdRenditionService.LocalAd> ads = List.of(
+                new AdRenditionService.LocalAd(Path.of("ad-1.mp4"), List.of(
+                        new AdRenditionService.RenditionFile(rendition("ad-1", "1080p30", 1920, 1080, 48000),
+                                Path.of("ad-1-1080p30.mp4")),
+                        new AdRenditionService.RenditionFile(p720, Path.of("ad-1-720p30.mp4")))),
+                new AdRenditionService.LocalAd(Path.of("ad-2.mp4"), List.of(
+                        new AdRenditionService.RenditionFile(p1080, Path.of("ad-2-1080p30.mp4")))));
+
+        List<Path> chosen = adRenditionService.choose(ads, shaded);
+
+        assertEquals(List.of(Path.of("ad-1-720p30.mp4"), Path.of("ad-2.mp4")), chosen);
+    }
+
+    @Test
+    void testSourceOf_KeysRenditionByAdAndLabel() {
+        assertEquals(new AdRenditionService.AdSource("ad-1-720p30", "https://s/ad-1-720p30.mp4"),
+                AdRenditionService.sourceOf(rendition("ad-1", "720p30", 1280, 720, 48000)));
+    }
+
+    private static AdRendition rendition(String adId, String label, int width, int height, int sampleRate) {
+        AdRendition rendition = new AdRendition(adId, label);
+        rendition.setFileUrl("https://s/" + adId + "-" + label + ".mp4");
+        rendition.setVideoCodec("h264");
+        rendition.setVideoProfile("High");
+        rendition.setWidth(width);
+        rendition.setHeight(height);
+        rendition.setPixelFormat("yuv420p");
+        rendition.setFrameRate("30/1");
+        rendition.setAudioCodec("aac");
+        rendition.setSampleRate(sampleRate);
+        rendition.setChannels(2);
+        return rendition;
+    }
+}
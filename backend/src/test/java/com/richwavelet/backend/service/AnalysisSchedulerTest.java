@@ -0,0 +1,85 @@
+package com.richwavelet.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisSchedulerTest {
+
+    private AnalysisScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new AnalysisScheduler();
+        ReflectionTestUtils.setField(scheduler, "workers", 1);
+        ReflectionTestUtils.setField(scheduler, "queueCapacity", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testInteractiveTasksRunBeforeQueuedBulkTasks() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("blocker", AnalysisScheduler.Priority.BULK, () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit("bulk", AnalysisScheduler.Priority.BULK, record(order, "bulk", done));
+        scheduler.submit("bulk-2", AnalysisScheduler.Priority.BULK, record(order, "bulk-2", done));
+        scheduler.submit("interactive", AnalysisScheduler.Priority.INTERACTIVE, record(order, "interactive", done));
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("interactive", "bulk", "bulk-2"), order);
+    }
+
+    @Test
+    void testFullLaneRejectsWithoutAffectingOtherLane() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("blocker", AnalysisScheduler.Priority.BULK, () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit("bulk-1", AnalysisScheduler.Priority.BULK, () -> {});
+        scheduler.submit("bulk-2", AnalysisScheduler.Priority.BULK, () -> {});
+
+        assertThrows(AnalysisScheduler.QueueFullException.class,
+                () -> scheduler.submit("bulk-3", AnalysisScheduler.Priority.BULK, () -> {}));
+        assertDoesNotThrow(() -> scheduler.submit("interactive", AnalysisScheduler.Priority.INTERACTIVE, () -> {}));
+        assertEquals(2, scheduler.queued(AnalysisScheduler.Priority.BULK));
+        blocker.countDown();
+    }
+
+    private static Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.richwavelet.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FfmpegRunnerTest {
+
+    private final FfmpegRunner ffmpegRunner = new FfmpegRunner();
+
+    @Test
+    void testWithProgressOutput_InsertsOptionsAfterExecutable() {
+        List<String> command = ffmpegRunner.withProgressOutput(List.of("ffmpeg", "-y", "-i", "in.mp4", "out.mp4"));
+
+        assertEquals(List.of("ffmpeg", "-progress", "pipe:1", "-nostats", "-v", "error",
+                "-y", "-i", "in.mp4", "out.mp4"), command);
+    }
+
+    @Test
+    void testProgressParser_CompletesBlockOnProgressLine() {
+        FfmpegRunner.ProgressParser parser = new FfmpegRunner.ProgressParser();
+
+        assertTrue(parser.accept("frame=250"));
+        assertTrue(parser.accept("fps=62.50"));
+        assertTrue(parser.accept("stream_0_0_q=28.0"));
+        assertTrue(parser.accept("out_time_us=10000000"));
+        assertTrue(parser.accept("out_time_ms=10000000"));
+        assertTrue(parser.accept("speed=2.5x"));
+        assertFalse(parser.blockComplete());
+
+        assertTrue(parser.accept("progress=continue"));
+        assertTrue(parser.blockComplete());
+        assertEquals(10.0, parser.outTimeSeconds(), 0.001);
+
+        FfmpegRunner.RunStats stats = parser.stats("test", Duration.ofSeconds(4));
+        assertEquals(62.5, stats.encodeFps(), 0.001);
+        assertEquals(2.5, stats.realtimeFactor(), 0.001);
+    }
+
+    @Test
+    void testProgressParser_InterpolatesOutputTimeFromSpeed() {
+        FfmpegRunner.ProgressParser parser = new FfmpegRunner.ProgressParser();
+        long blockNanos = 5_000_000_000L;
+        assertTrue(parser.estimatedOutTimeSeconds(blockNanos).isEmpty());
+
+        parser.accept("out_time_us=10000000", blockNanos);
+        parser.accept("speed=2.0x", blockNanos);
+        parser.accept("progress=continue", blockNanos);
+
+        assertEquals(10.0, parser.estimatedOutTimeSeconds(blockNanos).getAsDouble(), 0.001);
+        assertEquals(13.0, parser.estimatedOutTimeSeconds(blockNanos + 1_500_000_000L).getAsDouble(), 0.001);
+        // A stalled run is not extrapolated indefinitely
+        assertEquals(30.0, parser.estimatedOutTimeSeconds(blockNanos + 60_000_000_000L).getAsDouble(), 0.001);
+    }
+
+    @Test
+    void testProgressParser_IgnoresUnavailableValuesAndLogLines() {
+        FfmpegRunner.ProgressParser parser = new FfmpegRunner.ProgressParser();
+
+        assertTrue(parser.accept("out_time_us=N/A"));
+        assertTrue(parser.accept("speed=N/A"));
+        assertFalse(parser.accept("[libx264 @ 0x55d0] using cpu capabilities: MMX2 SSE2Fast"));
+        assertFalse(parser.accept("Error opening input file main.mp4."));
+        assertEquals(0.0, parser.outTimeSeconds());
+    }
+
+    @Test
+    void testProgressParser_RealtimeFactorFallsBackToWallClock() {
+        FfmpegRunner.ProgressParser parser = new FfmpegRunner.ProgressParser();
+        parser.accept("out_time_us=30000000");
+        parser.accept("progress=end");
+
+        FfmpegRunner.RunStats stats = parser.stats("copy", Duration.ofSeconds(10));
+
+        assertEquals(3.0, stats.realtimeFactor(), 0.001);
+        assertEquals(0.0, stats.encodeFps());
+    }
+}
@@ -0,0 +1,113 @@
+package com.richwavelet.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterGraphPlannerTest {
+
+    private FilterGraphPlanner planner;
+
+    private FilterGraphPlanner.InputSpec main;
+    private FilterGraphPlanner.InputSpec adWithAudio;
+    private FilterGraphPlanner.InputSpec silentAd;
+
+    @BeforeEach
+    void setUp() {
+        planner = new FilterGraphPlanner();
+        main = new FilterGraphPlanner.InputSpec(Path.of("/work/main.mp4"), 120.0, 1280, 720, "30000/1001", true);
+        adWithAudio = new FilterGraphPlanner.InputSpec(Path.of("/work/ad-1.mp4"), 15.0, 640, 480, "25/1", true);
+        silentAd = new FilterGraphPlanner.InputSpec(Path.of("/work/ad-2.mp4"), 10.0, 1920, 1080, "24/1", false);
+    }
+
+    @Test
+    void testPlan_NoAds_SingleChainPerStream() {
+        List<String> command = planner.plan(main, ShaderCompiler.CompiledShader.of("eq=saturation=0.85"), "lowpass=f=8000",
+                List.of(), List.of(), Path.of("/work/out.mp4"));
+
+        String graph = graphOf(command);
+        assertEquals("[0:v]eq=saturation=0.85[outv];[0:a]lowpass=f=8000[outa]", graph);
+        assertEquals(1, countOf(command, "-i"));
+        assertTrue(command.contains("[outa]"));
+        assertEquals("/work/out.mp4", command.get(command.size() - 1));
+    }
+
+    @Test
+    void testPlan_WithAds_ConcatInPlaybackOrder() {
+        List<String> command = planner.plan(main, ShaderCompiler.CompiledShader.of("eq=saturation=0.85"), "lowpass=f=8000",
+                List.of(adWithAudio, silentAd), List.of(30.0, 90.0), Path.of("/work/out.mp4"));
+
+        String graph = graphOf(command);
+        assertEquals(3, countOf(command, "-i"));
+        assertTrue(graph.startsWith("[0:v]eq=saturation=0.85,format=yuv420p,setsar=1,split=3[mv0][mv1][mv2]"));
+        assertTrue(graph.contains("[mv0]trim=start=0.000:end=30.000,setpts=PTS-STARTPTS[sv0]"));
+        assertTrue(graph.contains("[mv1]trim=start=30.000:end=90.000,setpts=PTS-STARTPTS[sv1]"));
+        assertTrue(graph.contains("[mv2]trim=start=90.000,setpts=PTS-STARTPTS[sv2]"));
+        assertTrue(graph.contains("[1:v]scale=1280:720:force_original_aspect_ratio=decrease"));
+        assertTrue(graph.contains("fps=30000/1001"));
+        assertTrue(graph.contains("[sv0][sa0][av1][aa1][sv1][sa1][av2][aa2][sv2][sa2]concat=n=5:v=1:a=1[outv][cat]"));
+        assertTrue(graph.endsWith("[cat]lowpass=f=8000[outa]"));
+    }
+
+    @Test
+    void testPlan_MaskedShader_BlendsMaskBeforeSplit() {
+        ShaderCompiler.CompiledShader shader = new ShaderCompiler.CompiledShader(
+                List.of("eq=saturation=0.75"), Path.of("/masks/vhs-1280x720.y4m"), "blend=c0_mode=multiply",
+                List.of("gblur=sigma=0.8"));
+
+        List<String> command = planner.plan(main, shader, null,
+                List.of(adWithAudio), List.of(60.0), Path.of("/work/out.mp4"));
+
+        String graph = graphOf(command);
+        assertTrue(graph.startsWith("movie='/masks/vhs-1280x720.y4m'[shader_mask];"
+                + "[0:v]eq=saturation=0.75,format=yuv420p[shader_pre];"
+                + "[shader_pre][shader_mask]blend=c0_mode=multiply,gblur=sigma=0.8,format=yuv420p,setsar=1,split=2[mv0][mv1]"));
+        assertEquals(2, countOf(command, "-i"));
+    }
+
+    @Test
+    void testPlan_SilentAd_GetsGeneratedSilence() {
+        List<String> command = planner.plan(main, null, null,
+                List.of(silentAd), List.of(60.0), Path.of("/work/out.mp4"));
+
+        String graph = graphOf(command);
+        assertTrue(graph.contains("anullsrc=r=48000:cl=stereo,atrim=duration=10.000"));
+        assertFalse(graph.contains("[1:a]"));
+        assertTrue(graph.endsWith("[cat]anull[outa]"));
+    }
+
+    @Test
+    void testPlan_AdsCycleWhenFewerThanInsertionPoints() {
+        List<String> command = planner.plan(main, null, null,
+                List.of(adWithAudio), List.of(20.0, 40.0, 60.0), Path.of("/work/out.mp4"));
+
+        assertEquals(4, countOf(command, "-i"));
+        assertEquals(3, command.stream().filter("/work/ad-1.mp4"::equals).count());
+    }
+
+    @Test
+    void testPlan_NoAudioAnywhere_OmitsAudioOutput() {
+        FilterGraphPlanner.InputSpec silentMain =
+                new FilterGraphPlanner.InputSpec(Path.of("/work/main.mp4"), 60.0, 1280, 720, "25/1", false);
+
+        List<String> command = planner.plan(silentMain, null, "lowpass=f=8000",
+                List.of(silentAd), List.of(30.0), Path.of("/work/out.mp4"));
+
+        String graph = graphOf(command);
+        assertTrue(graph.endsWith("concat=n=3:v=1:a=0[outv]"));
+        assertFalse(command.contains("[outa]"));
+        assertFalse(command.contains("-c:a"));
+    }
+
+    private String graphOf(List<String> command) {
+        return command.get(command.indexOf("-filter_complex") + 1);
+    }
+
+    private long countOf(List<String> command, String arg) {
+        return command.stream().filter(arg::equals).count();
+    }
+}
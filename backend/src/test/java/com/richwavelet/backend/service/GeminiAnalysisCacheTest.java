@@ -0,0 +1,99 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.GeminiAnalysisCacheEntry;
+import com.richwavelet.backend.repository.GeminiAnalysisCacheRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class GeminiAnalysisCacheTest {
+
+    private static final String SHA = "ab".repeat(32);
+
+    @Mock
+    private GeminiAnalysisCacheRepository repository;
+
+    @InjectMocks
+    private GeminiAnalysisCache cache;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "geminiModel", "gemini-2.0-flash-001");
+    }
+
+    @Test
+    void testPut_ServesLaterReadsFromMemory() {
+        GeminiAnalysisCache.Key key = new GeminiAnalysisCache.Key("video-analysis", "1", "VHS", SHA);
+
+        cache.put(key, "{\"videoSummary\":\"x\"}");
+
+        assertEquals(Optional.of("{\"videoSummary\":\"x\"}"), cache.get(key));
+        verify(repository).save(any());
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void testGet_ReadsThroughToDatabaseAndSkipsExpiredEntries() {
+        GeminiAnalysisCache.Key fresh = new GeminiAnalysisCache.Key("ad-analysis", "1", null, SHA);
+        GeminiAnalysisCache.Key stale = new GeminiAnalysisCache.Key("ad-analysis", "0", null, SHA);
+        when(repository.findById(cache.id(fresh))).thenReturn(Optional.of(entry(fresh, OffsetDateTime.now().plusDays(1))));
+        when(repository.findById(cache.id(stale))).thenReturn(Optional.of(entry(stale, OffsetDateTime.now().minusDays(1))));
+
+        assertEquals(Optional.of("{}"), cache.get(fresh));
+        assertTrue(cache.get(stale).isEmpty());
+    }
+
+    @Test
+    void testId_DependsOnStylePromptVersionAndModel() {
+        GeminiAnalysisCache.Key vhs = new GeminiAnalysisCache.Key("video-analysis", "1", "VHS", SHA);
+        String id = cache.id(vhs);
+
+        assertNotEquals(id, cache.id(new GeminiAnalysisCache.Key("video-analysis", "1", "CRT", SHA)));
+        assertNotEquals(id, cache.id(new GeminiAnalysisCache.Key("video-analysis", "2", "VHS", SHA)));
+        ReflectionTestUtils.setField(cache, "geminiModel", "gemini-2.5-pro");
+        assertNotEquals(id, cache.id(vhs));
+    }
+
+    @Test
+    void testGet_UnknownContentHashIsNeverCached() {
+        GeminiAnalysisCache.Key key = new GeminiAnalysisCache.Key("ad-analysis", "1", null, null);
+
+        cache.put(key, "{}");
+
+        assertTrue(cache.get(key).isEmpty());
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testSha256_HashesFileContent() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("a.mp4"), "abc");
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                GeminiAnalysisCache.sha256(file));
+    }
+
+    private GeminiAnalysisCacheEntry entry(GeminiAnalysisCache.Key key, OffsetDateTime expiresAt) {
+        return new GeminiAnalysisCacheEntry(cache.id(key), key.useCase(), "gemini-2.0-flash-001",
+                key.promptVersion(), key.variant(), key.contentSha256(), "{}", expiresAt);
+    }
+}
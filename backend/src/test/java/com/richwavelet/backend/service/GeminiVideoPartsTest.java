@@ -0,0 +1,99 @@
+package com.richwavelet.backend.service;
+
+import com.google.cloud.vertexai.api.Part;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiVideoPartsTest {
+
+    /**
+     * Stands in for the staging bucket, keeping staged files in memory
+     */
+    private static class InMemoryStagingStore implements VideoStagingStore {
+        final Map<String, byte[]> objects = new HashMap<>();
+        boolean enabled = true;
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public String stage(Path file, String objectName, String mimeType) throws IOException {
+            String uri = "gs://fake/" + objectName;
+            objects.put(uri, Files.readAllBytes(file));
+            return uri;
+        }
+
+        @Override
+        public void delete(String uri) {
+            objects.remove(uri);
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private InMemoryStagingStore stagingStore;
+    private GeminiVideoParts geminiVideoParts;
+
+    @BeforeEach
+    void setUp() {
+        stagingStore = new InMemoryStagingStore();
+        geminiVideoParts = new GeminiVideoParts(stagingStore);
+        ReflectionTestUtils.setField(geminiVideoParts, "inlineMaxBytes", 1024L);
+    }
+
+    @Test
+    void testVideoPart_SmallFileIsSentInline() throws Exception {
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Path video = Files.write(tempDir.resolve("small.mp4"), bytes);
+
+        Part part = geminiVideoParts.videoPart(video, "small.mp4");
+
+        assertTrue(part.hasInlineData());
+        assertEquals("video/mp4", part.getInlineData().getMimeType());
+        assertArrayEquals(bytes, part.getInlineData().getData().toByteArray());
+        assertTrue(stagingStore.objects.isEmpty());
+    }
+
+    @Test
+    void testVideoPart_LargeFileIsStagedAndReleased() throws Exception {
+        byte[] bytes = new byte[4096];
+        Path video = Files.write(tempDir.resolve("large.mp4"), bytes);
+
+        Part part = geminiVideoParts.videoPart(video, "large.mp4");
+
+        assertTrue(part.hasFileData());
+        String uri = part.getFileData().getFileUri();
+        assertTrue(uri.startsWith("gs://fake/"));
+        assertArrayEquals(bytes, stagingStore.objects.get(uri));
+
+        geminiVideoParts.release(part);
+        assertTrue(stagingStore.objects.isEmpty());
+    }
+
+    @Test
+    void testVideoPart_LargeFileIsSentInlineWithoutStaging() throws Exception {
+        stagingStore.enabled = false;
+        Path video = Files.write(tempDir.resolve("large.mp4"), new byte[4096]);
+
+        Part part = geminiVideoParts.videoPart(video, "large.mp4");
+
+        assertTrue(part.hasInlineData());
+        assertEquals(4096, part.getInlineData().getData().size());
+    }
+}
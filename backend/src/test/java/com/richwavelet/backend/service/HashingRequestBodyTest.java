@@ -0,0 +1,52 @@
+package com.richwavelet.backend.service;
+
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashingRequestBodyTest {
+
+    private static final byte[] CONTENT = "test video content".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testWriteTo_ComputesSizeAndSha256() throws IOException {
+        HashingRequestBody body = new HashingRequestBody(() -> new ByteArrayInputStream(CONTENT), CONTENT.length, null);
+        Buffer sink = new Buffer();
+
+        body.writeTo(sink);
+
+        assertArrayEquals(CONTENT, sink.readByteArray());
+        assertEquals(CONTENT.length, body.bytesWritten());
+        assertEquals(sha256Of(CONTENT), body.sha256());
+    }
+
+    @Test
+    void testWriteTo_ReopensStreamOnRetry() throws IOException {
+        HashingRequestBody body = new HashingRequestBody(() -> new ByteArrayInputStream(CONTENT), CONTENT.length, null);
+
+        body.writeTo(new Buffer());
+        Buffer retry = new Buffer();
+        body.writeTo(retry);
+
+        assertEquals(CONTENT.length, retry.size());
+        assertEquals(sha256Of(CONTENT), body.sha256());
+    }
+
+    @Test
+    void testWriteTo_ShortStreamFails() {
+        HashingRequestBody body = new HashingRequestBody(() -> new ByteArrayInputStream(CONTENT), CONTENT.length + 1, null);
+
+        assertThrows(IOException.class, () -> body.writeTo(new Buffer()));
+        assertNull(body.sha256());
+    }
+
+    private String sha256Of(byte[] content) {
+        return ByteString.of(content).sha256().hex();
+    }
+}
@@ -0,0 +1,103 @@
+package com.richwavelet.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richwavelet.backend.dto.MediaInfo;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.model.VideoUpload;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import com.richwavelet.backend.repository.VideoUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MediaProbeServiceTest {
+
+    private static final String FFPROBE_JSON = """
+            {
+              "streams": [
+                {"codec_type": "video", "codec_name": "mjpeg", "width": 300, "height": 300,
+                 "disposition": {"attached_pic": 1}},
+                {"codec_type": "video", "codec_name": "h264", "profile": "High", "width": 1920, "height": 1080,
+                 "pix_fmt": "yuv420p", "r_frame_rate": "30000/1001", "bit_rate": "4500000",
+                 "disposition": {"attached_pic": 0}},
+                {"codec_type": "audio", "codec_name": "aac", "sample_rate": "48000", "channels": 2,
+                 "bit_rate": "192000"}
+              ],
+              "format": {"format_name": "mov,mp4,m4a,3gp,3g2,mj2", "duration": "93.500000",
+                         "size": "54000000", "bit_rate": "4620000"}
+            }
+            """;
+
+    @Mock
+    private VideoUploadRepository videoUploadRepository;
+
+    @Mock
+    private AdUploadRepository adUploadRepository;
+
+    @InjectMocks
+    private MediaProbeService mediaProbeService;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParse_SkipsCoverArtAndReadsStreams() throws Exception {
+        MediaInfo info = MediaProbeService.parse(new ObjectMapper().readTree(FFPROBE_JSON));
+
+        assertEquals(93.5, info.durationSeconds(), 0.001);
+        assertEquals(54000000L, info.sizeBytes());
+        assertEquals(new MediaInfo.VideoStream("h264", "High", 1920, 1080, "yuv420p", "30000/1001", 4500000), info.video());
+        assertEquals(new MediaInfo.AudioStream("aac", 48000, 2, 192000), info.audio());
+    }
+
+    @Test
+    void testParse_NoAudioAndUnknownFrameRate() throws Exception {
+        MediaInfo info = MediaProbeService.parse(new ObjectMapper().readTree("""
+                {"streams": [{"codec_type": "video", "codec_name": "vp9", "width": 640, "height": 360,
+                              "r_frame_rate": "0/0", "avg_frame_rate": "0/0", "duration": "12.0"}],
+                 "format": {}}
+                """));
+
+        assertFalse(info.hasAudio());
+        assertNull(info.video().frameRate());
+        assertEquals(12.0, info.durationSeconds(), 0.001);
+    }
+
+    @Test
+    void testProbeAdUpload_PersistedInfoIsReusedWithoutProbing() throws Exception {
+        MediaInfo info = MediaProbeService.parse(new ObjectMapper().readTree(FFPROBE_JSON));
+        AdUpload ad = new AdUpload("user123", "ad.mp4", "https://s/ad.mp4", "user123/ad.mp4");
+        ad.setMediaInfo(mediaProbeService.toJson(info));
+        Path local = Files.write(tempDir.resolve("ad.mp4"), new byte[10]);
+
+        assertEquals(info, mediaProbeService.probeAdUpload(ad, local));
+        // Later probes of the same local file are served from the cache, so ffprobe never runs
+        assertEquals(info, mediaProbeService.probe(local));
+        verify(adUploadRepository, never()).updateMediaInfo(any(), any(), any());
+    }
+
+    @Test
+    void testProbe_StoragePathCacheCoversNewLocalCopies() throws Exception {
+        MediaInfo info = MediaProbeService.parse(new ObjectMapper().readTree(FFPROBE_JSON));
+        VideoUpload upload = new VideoUpload("user123", "main.mp4", "https://s/main.mp4", "user123/main.mp4");
+        upload.setMediaInfo(mediaProbeService.toJson(info));
+        mediaProbeService.probeVideoUpload(upload, Files.write(tempDir.resolve("job1.mp4"), new byte[10]));
+
+        Path secondJobCopy = Files.write(tempDir.resolve("job2.mp4"), new byte[10]);
+
+        assertEquals(info, mediaProbeService.probe("user123/main.mp4", secondJobCopy));
+        assertEquals(info, mediaProbeService.probe(secondJobCopy));
+    }
+}
@@ -0,0 +1,44 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.ProcessingStage;
+import com.richwavelet.backend.model.ProcessingStatus;
+import com.richwavelet.backend.repository.ProcessingStatusRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProcessingStatusServiceTest {
+
+    @Mock
+    private ProcessingStatusRepository statusRepository;
+
+    @InjectMocks
+    private ProcessingStatusService statusService;
+
+    @Test
+    void testJobProgress_DropsUpdatesThatWouldMoveBackwards() {
+        ProcessingStatus status = new ProcessingStatus("job-1", "user123", ProcessingStage.QUEUED, "Queued");
+        when(statusRepository.findById("job-1")).thenReturn(Optional.of(status));
+        ProcessingStatusService.JobProgress progress = statusService.jobProgress("job-1", "user123");
+
+        progress.update(ProcessingStage.APPLYING_EFFECTS, "Applying shader effects...", 40);
+        // The analysis started earlier and reports late
+        progress.update(ProcessingStage.ANALYZING, "Analyzing video...", 25);
+
+        ArgumentCaptor<ProcessingStatus> saved = ArgumentCaptor.forClass(ProcessingStatus.class);
+        verify(statusRepository, times(1)).save(saved.capture());
+        assertEquals(ProcessingStage.APPLYING_EFFECTS, saved.getValue().getStage());
+        assertEquals(40, saved.getValue().getProgressPercent());
+    }
+}
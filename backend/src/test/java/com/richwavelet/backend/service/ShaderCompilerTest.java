@@ -0,0 +1,175 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.model.ShaderStyle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ShaderCompilerTest {
+
+    private static final Pattern PSNR_AVERAGE = Pattern.compile("PSNR .*average:(inf|[0-9.]+)");
+
+    private ShaderCompiler shaderCompiler;
+
+    private Path maskDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        maskDir = Files.createTempDirectory("shader-masks-test");
+        shaderCompiler = new ShaderCompiler();
+        ReflectionTestUtils.setField(shaderCompiler, "maskDir", maskDir.toString());
+    }
+
+    @Test
+    void testBuildMask_VhsDarkensTwoOfEveryFourLumaRows() {
+        byte[] mask = shaderCompiler.buildMask(shaderCompiler.scanlines(ShaderStyle.VHS), 4, 8);
+
+        int offset = headerLength(mask);
+        int[] expected = {217, 217, 255, 255, 217, 217, 255, 255};
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(expected[row], Byte.toUnsignedInt(mask[offset + row * 4 + col]), "row " + row);
+            }
+        }
+        // Chroma planes are left neutral
+        for (int i = offset + 32; i < mask.length; i++) {
+            assertEquals(255, Byte.toUnsignedInt(mask[i]));
+        }
+    }
+
+    @Test
+    void testBuildMask_CrtDarkensOddChromaRows() {
+        byte[] mask = shaderCompiler.buildMask(shaderCompiler.scanlines(ShaderStyle.CRT), 4, 4);
+
+        int chroma = headerLength(mask) + 16;
+        // Each 2x2 chroma plane: row 0 untouched, row 1 at 0.7
+        assertArrayEquals(new int[]{255, 255, 179, 179, 255, 255, 179, 179}, unsigned(mask, chroma, 8));
+    }
+
+    @Test
+    void testBuildMask_OddDimensionsRoundChromaUp() {
+        byte[] mask = shaderCompiler.buildMask(shaderCompiler.scanlines(ShaderStyle.ARCADE), 5, 3);
+
+        assertEquals(headerLength(mask) + 15 + 2 * 3 * 2, mask.length);
+        String header = new String(mask, 0, headerLength(mask), StandardCharsets.US_ASCII);
+        assertTrue(header.startsWith("YUV4MPEG2 W5 H3 "));
+    }
+
+    @Test
+    void testMaskFor_CachedPerStyleAndResolution() throws IOException {
+        Path first = shaderCompiler.maskFor(ShaderStyle.VHS, 64, 48);
+        long modified = Files.getLastModifiedTime(first).toMillis();
+
+        Path again = shaderCompiler.maskFor(ShaderStyle.VHS, 64, 48);
+        Path otherSize = shaderCompiler.maskFor(ShaderStyle.VHS, 32, 24);
+
+        assertEquals(first, again);
+        assertEquals(modified, Files.getLastModifiedTime(again).toMillis());
+        assertNotEquals(first, otherSize);
+        assertEquals(maskDir.resolve("vhs-64x48.y4m"), first);
+    }
+
+    @Test
+    void testCompile_NoGeqInCompiledChain() throws IOException {
+        for (ShaderStyle style : ShaderStyle.values()) {
+            String graph = shaderCompiler.compile(style, 64, 48).simpleGraph();
+
+            assertFalse(graph.contains("geq"), style + ": " + graph);
+            assertTrue(graph.startsWith("movie='"), style + ": " + graph);
+            assertTrue(graph.endsWith("[out]"));
+        }
+    }
+
+    @Test
+    void testCompiledShader_WithoutMaskIsPlainChain() {
+        ShaderCompiler.CompiledShader shader = ShaderCompiler.CompiledShader.of("eq=saturation=0.85");
+
+        assertEquals("[0:v]eq=saturation=0.85,setsar=1", shader.chain("0:v", "setsar=1"));
+        assertEquals("[0:v]null", ShaderCompiler.CompiledShader.of().chain("0:v"));
+    }
+
+    /**
+     * Golden-frame check: render the same synthetic clip through the original geq chain and the
+     * compiled chain and require the frames to be visually identical. Needs ffmpeg on the PATH.
+     */
+    @ParameterizedTest
+    @EnumSource(ShaderStyle.class)
+    void testCompiledChainMatchesReferenceFrames(ShaderStyle style) throws IOException, InterruptedException {
+        assumeTrue(ffmpegAvailable(), "ffmpeg not installed");
+
+        Path source = maskDir.resolve("source.nut");
+        run(List.of("ffmpeg", "-y", "-f", "lavfi", "-i", "testsrc2=size=320x240:rate=25:duration=1",
+                "-pix_fmt", "yuv420p", "-c:v", "rawvideo", source.toString()));
+
+        Path reference = maskDir.resolve("reference-" + style + ".nut");
+        run(List.of("ffmpeg", "-y", "-i", source.toString(), "-vf", shaderCompiler.referenceChain(style),
+                "-c:v", "rawvideo", reference.toString()));
+
+        Path compiled = maskDir.resolve("compiled-" + style + ".nut");
+        run(List.of("ffmpeg", "-y", "-i", source.toString(),
+                "-vf", shaderCompiler.compile(style, 320, 240).simpleGraph(),
+                "-c:v", "rawvideo", compiled.toString()));
+
+        List<String> output = run(List.of("ffmpeg", "-i", compiled.toString(), "-i", reference.toString(),
+                "-lavfi", "psnr", "-f", "null", "-"));
+        double psnr = output.stream()
+                .map(PSNR_AVERAGE::matcher)
+                .filter(Matcher::find)
+                .map(m -> "inf".equals(m.group(1)) ? Double.POSITIVE_INFINITY : Double.parseDouble(m.group(1)))
+                .findFirst()
+                .orElseThrow();
+
+        // One-step rounding differences only; a misplaced scanline drops this far below 40 dB
+        assertTrue(psnr > 45.0, style + " PSNR " + psnr);
+    }
+
+    private boolean ffmpegAvailable() {
+        try {
+            return new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true).start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private List<String> run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        assertEquals(0, process.waitFor(), String.join("\n", lines));
+        return lines;
+    }
+
+    private int headerLength(byte[] mask) {
+        String text = new String(mask, StandardCharsets.US_ASCII);
+        return text.indexOf("FRAME\n") + "FRAME\n".length();
+    }
+
+    private int[] unsigned(byte[] bytes, int offset, int length) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = Byte.toUnsignedInt(bytes[offset + i]);
+        }
+        return values;
+    }
+}
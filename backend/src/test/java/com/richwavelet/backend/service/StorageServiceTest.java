@@ -8,8 +8,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -40,7 +52,7 @@ class StorageServiceTest {
 
     @BeforeEach
     void setUp() {
-        when(supabaseConfig.getSupabaseUrl()).thenReturn("https://test.supabase.co");
+        lenient().when(supabaseConfig.getSupabaseUrl()).thenReturn("https://test.supabase.co");
         storageService = new StorageService(httpClient, supabaseConfig, supabaseService);
     }
 
@@ -125,7 +137,7 @@ class StorageServiceTest {
         when(httpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
-        when(response.code()).thenReturn(200);
+        lenient().when(response.code()).thenReturn(200);
 
         assertDoesNotThrow(() -> {
             storageService.deleteFromStorage("videos", "user123/video.mp4");
@@ -160,5 +172,180 @@ class StorageServiceTest {
 
         verify(httpClient, atLeastOnce()).newCall(any(Request.class));
     }
-}
 
+    @Test
+    void testUploadProcessedVideo_SmallFileStreamsWithKnownLength() throws IOException {
+        Path video = Files.createTempFile("processed", ".mp4");
+        Files.write(video, new byte[1000]);
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests, 200, null);
+
+        String storagePath = storageService.uploadProcessedVideo("user123", video, "retro.mp4");
+
+        assertEquals("user123/retro.mp4", storagePath);
+        assertEquals(1, requests.size());
+        assertEquals("PUT", requests.get(0).method());
+        assertEquals(1000, requests.get(0).body().contentLength());
+    }
+
+    @Test
+    void testUploadProcessedVideo_LargeFileResumesAfterFailedChunk() throws IOException {
+        ReflectionTestUtils.setField(storageService, "resumableThresholdBytes", 100L);
+        ReflectionTestUtils.setField(storageService, "resumableChunkBytes", 40L);
+        ReflectionTestUtils.setField(storageService, "resumableBackoffMillis", 0L);
+        Path video = Files.createTempFile("processed", ".mp4");
+        Files.write(video, new byte[100]);
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests,
+                201, "Location: /storage/v1/upload/resumable/abc",
+                204, "Upload-Offset: 40",
+                500, null,
+                200, "Upload-Offset: 60",
+                204, "Upload-Offset: 100");
+
+        storageService.uploadProcessedVideo("user123", video, "retro.mp4");
+
+        assertEquals(List.of("POST", "PATCH", "PATCH", "HEAD", "PATCH"),
+                requests.stream().map(Request::method).toList());
+        assertEquals("100", requests.get(0).header("Upload-Length"));
+        assertEquals("https://test.supabase.co/storage/v1/upload/resumable/abc", requests.get(1).url().toString());
+        assertEquals("40", requests.get(2).header("Upload-Offset"));
+        // Resumes from the offset the server reported, not from the start of the failed chunk
+        assertEquals("60", requests.get(4).header("Upload-Offset"));
+        assertEquals(40, requests.get(4).body().contentLength());
+    }
+
+    @Test
+    void testUploadProcessedVideo_RetriesFailedOffsetCheck() throws IOException {
+        ReflectionTestUtils.setField(storageService, "resumableThresholdBytes", 100L);
+        ReflectionTestUtils.setField(storageService, "resumableChunkBytes", 60L);
+        ReflectionTestUtils.setField(storageService, "resumableBackoffMillis", 0L);
+        Path video = Files.createTempFile("processed", ".mp4");
+        Files.write(video, new byte[100]);
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests,
+                201, "Location: /storage/v1/upload/resumable/abc",
+                500, null,
+                503, null,
+                200, "Upload-Offset: 0",
+                204, "Upload-Offset: 60",
+                204, "Upload-Offset: 100");
+
+        storageService.uploadProcessedVideo("user123", video, "retro.mp4");
+
+        assertEquals(List.of("POST", "PATCH", "HEAD", "HEAD", "PATCH", "PATCH"),
+                requests.stream().map(Request::method).toList());
+    }
+
+    @Test
+    void testPlanRanges_SplitsIntoContiguousRanges() {
+        List<long[]> ranges = StorageService.planRanges(100, 4, 30);
+
+        assertEquals(4, ranges.size());
+        assertArrayEquals(new long[] {0, 24}, ranges.get(0));
+        assertArrayEquals(new long[] {75, 99}, ranges.get(3));
+        assertEquals(1, StorageService.planRanges(10, 4, 30).size());
+    }
+
+    @Test
+    void testDownloadFile_RangedDownloadResumesTruncatedRange() throws IOException {
+        ReflectionTestUtils.setField(storageService, "rangedThresholdBytes", 100L);
+        ReflectionTestUtils.setField(storageService, "minRangeBytes", 40L);
+        byte[] content = new byte[120];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean truncated = new AtomicBoolean();
+        when(httpClient.newCall(any(Request.class))).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).message("");
+            String range = request.header("Range");
+            ranges.add(range);
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+            // The first request for the middle range drops its connection halfway through
+            if (start == 40 && truncated.compareAndSet(false, true)) {
+                end = 59;
+            }
+            builder.code(206).header("Content-Range", "bytes " + start + "-" + end + "/120").header("ETag", "\"v1\"")
+                    .body(ResponseBody.create(Arrays.copyOfRange(content, start, end + 1), null));
+            Call answer = mock(Call.class);
+            when(answer.execute()).thenReturn(builder.build());
+            return answer;
+        });
+        Path destination = Files.createTempFile("download", ".mp4");
+
+        storageService.downloadFile("https://test.supabase.co/storage/v1/object/public/videos/a.mp4", destination);
+
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertTrue(ranges.containsAll(List.of("bytes=0-39", "bytes=40-79", "bytes=80-119", "bytes=60-79")));
+        assertEquals(4, ranges.size());
+    }
+
+    @Test
+    void testDownloadFile_SmallFileNeedsOneRequest() throws IOException {
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests, 206, "Content-Range: bytes 0-9/10");
+        Path destination = Files.createTempFile("download", ".mp4");
+
+        storageService.downloadFile("https://test.supabase.co/storage/v1/object/public/videos/a.mp4", destination);
+
+        assertEquals(List.of("GET"), requests.stream().map(Request::method).toList());
+    }
+
+    @Test
+    void testDownloadRange_RejectedRangeFailsWithoutRetrying() throws IOException {
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests, 403, null);
+        Path destination = Files.createTempFile("download", ".mp4");
+
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+            assertThrows(StorageService.RangeRejectedException.class, () -> storageService.downloadRange(httpClient,
+                    HttpUrl.get("https://test.supabase.co/a.mp4"), "\"v1\"", channel, 0, 99, null));
+        }
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void testDownloadRange_ChangedObjectFailsWithoutRetrying() throws IOException {
+        List<Request> requests = new ArrayList<>();
+        respondInOrder(requests, 200, null);
+        Path destination = Files.createTempFile("download", ".mp4");
+
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+            assertThrows(StorageService.ObjectChangedException.class, () -> storageService.downloadRange(httpClient,
+                    HttpUrl.get("https://test.supabase.co/a.mp4"), "\"v1\"", channel, 0, 99, null));
+        }
+        assertEquals(1, requests.size());
+    }
+
+    /**
+     * Answer each call with the next status code and optional "Name: value" header, recording the requests
+     */
+    private void respondInOrder(List<Request> requests, Object... codesAndHeaders) {
+        Deque<Object> pending = new ArrayDeque<>();
+        for (Object item : codesAndHeaders) {
+            pending.add(item == null ? "" : item);
+        }
+        when(httpClient.newCall(any(Request.class))).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            requests.add(request);
+            int code = (Integer) pending.poll();
+            String header = (String) pending.poll();
+            Response.Builder builder = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message("")
+                    .body(ResponseBody.create("", null));
+            if (!header.isEmpty()) {
+                builder.header(header.substring(0, header.indexOf(':')), header.substring(header.indexOf(':') + 1).trim());
+            }
+            Call answer = mock(Call.class);
+            when(answer.execute()).thenReturn(builder.build());
+            return answer;
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package com.richwavelet.backend.service;
+
+import com.google.cloud.vertexai.api.Content;
+import com.google.cloud.vertexai.api.Schema;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VertexAiClientPoolTest {
+
+    @Test
+    void testShutdownPoolRejectsCalls() {
+        VertexAiClientPool pool = new VertexAiClientPool();
+        pool.shutdown();
+
+        VertexAiClientPool.ModelSpec spec = new VertexAiClientPool.ModelSpec("test", Schema.getDefaultInstance());
+        assertThrows(IllegalStateException.class, () -> pool.generate(spec, Content.getDefaultInstance()));
+    }
+}
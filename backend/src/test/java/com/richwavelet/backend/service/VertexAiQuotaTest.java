@@ -0,0 +1,84 @@
+package com.richwavelet.backend.service;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ResourceExhaustedException;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VertexAiQuotaTest {
+
+    @Test
+    void testTokenBucket_BurstThenPacedAtRate() {
+        AtomicLong now = new AtomicLong();
+        VertexAiQuota.TokenBucket bucket = new VertexAiQuota.TokenBucket(2.0, 2, now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        // Third and fourth requests wait for refills half a second apart
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve(), 1);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), bucket.reserve(), 1);
+
+        now.set(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, bucket.reserve());
+    }
+
+    @Test
+    void testConcurrencyLimit_HalvesOnThrottleAndRecoversAdditively() {
+        VertexAiQuota.ConcurrencyLimit limit = new VertexAiQuota.ConcurrencyLimit(1, 8);
+
+        limit.onThrottled();
+        assertEquals(4, limit.limit());
+        limit.onThrottled();
+        limit.onThrottled();
+        limit.onThrottled();
+        assertEquals(1, limit.limit());
+
+        limit.onSuccess();
+        assertEquals(2, limit.limit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess();
+        }
+        assertEquals(8, limit.limit());
+    }
+
+    @Test
+    void testCall_RetriesWhileQuotaExhausted() throws Exception {
+        VertexAiQuota quota = new VertexAiQuota(0, 1, 1, 4, 3, 1, System::nanoTime);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = quota.call("gemini", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw exhausted();
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        // Halved twice from 4, then one success grows it back by one
+        assertEquals(2, quota.concurrencyLimit());
+    }
+
+    @Test
+    void testCall_GivesUpAfterMaxRetries() {
+        VertexAiQuota quota = new VertexAiQuota(0, 1, 1, 4, 1, 1, System::nanoTime);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ResourceExhaustedException.class, () -> quota.call("gemini", () -> {
+            attempts.incrementAndGet();
+            throw exhausted();
+        }));
+        assertEquals(2, attempts.get());
+    }
+
+    private static ResourceExhaustedException exhausted() {
+        return new ResourceExhaustedException(new RuntimeException("429"),
+                GrpcStatusCode.of(Status.Code.RESOURCE_EXHAUSTED), true);
+    }
+}
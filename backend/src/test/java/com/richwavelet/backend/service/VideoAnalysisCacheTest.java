@@ -0,0 +1,98 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.AdBreakSuggestion;
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoAnalysisCacheTest {
+
+    private final VideoAnalysisCache cache = new VideoAnalysisCache();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, Optional<VideoAnalysisResult>> loader = videoId -> {
+        loads.incrementAndGet();
+        return Optional.of(result(videoId));
+    };
+
+    @Test
+    void testGet_LoadsOnceThenServesFromMemory() {
+        cache.get("video1", loader);
+        Optional<VideoAnalysisResult> cached = cache.get("video1", loader);
+
+        assertTrue(cached.isPresent());
+        assertEquals(1, loads.get());
+        VideoAnalysisCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRatio());
+    }
+
+    @Test
+    void testGet_MissingAnalysisIsNotCached() {
+        assertTrue(cache.get("video1", videoId -> Optional.empty()).isEmpty());
+
+        cache.get("video1", loader);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testGet_ExpiredEntriesAreReloaded() {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+
+        cache.get("video1", loader);
+        cache.get("video1", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testPut_EvictsLeastRecentlyUsed() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        cache.put(result("video1"));
+        cache.put(result("video2"));
+        cache.get("video1", loader);
+
+        cache.put(result("video3"));
+
+        cache.get("video1", loader);
+        cache.get("video2", loader);
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.stats().evictions());
+    }
+
+    @Test
+    void testInvalidate_ForcesReload() {
+        cache.get("video1", loader);
+
+        cache.invalidate("video1");
+        cache.get("video1", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testPut_CachedResultsCannotBeModified() {
+        cache.put(result("video1"));
+
+        VideoAnalysisResult cached = cache.get("video1", loader).orElseThrow();
+
+        assertThrows(UnsupportedOperationException.class, () -> cached.adBreakSuggestions().clear());
+        assertThrows(UnsupportedOperationException.class, () -> cached.categories().add("sports"));
+    }
+
+    private static VideoAnalysisResult result(String videoId) {
+        List<AdBreakSuggestion> suggestions = new ArrayList<>();
+        suggestions.add(new AdBreakSuggestion(60, "Topic change", 5, new ArrayList<>(List.of("music"))));
+        return new VideoAnalysisResult(videoId, "https://www.youtube.com/watch?v=" + videoId, "Title", "Description",
+                300, new ArrayList<>(List.of("music")), new ArrayList<>(List.of("pop")), "positive", suggestions);
+    }
+}
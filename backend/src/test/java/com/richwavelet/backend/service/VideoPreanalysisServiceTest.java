@@ -0,0 +1,141 @@
+package com.richwavelet.backend.service;
+
+import com.richwavelet.backend.dto.VideoAnalysisResult;
+import com.richwavelet.backend.dto.YouTubeMetadata;
+import com.richwavelet.backend.model.VideoAnalysis;
+import com.richwavelet.backend.model.VideoPreanalysisItem;
+import com.richwavelet.backend.repository.VideoAnalysisClaimRepository;
+import com.richwavelet.backend.repository.VideoAnalysisRepository;
+import com.richwavelet.backend.repository.VideoPreanalysisItemRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class VideoPreanalysisServiceTest {
+
+    private static final String CACHED = "aaaaaaaaaaa";
+    private static final String FRESH = "bbbbbbbbbbb";
+    private static final String MISSING = "ccccccccccc";
+    private static final String BROKEN = "ddddddddddd";
+
+    @Mock
+    private YouTubeAnalysisService youTubeAnalysisService;
+
+    @Mock
+    private YouTubeMetadataClient youTubeMetadataClient;
+
+    @Mock
+    private VideoAnalysisRepository videoAnalysisRepository;
+
+    @Mock
+    private VideoAnalysisClaimRepository videoAnalysisClaimRepository;
+
+    @Mock
+    private VideoPreanalysisItemRepository itemRepository;
+
+    @Mock
+    private AnalysisScheduler analysisScheduler;
+
+    @InjectMocks
+    private VideoPreanalysisService videoPreanalysisService;
+
+    @Test
+    void testRun_RecordsEachVideoAndWritesAnalysesInOneBatch() throws Exception {
+        List<String> videoIds = List.of(CACHED, FRESH, MISSING, BROKEN);
+        when(videoAnalysisRepository.findByVideoIdIn(videoIds))
+                .thenReturn(List.of(new VideoAnalysis(CACHED, "https://youtu.be/" + CACHED)));
+        YouTubeMetadata fresh = metadata(FRESH);
+        YouTubeMetadata broken = metadata(BROKEN);
+        when(youTubeMetadataClient.fetchAll(List.of(FRESH, MISSING, BROKEN)))
+                .thenReturn(Map.of(FRESH, fresh, BROKEN, broken));
+        when(videoAnalysisClaimRepository.tryClaim(anyString(), anyString(), any())).thenReturn(1);
+        VideoAnalysisResult freshResult = result(FRESH);
+        when(youTubeAnalysisService.analyzeMetadata(fresh)).thenReturn(freshResult);
+        when(youTubeAnalysisService.analyzeMetadata(broken)).thenThrow(new IOException("Gemini analysis failed"));
+
+        videoPreanalysisService.run("job-1", videoIds);
+
+        verify(youTubeAnalysisService).saveAnalyses(List.of(freshResult));
+        verify(itemRepository).updateStatus(eq("job-1"), eq(Set.of(CACHED)), eq("cached"), isNull(), any());
+        verify(itemRepository).updateStatus(eq("job-1"), eq(List.of(MISSING)), eq("not_found"), isNull(), any());
+        verify(itemRepository).updateStatus(eq("job-1"), eq(List.of(BROKEN)), eq("failed"),
+                eq("Gemini analysis failed"), any());
+        verify(itemRepository).updateStatus(eq("job-1"), eq(List.of(FRESH)), eq("analyzed"), isNull(), any());
+        verify(videoAnalysisClaimRepository).release(eq(FRESH), anyString());
+        verify(videoAnalysisClaimRepository).release(eq(BROKEN), anyString());
+    }
+
+    @Test
+    void testFlush_FallsBackToSingleWritesWhenTheBatchConflicts() {
+        VideoAnalysisResult first = result(FRESH);
+        VideoAnalysisResult second = result(BROKEN);
+        lenient().doThrow(new RuntimeException("duplicate key")).when(youTubeAnalysisService).saveAnalyses(List.of(first, second));
+        lenient().doThrow(new RuntimeException("duplicate key")).when(youTubeAnalysisService).saveAnalyses(List.of(second));
+
+        videoPreanalysisService.flush("job-1", List.of(first, second));
+
+        verify(youTubeAnalysisService).saveAnalyses(List.of(first));
+        verify(itemRepository).updateStatus(eq("job-1"), eq(List.of(FRESH)), eq("analyzed"), isNull(), any());
+        verify(itemRepository).updateStatus(eq("job-1"), eq(List.of(BROKEN)), eq("failed"), eq("duplicate key"), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSubmit_QueuesValidIdsAndReportsInvalidInputs() {
+        when(youTubeAnalysisService.extractVideoId("https://www.youtube.com/watch?v=" + FRESH)).thenReturn(FRESH);
+        when(youTubeAnalysisService.extractVideoId("not a video")).thenThrow(new IllegalArgumentException("bad"));
+
+        VideoPreanalysisService.Submission submission = videoPreanalysisService.submit("user123",
+                List.of(CACHED, "https://www.youtube.com/watch?v=" + FRESH, "not a video", CACHED));
+
+        assertEquals(List.of(CACHED, FRESH), submission.videoIds());
+        assertEquals(List.of("not a video"), submission.invalid());
+        ArgumentCaptor<List<VideoPreanalysisItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(itemRepository).saveAll(items.capture());
+        assertEquals(2, items.getValue().size());
+        assertEquals("queued", items.getValue().get(0).getStatus());
+        verify(analysisScheduler).submit(anyString(), eq(AnalysisScheduler.Priority.BULK), any());
+    }
+
+    @Test
+    void testSubmit_RejectedJobLeavesNoProgressRows() throws Exception {
+        doThrow(new AnalysisScheduler.QueueFullException(AnalysisScheduler.Priority.BULK))
+                .when(analysisScheduler).submit(anyString(), any(), any());
+
+        assertThrows(AnalysisScheduler.QueueFullException.class,
+                () -> videoPreanalysisService.submit("user123", List.of(FRESH)));
+
+        verify(itemRepository).deleteByJobId(anyString());
+        verify(youTubeMetadataClient, never()).fetchAll(anyList());
+    }
+
+    private static YouTubeMetadata metadata(String videoId) {
+        return new YouTubeMetadata(videoId, "Title " + videoId, "Description", 600, "28", new String[0]);
+    }
+
+    private static VideoAnalysisResult result(String videoId) {
+        return new VideoAnalysisResult(videoId, "https://www.youtube.com/watch?v=" + videoId, "Title " + videoId,
+                "Description", 600, List.of("technology"), List.of("gadgets"), "positive", List.of());
+    }
+}
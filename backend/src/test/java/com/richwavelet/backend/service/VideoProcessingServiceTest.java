@@ -12,6 +12,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -138,6 +139,96 @@ class VideoProcessingServiceTest {
         assertEquals(mainVideo, result);
     }
 
+    @Test
+    void testSnapToKeyframes_WithinTolerance() {
+        Optional<List<Double>> result = videoProcessingService.snapToKeyframes(
+                List.of(29.0, 61.5),
+                List.of(0.0, 10.0, 20.0, 30.0, 40.0, 50.0, 60.0, 70.0),
+                2.0
+        );
+
+        assertTrue(result.isPresent());
+        assertEquals(List.of(30.0, 60.0), result.get());
+    }
+
+    @Test
+    void testSnapToKeyframes_OutsideToleranceReturnsEmpty() {
+        Optional<List<Double>> result = videoProcessingService.snapToKeyframes(
+                List.of(30.0, 45.0),
+                List.of(0.0, 30.0, 60.0),
+                2.0
+        );
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void testSnapToKeyframes_NeverSnapsToStartAndMergesDuplicates() {
+        Optional<List<Double>> result = videoProcessingService.snapToKeyframes(
+                List.of(0.5, 9.0, 11.0),
+                List.of(0.0, 2.0, 10.0),
+                2.0
+        );
+
+        assertTrue(result.isPresent());
+        assertEquals(List.of(2.0, 10.0), result.get());
+    }
+
+    @Test
+    void testPlanChunkBoundaries_CutsOnKeyframesNearChunkLength() {
+        List<Double> keyframes = List.of(0.0, 25.0, 50.0, 65.0, 100.0, 130.0, 170.0);
+
+        List<Double> boundaries = videoProcessingService.planChunkBoundaries(keyframes, 200.0, 60.0);
+
+        assertEquals(List.of(0.0, 65.0, 130.0, 200.0), boundaries);
+    }
+
+    @Test
+    void testPlanChunkBoundaries_MergesShortTrailingChunk() {
+        List<Double> keyframes = List.of(0.0, 60.0, 120.0);
+
+        List<Double> boundaries = videoProcessingService.planChunkBoundaries(keyframes, 140.0, 60.0);
+
+        assertEquals(List.of(0.0, 60.0, 140.0), boundaries);
+    }
+
+    @Test
+    void testPlanChunkBoundaries_NoKeyframesMeansSingleChunk() {
+        List<Double> boundaries = videoProcessingService.planChunkBoundaries(List.of(0.0), 300.0, 60.0);
+
+        assertEquals(List.of(0.0, 300.0), boundaries);
+    }
+
+    @Test
+    void testAnalysisProxyCommand_DownscalesAndDropsFrameRateAndAudioRate() {
+        List<String> command = videoProcessingService.analysisProxyCommand(
+                Path.of("in.mp4"), Path.of("proxy.mp4"), true);
+
+        String filters = command.get(command.indexOf("-vf") + 1);
+        assertTrue(filters.contains("scale=-2:'min(360,ih)'"));
+        assertTrue(filters.contains("fps=1.0"));
+        assertEquals("16000", command.get(command.indexOf("-ar") + 1));
+        assertEquals("1", command.get(command.indexOf("-ac") + 1));
+        assertEquals("proxy.mp4", command.get(command.size() - 1));
+    }
+
+    @Test
+    void testAnalysisProxyCommand_SilentSourceHasNoAudioOutput() {
+        List<String> command = videoProcessingService.analysisProxyCommand(
+                Path.of("in.mp4"), Path.of("proxy.mp4"), false);
+
+        assertTrue(command.contains("-an"));
+        assertFalse(command.contains("0:a:0"));
+    }
+
+    @Test
+    void testCreateAnalysisProxy_DisabledAnalyzesSource() throws Exception {
+        ReflectionTestUtils.setField(videoProcessingService, "analysisProxyEnabled", false);
+        Path source = Path.of("in.mp4");
+
+        assertEquals(source, videoProcessingService.createAnalysisProxy(source, tempDir));
+    }
+
     // Note: Tests for applyShaderEffects, addAudioEffects, getVideoDuration, etc.
     // would require mocking external processes (ffmpeg, ffprobe) which is complex.
     // These are integration-level tests that would be better suited for integration test suite.
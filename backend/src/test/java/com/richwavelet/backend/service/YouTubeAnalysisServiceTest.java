@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.richwavelet.backend.dto.VideoAnalysisResult;
 import com.richwavelet.backend.dto.YouTubeMetadata;
 import com.richwavelet.backend.model.VideoAnalysis;
+import com.richwavelet.backend.repository.VideoAnalysisClaimRepository;
 import com.richwavelet.backend.repository.VideoAnalysisRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,15 +12,26 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,9 +40,18 @@ class YouTubeAnalysisServiceTest {
     @Mock
     private VideoAnalysisRepository videoAnalysisRepository;
 
+    @Mock
+    private VideoAnalysisClaimRepository videoAnalysisClaimRepository;
+
     @Mock
     private GeminiService geminiService;
 
+    @Mock
+    private YouTubeMetadataClient youTubeMetadataClient;
+
+    @Spy
+    private VideoAnalysisCache videoAnalysisCache = new VideoAnalysisCache();
+
     @InjectMocks
     private YouTubeAnalysisService youTubeAnalysisService;
 
@@ -39,8 +60,8 @@ class YouTubeAnalysisServiceTest {
     @BeforeEach
     void setUp() {
         objectMapper = new ObjectMapper();
-        ReflectionTestUtils.setField(youTubeAnalysisService, "youtubeApiKey", "test-api-key");
         ReflectionTestUtils.setField(youTubeAnalysisService, "objectMapper", objectMapper);
+        lenient().when(videoAnalysisClaimRepository.tryClaim(anyString(), anyString(), any())).thenReturn(1);
     }
 
     @Test
@@ -84,8 +105,9 @@ class YouTubeAnalysisServiceTest {
     @Test
     void testFetchMetadata_Success() throws Exception {
         String videoId = "dQw4w9WgXcQ";
+        when(youTubeMetadataClient.fetch(videoId)).thenReturn(
+                new YouTubeMetadata(videoId, "Title", "Description", 213, "10", new String[0]));
 
-        // Mock will be implemented when we create the actual service
         YouTubeMetadata metadata = youTubeAnalysisService.fetchMetadata(videoId);
 
         assertNotNull(metadata);
@@ -145,6 +167,68 @@ class YouTubeAnalysisServiceTest {
         verify(videoAnalysisRepository, never()).save(any(VideoAnalysis.class));
     }
 
+    @Test
+    void testAnalyze_RepeatedLookupsAreServedFromMemory() throws Exception {
+        String youtubeUrl = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+        VideoAnalysis existingAnalysis = new VideoAnalysis("dQw4w9WgXcQ", youtubeUrl);
+        existingAnalysis.setTitle("Test Video");
+        existingAnalysis.setDurationSeconds(213);
+        existingAnalysis.setAdBreakSuggestions(
+                "[{\"timestamp\":60,\"reason\":\"Topic change\",\"priority\":5,\"suggestedAdCategories\":[\"music\"]}]");
+        when(videoAnalysisRepository.findByVideoId("dQw4w9WgXcQ")).thenReturn(Optional.of(existingAnalysis));
+
+        VideoAnalysisResult first = youTubeAnalysisService.analyze(youtubeUrl);
+        VideoAnalysisResult second = youTubeAnalysisService.analyze(youtubeUrl);
+
+        assertEquals(first.adBreakSuggestions(), second.adBreakSuggestions());
+        assertEquals(60, second.adBreakSuggestions().get(0).timestamp());
+        verify(videoAnalysisRepository, times(1)).findByVideoId("dQw4w9WgXcQ");
+        assertEquals(1, youTubeAnalysisService.getCacheStats().hits());
+    }
+
+    @Test
+    void testAnalyze_ConcurrentRequestsShareOneAnalysis() throws Exception {
+        String youtubeUrl = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+        when(videoAnalysisRepository.findByVideoId("dQw4w9WgXcQ")).thenReturn(Optional.empty());
+        YouTubeAnalysisService service = spy(youTubeAnalysisService);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        doAnswer(invocation -> {
+            fetches.incrementAndGet();
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new IOException("quota exceeded");
+        }).when(service).fetchMetadata("dQw4w9WgXcQ");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> service.analyze(youtubeUrl));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            FutureTask<VideoAnalysisResult> second = new FutureTask<>(() -> service.analyze(youtubeUrl));
+            Thread secondThread = new Thread(second);
+            secondThread.start();
+            // The first request waits with a timeout, so the only untimed wait the second one can reach is
+            // on the in-flight analysis; hold the first one until it gets there
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (secondThread.getState() != Thread.State.WAITING) {
+                assertTrue(System.nanoTime() < deadline, "second request never joined the in-flight analysis");
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            ExecutionException firstError = assertThrows(ExecutionException.class, first::get);
+            ExecutionException secondError = assertThrows(ExecutionException.class, second::get);
+            assertEquals("quota exceeded", firstError.getCause().getMessage());
+            assertEquals("quota exceeded", secondError.getCause().getMessage());
+            assertEquals(1, fetches.get());
+            verify(videoAnalysisClaimRepository, times(1)).tryClaim(anyString(), anyString(), any());
+            verify(videoAnalysisClaimRepository).release(eq("dQw4w9WgXcQ"), anyString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void testAnalyze_InvalidUrl() {
         String invalidUrl = "https://www.example.com/video";
@@ -0,0 +1,100 @@
+package com.richwavelet.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.richwavelet.backend.dto.YouTubeMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+class YouTubeMetadataClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final YouTubeMetadataClient client = spy(new YouTubeMetadataClient());
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void testParseDuration() {
+        assertEquals(90, YouTubeMetadataClient.parseDuration("PT1M30S"));
+        assertEquals(3723, YouTubeMetadataClient.parseDuration("PT1H2M3S"));
+        assertEquals(0, YouTubeMetadataClient.parseDuration("invalid"));
+    }
+
+    @Test
+    void testParseItem() {
+        YouTubeMetadata metadata = YouTubeMetadataClient.parseItem(item("abc", "etag-1", "Title"));
+
+        assertEquals("abc", metadata.videoId());
+        assertEquals("Title", metadata.title());
+        assertEquals(213, metadata.durationSeconds());
+        assertEquals("10", metadata.category());
+        assertArrayEquals(new String[]{"music"}, metadata.tags());
+    }
+
+    @Test
+    void testStore_UnchangedEtagKeepsCachedMetadata() {
+        YouTubeMetadata first = client.store(response(item("abc", "etag-1", "Title"))).get("abc").metadata();
+        YouTubeMetadata same = client.store(response(item("abc", "etag-1", "Title"))).get("abc").metadata();
+        YouTubeMetadata changed = client.store(response(item("abc", "etag-2", "New title"))).get("abc").metadata();
+
+        assertSame(first, same);
+        assertNotSame(first, changed);
+        assertEquals("New title", changed.title());
+    }
+
+    @Test
+    void testFetchAll_CoalescesIdsIntoOneRequestAndSkipsUnknownVideos() throws Exception {
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            batches.add(ids);
+            return client.store(response(item("a", "e", "A"), item("b", "e", "B")));
+        }).when(client).fetchBatch(anyList());
+
+        Map<String, YouTubeMetadata> results = client.fetchAll(List.of("a", "b", "missing", "a"));
+
+        assertEquals(List.of("a", "b"), List.copyOf(results.keySet()));
+        assertEquals(List.of(List.of("a", "b", "missing")), batches);
+
+        // Fresh entries are served from the cache
+        assertEquals("A", client.fetch("a").title());
+        assertEquals(1, batches.size());
+    }
+
+    private JsonNode response(JsonNode... items) {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode array = root.putArray("items");
+        for (JsonNode item : items) {
+            array.add(item);
+        }
+        return root;
+    }
+
+    private JsonNode item(String id, String etag, String title) {
+        ObjectNode item = objectMapper.createObjectNode();
+        item.put("id", id);
+        item.put("etag", etag);
+        ObjectNode snippet = item.putObject("snippet");
+        snippet.put("title", title);
+        snippet.put("description", "Description");
+        snippet.put("categoryId", "10");
+        snippet.putArray("tags").add("music");
+        item.putObject("contentDetails").put("duration", "PT3M33S");
+        return item;
+    }
+}
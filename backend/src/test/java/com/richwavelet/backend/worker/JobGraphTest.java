@@ -0,0 +1,114 @@
+package com.richwavelet.backend.worker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobGraphTest {
+
+    private ExecutorService executor;
+    private JobGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        graph = new JobGraph("job-1", executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testIndependentNodesRunConcurrently() throws Exception {
+        // Each branch waits for the other to start, so this only finishes if they overlap
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        JobGraph.Node<String> download = graph.add("download", () -> "main.mp4");
+        JobGraph.Node<String> analyze = graph.add("analyze", () -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            return "analysis of " + download.result();
+        }, download);
+        JobGraph.Node<String> shade = graph.add("shade", () -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            return "shaded " + download.result();
+        }, download);
+        JobGraph.Node<String> insertAds = graph.add("insert-ads",
+                () -> shade.result() + " + " + analyze.result(), shade, analyze);
+
+        assertEquals("shaded main.mp4 + analysis of main.mp4", graph.await(insertAds));
+        assertEquals(List.of("analyze", "download", "insert-ads", "shade"),
+                graph.timings().stream().map(JobGraph.NodeTiming::name).sorted().toList());
+    }
+
+    @Test
+    void testFailurePropagatesOriginalExceptionToDependents() {
+        AtomicBoolean dependentRan = new AtomicBoolean();
+        JobGraph.Node<String> download = graph.add("download", () -> {
+            throw new IOException("storage unavailable");
+        });
+        JobGraph.Node<String> shade = graph.add("shade", () -> {
+            dependentRan.set(true);
+            return download.result();
+        }, download);
+
+        IOException thrown = assertThrows(IOException.class, () -> graph.await(shade));
+        assertEquals("storage unavailable", thrown.getMessage());
+        assertFalse(dependentRan.get());
+        assertFalse(graph.timings().get(0).succeeded());
+    }
+
+    @Test
+    void testFailureFailsDependentsWithoutWaitingForSlowSiblings() throws Exception {
+        CountDownLatch shadeStarted = new CountDownLatch(1);
+        CountDownLatch releaseShade = new CountDownLatch(1);
+        AtomicBoolean insertAdsRan = new AtomicBoolean();
+        JobGraph.Node<String> shade = graph.add("shade", () -> {
+            shadeStarted.countDown();
+            releaseShade.await(5, TimeUnit.SECONDS);
+            return "shaded.mp4";
+        });
+        JobGraph.Node<String> analyze = graph.add("analyze", () -> {
+            assertTrue(shadeStarted.await(5, TimeUnit.SECONDS));
+            throw new IOException("gemini unavailable");
+        });
+        JobGraph.Node<String> insertAds = graph.add("insert-ads", () -> {
+            insertAdsRan.set(true);
+            return shade.result() + " + " + analyze.result();
+        }, shade, analyze);
+        JobGraph.Node<String> upload = graph.add("upload", insertAds::result, insertAds);
+
+        try {
+            IOException thrown = assertThrows(IOException.class, () -> graph.await(upload));
+            assertEquals("gemini unavailable", thrown.getMessage());
+            assertTrue(insertAds.future().isCompletedExceptionally());
+            // Waiting on the slow node itself also stops at the first failure
+            assertThrows(IOException.class, () -> graph.await(shade));
+            assertFalse(shade.future().isDone());
+            assertFalse(insertAdsRan.get());
+        } finally {
+            releaseShade.countDown();
+        }
+    }
+
+    @Test
+    void testJoinCollectsResultsInOrder() throws Exception {
+        JobGraph.Node<Integer> first = graph.add("first", () -> 1);
+        JobGraph.Node<Integer> second = graph.add("second", () -> 2);
+
+        assertEquals(List.of(1, 2), graph.await(graph.join("all", List.of(first, second))));
+        assertEquals(List.of(), graph.await(graph.join("none", List.<JobGraph.Node<Integer>>of())));
+    }
+}
@@ -0,0 +1,224 @@
+package com.richwavelet.backend.worker;
+
+import com.richwavelet.backend.dto.AdInsertionPoint;
+import com.richwavelet.backend.dto.GeminiAnalysisResult;
+import com.richwavelet.backend.dto.WorkerPayload;
+import com.richwavelet.backend.model.AdUpload;
+import com.richwavelet.backend.model.ProcessedVideo;
+import com.richwavelet.backend.model.VideoUpload;
+import com.richwavelet.backend.repository.AdUploadRepository;
+import com.richwavelet.backend.repository.ProcessedVideoRepository;
+import com.richwavelet.backend.repository.VideoUploadRepository;
+import com.richwavelet.backend.service.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VideoWorkerControllerTest {
+
+    private static final String JOB_ID = "job-1";
+    private static final String USER_ID = "user123";
+    private static final GeminiAnalysisResult ANALYSIS = new GeminiAnalysisResult(List.of(),
+            List.of(new AdInsertionPoint("00:00:30", 5, "Scene change")), "A test video");
+
+    @Mock
+    private VideoUploadRepository videoUploadRepository;
+
+    @Mock
+    private AdUploadRepository adUploadRepository;
+
+    @Mock
+    private ProcessedVideoRepository processedVideoRepository;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private GeminiService geminiService;
+
+    @Mock
+    private VideoProcessingService videoProcessingService;
+
+    @Mock
+    private ProcessingStatusService statusService;
+
+    @Mock
+    private ProcessingStatusService.JobProgress progress;
+
+    @Mock
+    private AdCreativeCache adCreativeCache;
+
+    @Mock
+    private AdRenditionService adRenditionService;
+
+    @Mock
+    private MediaProbeService mediaProbeService;
+
+    @InjectMocks
+    private VideoWorkerController controller;
+
+    @TempDir
+    Path workDir;
+
+    private final ExecutorService jobs = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(controller, "workerBaseUrl", "");
+        ReflectionTestUtils.setField(controller, "renderMode", "single-pass");
+        ReflectionTestUtils.setField(controller, "downloadParallelism", 2);
+
+        VideoUpload mainVideo = new VideoUpload();
+        mainVideo.setId(1L);
+        mainVideo.setFileName("main.mp4");
+        mainVideo.setFileUrl("https://s/main.mp4");
+        lenient().when(videoUploadRepository.findById(1L)).thenReturn(Optional.of(mainVideo));
+        lenient().when(statusService.jobProgress(JOB_ID, USER_ID)).thenReturn(progress);
+        lenient().when(videoProcessingService.createWorkDir(USER_ID)).thenReturn(workDir);
+        lenient().when(videoProcessingService.renderPipeline(any(), any(), anyList(), anyList(), any(), any()))
+                .thenReturn(workDir.resolve("rendered.mp4"));
+        lenient().when(storageService.uploadProcessedVideo(eq(USER_ID), any(), anyString()))
+                .thenReturn(USER_ID + "/retro.mp4");
+        lenient().when(storageService.getPublicUrl("processed-videos", USER_ID + "/retro.mp4"))
+                .thenReturn("https://s/retro.mp4");
+        lenient().when(processedVideoRepository.save(any())).thenAnswer(inv -> {
+            ProcessedVideo processed = inv.getArgument(0);
+            processed.setId(7L);
+            return processed;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobs.shutdownNow();
+    }
+
+    @Test
+    void testAnalysisStartsWhileAdDownloadsAreBlocked() throws Exception {
+        CountDownLatch adsStarted = new CountDownLatch(1);
+        CountDownLatch releaseAds = new CountDownLatch(1);
+        CountDownLatch analysisStarted = new CountDownLatch(1);
+        when(adUploadRepository.findAllById(List.of("ad-1", "ad-2"))).thenReturn(List.of(ad("ad-1"), ad("ad-2")));
+        when(adCreativeCache.materialize(anyString(), anyString(), any())).thenAnswer(inv -> {
+            adsStarted.countDown();
+            assertTrue(releaseAds.await(5, TimeUnit.SECONDS));
+            return inv.getArgument(2);
+        });
+        when(geminiService.findCachedAnalysis(any(), any())).thenAnswer(inv -> {
+            analysisStarted.countDown();
+            return Optional.of(ANALYSIS);
+        });
+
+        Future<ResponseEntity<Map<String, Object>>> job = submit(List.of("ad-1", "ad-2"));
+
+        assertTrue(adsStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(analysisStarted.await(5, TimeUnit.SECONDS));
+        releaseAds.countDown();
+        assertEquals(200, job.get(5, TimeUnit.SECONDS).getStatusCode().value());
+        verify(statusService).markCompleted(JOB_ID, USER_ID);
+    }
+
+    @Test
+    void testDownloadsAreLimitedToTheConfiguredParallelism() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch twoStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Answer<Object> download = inv -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            twoStarted.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } finally {
+                running.decrementAndGet();
+            }
+            return null;
+        };
+        List<String> adIds = List.of("ad-1", "ad-2", "ad-3");
+        when(adUploadRepository.findAllById(adIds)).thenReturn(List.of(ad("ad-1"), ad("ad-2"), ad("ad-3")));
+        doAnswer(download).when(storageService).downloadFile(anyString(), any(Path.class));
+        when(adCreativeCache.materialize(anyString(), anyString(), any())).thenAnswer(download);
+        when(geminiService.findCachedAnalysis(any(), any())).thenReturn(Optional.of(ANALYSIS));
+
+        Future<ResponseEntity<Map<String, Object>>> job = submit(adIds);
+
+        assertTrue(twoStarted.await(5, TimeUnit.SECONDS));
+        // Give a third download the chance to start if the limit were not enforced
+        Thread.sleep(100);
+        assertEquals(2, running.get());
+        release.countDown();
+
+        assertEquals(200, job.get(5, TimeUnit.SECONDS).getStatusCode().value());
+        assertEquals(2, maxRunning.get());
+        verify(adCreativeCache, times(3)).materialize(anyString(), anyString(), any());
+    }
+
+    @Test
+    void testFailedAdDownloadFailsTheJobWithoutWaitingForTheMainVideo() throws Exception {
+        CountDownLatch mainStarted = new CountDownLatch(1);
+        CountDownLatch mainInterrupted = new CountDownLatch(1);
+        when(adUploadRepository.findAllById(List.of("ad-1"))).thenReturn(List.of(ad("ad-1")));
+        doAnswer(inv -> {
+            mainStarted.countDown();
+            try {
+                new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                mainInterrupted.countDown();
+                throw e;
+            }
+            return null;
+        }).when(storageService).downloadFile(anyString(), any(Path.class));
+        when(adCreativeCache.materialize(anyString(), anyString(), any())).thenAnswer(inv -> {
+            assertTrue(mainStarted.await(5, TimeUnit.SECONDS));
+            throw new IOException("ad storage unavailable");
+        });
+
+        ResponseEntity<Map<String, Object>> response = submit(List.of("ad-1")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(500, response.getStatusCode().value());
+        assertEquals("ad storage unavailable", response.getBody().get("error"));
+        assertEquals(0, mainInterrupted.getCount());
+        verify(statusService).markFailed(JOB_ID, USER_ID, "ad storage unavailable");
+        verify(geminiService, never()).findCachedAnalysis(any(), any());
+        verify(videoProcessingService, never()).renderPipeline(any(), any(), anyList(), anyList(), any(), any());
+        verify(videoProcessingService).cleanupWorkDir(workDir);
+    }
+
+    private Future<ResponseEntity<Map<String, Object>>> submit(List<String> adIds) {
+        WorkerPayload payload = new WorkerPayload(JOB_ID, USER_ID, 1L, adIds, "VHS");
+        return jobs.submit(() -> controller.processVideo(null, payload));
+    }
+
+    private static AdUpload ad(String id) {
+        AdUpload ad = new AdUpload(USER_ID, id + ".mp4", "https://s/" + id + ".mp4", USER_ID + "/" + id + ".mp4");
+        ad.setId(id);
+        return ad;
+    }
+}